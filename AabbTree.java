@@ -0,0 +1,579 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * SpatialIndex that keeps the GameObjects in a dynamic bounding volume
+ * tree. Every leaf holds one object, and every inner node holds the
+ * rectangle that covers its two children. Unlike SpatialGrid it works
+ * equally well for huge wall rectangles from a TileMap and tiny bullets,
+ * and queries, point lookups and raycasts take logarithmic time.
+ *
+ * The rectangles of the leaves are fattened by a margin, so an object
+ * that moves a little stays inside its leaf and the tree isn't touched.
+ * Objects that move further are removed and inserted again. Inserting
+ * picks the sibling that grows the tree the least, and the tree is kept
+ * balanced with rotations.
+ *
+ * The nodes are stored in parallel arrays indexed by node id instead of
+ * node objects, and freed nodes are reused. Every object remembers its
+ * leaf itself, so finding the leaf of an object doesn't box or hash. An
+ * object is in at most one tree at a time, which holds for the spatial
+ * index of a GameObjectList. Queries and raycasts only
+ * read the tree, so several threads can run them at the same time as
+ * long as no objects are inserted, removed or moved meanwhile.
+ */
+public class AabbTree implements SpatialIndex {
+
+    /**
+     * Default margin added around each object in pixels.
+     */
+    public static final double DEFAULT_MARGIN = 8;
+
+    /**
+     * Id that marks a missing node.
+     */
+    private static final int NULL = -1;
+
+    /**
+     * Margin added around each object in pixels.
+     */
+    private double margin;
+
+    /**
+     * Bounds of the rectangle of each node.
+     */
+    private double[] minX, minY, maxX, maxY;
+
+    /**
+     * Parent of each node, or the next free node for freed nodes.
+     */
+    private int[] parent;
+
+    /**
+     * Children of each inner node, NULL for leaves.
+     */
+    private int[] left, right;
+
+    /**
+     * Height of each node, 0 for leaves.
+     */
+    private int[] height;
+
+    /**
+     * GameObject of each leaf, null for inner nodes.
+     */
+    private GameObject[] objects;
+
+    /**
+     * Root node, or NULL if the tree is empty.
+     */
+    private int root = NULL;
+
+    /**
+     * First free node, or NULL.
+     */
+    private int freeList = NULL;
+
+    /**
+     * Stack of nodes to visit, reused by the queries of each thread.
+     */
+    private static final ThreadLocal<int[]> STACK =
+            ThreadLocal.withInitial(() -> new int[64]);
+
+    /**
+     * Constructs a tree with the default margin.
+     */
+    public AabbTree() {
+        this(DEFAULT_MARGIN);
+    }
+
+    /**
+     * Constructs a tree.
+     *
+     * @param margin Margin added around each object in pixels. Larger
+     *               margins update the tree less often but make queries
+     *               test more objects.
+     */
+    public AabbTree(double margin) {
+        this.margin = margin;
+        allocateArrays(16);
+    }
+
+    @Override
+    public void insert(GameObject object) {
+        if (getLeaf(object) != NULL) {
+            update(object);
+            return;
+        }
+        int leaf = allocate();
+        objects[leaf] = object;
+        fatten(leaf, object);
+        insertLeaf(leaf);
+        object.setTreeLeaf(leaf);
+    }
+
+    @Override
+    public void remove(GameObject object) {
+        int leaf = getLeaf(object);
+        if (leaf != NULL) {
+            object.setTreeLeaf(NULL);
+            removeLeaf(leaf);
+            free(leaf);
+        }
+    }
+
+    @Override
+    public void update(GameObject object) {
+        int leaf = getLeaf(object);
+        if (leaf == NULL) {
+            return;
+        }
+        if (object.getX() >= minX[leaf] && object.getY() >= minY[leaf]
+                && object.getX() + object.getWidth() <= maxX[leaf]
+                && object.getY() + object.getHeight() <= maxY[leaf]) {
+            return;
+        }
+        removeLeaf(leaf);
+        fatten(leaf, object);
+        insertLeaf(leaf);
+    }
+
+    @Override
+    public void query(double x, double y, double width, double height, List<GameObject> result) {
+        if (root == NULL) {
+            return;
+        }
+        double right = x + width;
+        double bottom = y + height;
+
+        int[] stack = getStack();
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (minX[node] >= right || maxX[node] <= x
+                    || minY[node] >= bottom || maxY[node] <= y) {
+                continue;
+            }
+
+            GameObject o = objects[node];
+            if (o != null) {
+                if (o.getX() < right && o.getX() + o.getWidth() > x
+                        && o.getY() < bottom && o.getY() + o.getHeight() > y) {
+                    result.add(o);
+                }
+            } else {
+                stack[top++] = this.left[node];
+                stack[top++] = this.right[node];
+            }
+        }
+    }
+
+    @Override
+    public void queryPoint(double x, double y, List<GameObject> result) {
+        if (root == NULL) {
+            return;
+        }
+
+        int[] stack = getStack();
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if (x < minX[node] || x >= maxX[node] || y < minY[node] || y >= maxY[node]) {
+                continue;
+            }
+
+            GameObject o = objects[node];
+            if (o != null) {
+                if (x >= o.getX() && x < o.getX() + o.getWidth()
+                        && y >= o.getY() && y < o.getY() + o.getHeight()) {
+                    result.add(o);
+                }
+            } else {
+                stack[top++] = left[node];
+                stack[top++] = right[node];
+            }
+        }
+    }
+
+    @Override
+    public RayHit raycast(double x, double y, double dx, double dy,
+                          double maxDistance, Predicate<GameObject> filter) {
+        double length = Math.hypot(dx, dy);
+        if (root == NULL || length == 0) {
+            return null;
+        }
+        double dirX = dx / length;
+        double dirY = dy / length;
+
+        GameObject closest = null;
+        double best = maxDistance;
+
+        int[] stack = getStack();
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            // Skip subtrees that are further away than the closest hit.
+            double t = RayHit.enter(x, y, dirX, dirY,
+                                    minX[node], minY[node], maxX[node], maxY[node]);
+            if (t > best) {
+                continue;
+            }
+
+            GameObject o = objects[node];
+            if (o != null) {
+                t = RayHit.enter(o, x, y, dirX, dirY);
+                if (t <= best && (filter == null || filter.test(o))) {
+                    best = t;
+                    closest = o;
+                }
+            } else {
+                stack[top++] = left[node];
+                stack[top++] = right[node];
+            }
+        }
+
+        return closest == null ? null
+            : new RayHit(closest, best, x + dirX * best, y + dirY * best);
+    }
+
+    /**
+     * @param object A GameObject.
+     * @return Leaf of the object in this tree, or NULL if it isn't in it.
+     *         The leaf stored in the object is only trusted if the leaf
+     *         holds the object, since it may be left over from another
+     *         tree or from before clear().
+     */
+    private int getLeaf(GameObject object) {
+        int leaf = object.getTreeLeaf();
+        return leaf >= 0 && leaf < objects.length && objects[leaf] == object ? leaf : NULL;
+    }
+
+    @Override
+    public void clear() {
+        root = NULL;
+        allocateArrays(16);
+    }
+
+    /**
+     * Returns the stack of the calling thread. A depth-first traversal
+     * leaves at most one node per level waiting on the stack, so a stack
+     * of twice the height of the tree never overflows.
+     *
+     * @return Stack of nodes to visit.
+     */
+    private int[] getStack() {
+        int needed = 2 * (getHeight() + 2);
+        int[] stack = STACK.get();
+        if (stack.length < needed) {
+            stack = new int[needed * 2];
+            STACK.set(stack);
+        }
+        return stack;
+    }
+
+    /**
+     * Sets the rectangle of a leaf to the bounds of its object plus
+     * the margin.
+     */
+    private void fatten(int leaf, GameObject object) {
+        minX[leaf] = object.getX() - margin;
+        minY[leaf] = object.getY() - margin;
+        maxX[leaf] = object.getX() + object.getWidth() + margin;
+        maxY[leaf] = object.getY() + object.getHeight() + margin;
+    }
+
+    /**
+     * Adds a leaf to the tree next to the node that makes the tree
+     * grow the least, then refits and balances its ancestors.
+     */
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // Descend while pushing the leaf down is cheaper than making
+        // it a sibling of the current node.
+        int index = root;
+        while (objects[index] == null) {
+            double area = perimeter(index);
+            double combined = unionPerimeter(index, leaf);
+            double cost = 2 * combined;
+            double inheritance = 2 * (combined - area);
+
+            double cost1 = childCost(left[index], leaf) + inheritance;
+            double cost2 = childCost(right[index], leaf) + inheritance;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? left[index] : right[index];
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocate();
+        parent[newParent] = oldParent;
+        height[newParent] = height[sibling] + 1;
+        left[newParent] = sibling;
+        right[newParent] = leaf;
+        setUnion(newParent, sibling, leaf);
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        if (oldParent == NULL) {
+            root = newParent;
+        } else if (left[oldParent] == sibling) {
+            left[oldParent] = newParent;
+        } else {
+            right[oldParent] = newParent;
+        }
+
+        refit(parent[leaf]);
+    }
+
+    /**
+     * Takes a leaf out of the tree, replacing its parent with its sibling,
+     * then refits and balances the ancestors.
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = left[p] == leaf ? right[p] : left[p];
+
+        if (grandParent == NULL) {
+            root = sibling;
+            parent[sibling] = NULL;
+            free(p);
+        } else {
+            if (left[grandParent] == p) {
+                left[grandParent] = sibling;
+            } else {
+                right[grandParent] = sibling;
+            }
+            parent[sibling] = grandParent;
+            free(p);
+            refit(grandParent);
+        }
+    }
+
+    /**
+     * Balances the node and its ancestors and updates their heights
+     * and rectangles.
+     */
+    private void refit(int index) {
+        while (index != NULL) {
+            index = balance(index);
+            height[index] = 1 + Math.max(height[left[index]], height[right[index]]);
+            setUnion(index, left[index], right[index]);
+            index = parent[index];
+        }
+    }
+
+    /**
+     * Rotates the node if one of its subtrees is more than one level
+     * taller than the other.
+     *
+     * @return Node that took the place of the given node.
+     */
+    private int balance(int a) {
+        if (objects[a] != null || height[a] < 2) {
+            return a;
+        }
+
+        int b = left[a];
+        int c = right[a];
+        int difference = height[c] - height[b];
+
+        if (difference > 1) {
+            // Rotate c up.
+            int f = left[c];
+            int g = right[c];
+            left[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if (height[f] > height[g]) {
+                right[c] = f;
+                right[a] = g;
+                parent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                right[c] = g;
+                right[a] = f;
+                parent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        if (difference < -1) {
+            // Rotate b up.
+            int d = left[b];
+            int e = right[b];
+            left[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if (height[d] > height[e]) {
+                right[b] = d;
+                left[a] = e;
+                parent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                right[b] = e;
+                left[a] = d;
+                parent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+
+        return a;
+    }
+
+    /**
+     * Points the parent at a new child, or makes the child the root if
+     * there is no parent.
+     */
+    private void replaceChild(int p, int oldChild, int newChild) {
+        if (p == NULL) {
+            root = newChild;
+        } else if (left[p] == oldChild) {
+            left[p] = newChild;
+        } else {
+            right[p] = newChild;
+        }
+    }
+
+    /**
+     * @return Cost of descending into the child when inserting the leaf.
+     */
+    private double childCost(int child, int leaf) {
+        double combined = unionPerimeter(child, leaf);
+        return objects[child] != null ? combined : combined - perimeter(child);
+    }
+
+    /**
+     * @return Perimeter of the rectangle of the node.
+     */
+    private double perimeter(int node) {
+        return 2 * ((maxX[node] - minX[node]) + (maxY[node] - minY[node]));
+    }
+
+    /**
+     * @return Perimeter of the rectangle that covers both nodes.
+     */
+    private double unionPerimeter(int a, int b) {
+        double width = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+        double height = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+        return 2 * (width + height);
+    }
+
+    /**
+     * Sets the rectangle of a node to cover two other nodes.
+     */
+    private void setUnion(int node, int a, int b) {
+        minX[node] = Math.min(minX[a], minX[b]);
+        minY[node] = Math.min(minY[a], minY[b]);
+        maxX[node] = Math.max(maxX[a], maxX[b]);
+        maxY[node] = Math.max(maxY[a], maxY[b]);
+    }
+
+    /**
+     * @return Id of a node taken from the free list, growing the
+     *         arrays if needed.
+     */
+    private int allocate() {
+        if (freeList == NULL) {
+            growArrays(objects.length * 2);
+        }
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        left[node] = NULL;
+        right[node] = NULL;
+        height[node] = 0;
+        objects[node] = null;
+        return node;
+    }
+
+    /**
+     * Returns a node to the free list.
+     */
+    private void free(int node) {
+        objects[node] = null;
+        parent[node] = freeList;
+        freeList = node;
+    }
+
+    /**
+     * Replaces the arrays with empty ones where every node is free.
+     */
+    private void allocateArrays(int capacity) {
+        minX = new double[0];
+        minY = new double[0];
+        maxX = new double[0];
+        maxY = new double[0];
+        parent = new int[0];
+        left = new int[0];
+        right = new int[0];
+        height = new int[0];
+        objects = new GameObject[0];
+        freeList = NULL;
+        growArrays(capacity);
+    }
+
+    /**
+     * Grows the arrays and adds the new nodes to the free list.
+     */
+    private void growArrays(int capacity) {
+        int oldCapacity = objects.length;
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+
+        for (int i = capacity - 1 ; i >= oldCapacity ; i--) {
+            parent[i] = freeList;
+            freeList = i;
+        }
+    }
+
+    /**
+     * @return Height of the tree, 0 for a single leaf, -1 if empty.
+     */
+    public int getHeight() { return root == NULL ? -1 : height[root]; }
+
+    /**
+     * @return Margin added around each object in pixels.
+     */
+    public double getMargin() { return margin; }
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+import java.util.Arrays;
+
+/**
+ * An animation played from a SpriteSheet. A clip is only a table of frame
+ * numbers and the times at which they end, shared by every GameObject that
+ * plays it. The GameObjects themselves only remember which clip they play
+ * and when they started it.
+ */
+public class AnimationClip {
+
+    /**
+     * Sheet that contains the frames.
+     */
+    private SpriteSheet sheet;
+
+    /**
+     * Frames of the sheet shown by the clip, in order.
+     */
+    private int[] frames;
+
+    /**
+     * Time at which each frame ends, in milliseconds from the start
+     * of the clip.
+     */
+    private int[] frameEnds;
+
+    /**
+     * Whether the clip starts over after the last frame instead of
+     * stopping on it.
+     */
+    private boolean looping;
+
+    /**
+     * Constructs a looping clip whose frames all last equally long.
+     *
+     * @param sheet Sheet that contains the frames.
+     * @param frames Frames of the sheet shown by the clip, in order.
+     * @param frameMillis Duration of each frame in milliseconds.
+     */
+    public AnimationClip(SpriteSheet sheet, int[] frames, int frameMillis) {
+        this(sheet, frames, filled(frames.length, frameMillis), true);
+    }
+
+    /**
+     * Constructs a clip.
+     *
+     * @param sheet Sheet that contains the frames.
+     * @param frames Frames of the sheet shown by the clip, in order.
+     * @param durations Duration of each frame in milliseconds.
+     * @param looping Whether the clip starts over after the last frame.
+     */
+    public AnimationClip(SpriteSheet sheet, int[] frames, int[] durations,
+                         boolean looping) {
+        if (frames.length == 0 || frames.length != durations.length) {
+            throw new IllegalArgumentException("Every frame needs a duration");
+        }
+
+        this.sheet = sheet;
+        this.frames = frames.clone();
+        this.looping = looping;
+
+        frameEnds = new int[durations.length];
+        int end = 0;
+        for (int i = 0 ; i < durations.length ; i++) {
+            end += Math.max(1, durations[i]);
+            frameEnds[i] = end;
+        }
+    }
+
+    /**
+     * @param length Length of the array.
+     * @param value Value of every element.
+     * @return Array filled with the value.
+     */
+    private static int[] filled(int length, int value) {
+        int[] array = new int[length];
+        Arrays.fill(array, value);
+        return array;
+    }
+
+    /**
+     * @param millis Time since the clip was started in milliseconds.
+     * @return Frame of the sheet shown at that time.
+     */
+    public int getFrame(long millis) {
+        int duration = frameEnds[frameEnds.length - 1];
+        long time;
+        if (looping) {
+            time = millis % duration;
+        } else if (millis >= duration) {
+            return frames[frames.length - 1];
+        } else {
+            time = millis;
+        }
+
+        int frame = 0;
+        while (time >= frameEnds[frame]) {
+            frame++;
+        }
+        return frames[frame];
+    }
+
+    /**
+     * @return Duration of one round of the clip in milliseconds.
+     */
+    public int getDuration() { return frameEnds[frameEnds.length - 1]; }
+
+    /**
+     * @return Sheet that contains the frames.
+     */
+    public SpriteSheet getSheet() { return sheet; }
+
+    /**
+     * @return Number of frames in the clip.
+     */
+    public int getLength() { return frames.length; }
+
+    /**
+     * @return Whether the clip starts over after the last frame.
+     */
+    public boolean isLooping() { return looping; }
+}
\ No newline at end of file
@@ -0,0 +1,337 @@
+import java.util.*;
+import javafx.scene.image.*;
+
+/**
+ * Cache for images and tile sets. Every image is decoded only once per
+ * path, no matter how many GameObjects or TileMaps use it, and a tile set
+ * image is sliced into tiles only once per tile size, after which every
+ * TileMap using the same tile set shares the same tiles.
+ *
+ * Images are decoded lazily the first time they are asked for, or in the
+ * background with preload(). Images that are acquired stay in the cache
+ * until they are released. Images that are not acquired by anyone are
+ * evicted, least recently used first, whenever the estimated memory use
+ * of the cache goes over its budget.
+ */
+public class AssetCache {
+
+    /**
+     * Default memory budget, 256 MB.
+     */
+    public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    /**
+     * The cache shared by all scenes, created on first use.
+     */
+    private static AssetCache defaultCache;
+
+    /**
+     * A cached image or tile set.
+     */
+    private static class Entry {
+
+        /**
+         * The image, or null if this entry is a tile set.
+         */
+        private Image image;
+
+        /**
+         * Tiles of the tile set, or null if this entry is an image.
+         */
+        private List<Image> tiles;
+
+        /**
+         * Number of acquire() calls without a matching release().
+         */
+        private int refCount;
+
+        /**
+         * Estimated memory use in bytes, or 0 if not known yet.
+         */
+        private long bytes;
+    }
+
+    /**
+     * Cached entries in least recently used order.
+     */
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Memory budget in bytes.
+     */
+    private long budget;
+
+    /**
+     * Estimated memory use of all cached entries in bytes.
+     */
+    private long used = 0;
+
+    /**
+     * Constructs a cache with the default memory budget.
+     */
+    public AssetCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * Constructs a cache with the given memory budget.
+     *
+     * @param budget Memory budget in bytes.
+     */
+    public AssetCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @return The cache shared by all scenes.
+     */
+    public static synchronized AssetCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new AssetCache();
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Returns the image from the given path, decoding it if it isn't in
+     * the cache yet. The image is not pinned in the cache; use acquire()
+     * to keep it from being evicted.
+     *
+     * @param path Path or URL of the image, as accepted by Image.
+     * @return The image.
+     */
+    public synchronized Image getImage(String path) {
+        Image image = imageEntry(path, false).image;
+        evict();
+        return image;
+    }
+
+    /**
+     * Starts decoding the image from the given path in the background,
+     * unless it is already in the cache. getImage() returns the image
+     * immediately, but it can't be drawn until it has finished loading.
+     *
+     * @param path Path or URL of the image, as accepted by Image.
+     */
+    public synchronized void preload(String path) {
+        imageEntry(path, true);
+        evict();
+    }
+
+    /**
+     * Returns the image from the given path and pins it in the cache
+     * until release() is called with the same path.
+     *
+     * @param path Path or URL of the image, as accepted by Image.
+     * @return The image.
+     */
+    public synchronized Image acquire(String path) {
+        Entry entry = imageEntry(path, false);
+        entry.refCount++;
+        evict();
+        return entry.image;
+    }
+
+    /**
+     * Releases an image pinned with acquire(). Once nobody holds the image,
+     * it may be evicted when the cache goes over its budget.
+     *
+     * @param path Path or URL of the image.
+     */
+    public synchronized void release(String path) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.refCount > 0) {
+            entry.refCount--;
+            evict();
+        }
+    }
+
+    /**
+     * Returns the tiles of the tile set image in the given path. The image
+     * is sliced only once per tile size; every later call with the same
+     * arguments returns the same tiles.
+     *
+     * @param path Path or URL of the tile set image.
+     * @param tileWidth Width of a single tile in pixels.
+     * @param tileHeight Height of a single tile in pixels.
+     * @param rows Number of rows of tiles on the image.
+     * @param columns Number of columns of tiles on the image.
+     * @return Tiles of the tile set.
+     */
+    public synchronized List<Image> getTileSet(String path, int tileWidth, int tileHeight,
+                                               int rows, int columns) {
+        String key = path + "#" + tileWidth + "x" + tileHeight + "#" + rows + "x" + columns;
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            Entry source = imageEntry(path, false);
+            if (source.image.getProgress() < 1) {
+                // Still loading in the background. Tiles can't be sliced
+                // from a partially loaded image, so decode it right away.
+                source.image = new Image(path);
+                imageEntry(path, false);
+            }
+
+            entry = new Entry();
+            entry.tiles = Collections.unmodifiableList(
+                    slice(source.image, tileWidth, tileHeight, rows, columns));
+            entry.bytes = 4L * tileWidth * tileHeight * entry.tiles.size();
+            entries.put(key, entry);
+            used += entry.bytes;
+            evict();
+        }
+        return entry.tiles;
+    }
+
+    /**
+     * Replaces the cached image of the given path, for example after the
+     * file has changed on disk. Tile sets sliced from the old image are
+     * discarded, so the next getTileSet() slices the new image. Whether the
+     * image is pinned is kept as it was.
+     *
+     * @param path Path or URL of the image.
+     * @param image The new image.
+     * @return The old image, or null if the path wasn't cached.
+     */
+    public synchronized Image replace(String path, Image image) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().startsWith(path + "#")) {
+                used -= e.getValue().bytes;
+                it.remove();
+            }
+        }
+
+        Entry entry = entries.get(path);
+        Image old = null;
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(path, entry);
+        } else {
+            old = entry.image;
+            used -= entry.bytes;
+            entry.bytes = 0;
+        }
+        entry.image = image;
+        imageEntry(path, false);
+        evict();
+        return old;
+    }
+
+    /**
+     * Finds the path an image was cached with. The cache doesn't keep
+     * an index of its images, so this goes through every entry.
+     *
+     * @param image An image returned by the cache.
+     * @return Path of the image, or null if it isn't in the cache.
+     */
+    public synchronized String getPath(Image image) {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().image == image) {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Slices a single image into tiles of the given size.
+     *
+     * @param image The image that is divided into smaller pieces.
+     * @param tileWidth Width of a single tile in pixels.
+     * @param tileHeight Height of a single tile in pixels.
+     * @param rows Number of rows of tiles on the image.
+     * @param columns Number of columns of tiles on the image.
+     * @return The tiles, row by row.
+     */
+    public static List<Image> slice(Image image, int tileWidth, int tileHeight,
+                                    int rows, int columns) {
+        List<Image> tiles = new ArrayList<>();
+        PixelReader reader = image.getPixelReader();
+
+        for (int i = 0 ; i < columns ; i++) {
+            for (int j = 0 ; j < rows ; j++) {
+                WritableImage newImage = new WritableImage(reader,
+                        j * tileWidth, i * tileHeight,
+                        tileWidth, tileHeight);
+                tiles.add(newImage);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Removes every entry that isn't pinned with acquire().
+     */
+    public synchronized void clear() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.refCount == 0) {
+                used -= entry.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Finds or creates the cache entry of an image. Doesn't evict
+     * anything, so the entry stays in the cache until the caller
+     * calls evict().
+     *
+     * @param path Path or URL of the image.
+     * @param background Whether a new image is decoded in the background.
+     * @return The entry.
+     */
+    private Entry imageEntry(String path, boolean background) {
+        Entry entry = entries.get(path);
+
+        if (entry == null) {
+            entry = new Entry();
+            entry.image = new Image(path, background);
+            entries.put(path, entry);
+        }
+
+        // The size of an image loading in the background isn't known
+        // until it has finished loading.
+        if (entry.bytes == 0 && entry.image.getProgress() >= 1) {
+            entry.bytes = 4L * (long) entry.image.getWidth() * (long) entry.image.getHeight();
+            used += entry.bytes;
+        }
+        return entry;
+    }
+
+    /**
+     * Evicts least recently used entries that aren't pinned until the
+     * estimated memory use is within the budget.
+     */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (used > budget && it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.refCount == 0) {
+                used -= entry.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return Estimated memory use of all cached entries in bytes.
+     */
+    public synchronized long getUsed() { return used; }
+
+    /**
+     * @return Memory budget in bytes.
+     */
+    public synchronized long getBudget() { return budget; }
+
+    /**
+     * @param budget Memory budget in bytes.
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+}
\ No newline at end of file
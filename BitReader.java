@@ -0,0 +1,99 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads values written by BitWriter.
+ */
+public class BitReader {
+
+    /**
+     * Buffer the bits are read from, starting at its position.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Index of the first byte of the bits in the buffer.
+     */
+    private int start;
+
+    /**
+     * Number of bits that can be read.
+     */
+    private int limit;
+
+    /**
+     * Number of bits read.
+     */
+    private int bitCount = 0;
+
+    /**
+     * Constructs a reader of the remaining bytes of a buffer.
+     *
+     * @param buffer Buffer the bits are read from.
+     */
+    public BitReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        start = buffer.position();
+        limit = buffer.remaining() * 8;
+    }
+
+    /**
+     * @param bits Number of bits to read, from 0 to 64.
+     * @return The bits as the lowest bits of a value.
+     * @throws IllegalStateException If there aren't enough bits left.
+     */
+    public long readBits(int bits) {
+        if (bitCount + bits > limit) {
+            throw new IllegalStateException("Not enough bits left");
+        }
+        long value = 0;
+        for (int i = 0 ; i < bits ; i++) {
+            int b = buffer.get(start + (bitCount >> 3));
+            value = (value << 1) | ((b >>> (7 - (bitCount & 7))) & 1);
+            bitCount++;
+        }
+        return value;
+    }
+
+    /**
+     * @return Boolean read from a single bit.
+     */
+    public boolean readBoolean() {
+        return readBits(1) != 0;
+    }
+
+    /**
+     * @return Value written with writeUnsigned().
+     */
+    public long readUnsigned() {
+        return readBits((int) readBits(6));
+    }
+
+    /**
+     * @return Value written with writeSigned().
+     */
+    public long readSigned() {
+        long value = readUnsigned();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * @return String written with writeString(), or null.
+     */
+    public String readString() {
+        int length = (int) readUnsigned() - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf = new byte[length];
+        for (int i = 0 ; i < length ; i++) {
+            utf[i] = (byte) readBits(8);
+        }
+        return new String(utf, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Number of bits that can still be read.
+     */
+    public int getRemaining() { return limit - bitCount; }
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes values into a byte array using only as many bits as each value
+ * needs. Used for network packets, where every byte counts. Bits are
+ * written starting from the most significant bit of each byte.
+ */
+public class BitWriter {
+
+    /**
+     * The written bytes.
+     */
+    private byte[] bytes;
+
+    /**
+     * Number of bits written.
+     */
+    private int bitCount = 0;
+
+    /**
+     * Constructs a writer with room for the given number of bytes.
+     *
+     * @param capacity Largest number of bytes that can be written.
+     */
+    public BitWriter(int capacity) {
+        bytes = new byte[capacity];
+    }
+
+    /**
+     * Writes the lowest bits of a value.
+     *
+     * @param value The value.
+     * @param bits Number of bits to write, from 0 to 64.
+     * @throws IllegalStateException If the writer is full.
+     */
+    public void writeBits(long value, int bits) {
+        if (bitCount + bits > bytes.length * 8) {
+            throw new IllegalStateException("Bit writer is full");
+        }
+        for (int i = bits - 1 ; i >= 0 ; i--) {
+            if (((value >>> i) & 1) != 0) {
+                bytes[bitCount >> 3] |= 0x80 >>> (bitCount & 7);
+            }
+            bitCount++;
+        }
+    }
+
+    /**
+     * @param value Boolean written as a single bit.
+     */
+    public void writeBoolean(boolean value) {
+        writeBits(value ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes a non-negative value as a 6-bit length followed by the
+     * significant bits of the value.
+     *
+     * @param value The value.
+     * @throws IllegalArgumentException If the value is negative.
+     */
+    public void writeUnsigned(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        writeBits(bits, 6);
+        writeBits(value, bits);
+    }
+
+    /**
+     * Writes a value that may be negative. Values close to zero take the
+     * fewest bits, so this suits differences between two values.
+     *
+     * @param value The value.
+     */
+    public void writeSigned(long value) {
+        writeUnsigned((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes a string as its length followed by its UTF-8 bytes, or only
+     * a zero length for null.
+     *
+     * @param value The string, or null.
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeUnsigned(0);
+            return;
+        }
+        byte[] utf = value.getBytes(StandardCharsets.UTF_8);
+        writeUnsigned(utf.length + 1);
+        for (byte b : utf) {
+            writeBits(b, 8);
+        }
+    }
+
+    /**
+     * @param bits Number of bits.
+     * @return Whether that many bits still fit in the writer.
+     */
+    public boolean fits(int bits) {
+        return bitCount + bits <= bytes.length * 8;
+    }
+
+    /**
+     * Forgets everything written so far.
+     */
+    public void clear() {
+        Arrays.fill(bytes, 0, getByteCount(), (byte) 0);
+        bitCount = 0;
+    }
+
+    /**
+     * @return Number of bits written.
+     */
+    public int getBitCount() { return bitCount; }
+
+    /**
+     * @return Number of bytes needed to hold the written bits.
+     */
+    public int getByteCount() { return (bitCount + 7) >> 3; }
+
+    /**
+     * @return The written bytes wrapped in a buffer that is ready to be
+     *         sent.
+     */
+    public ByteBuffer toBuffer() {
+        return ByteBuffer.wrap(bytes, 0, getByteCount());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * Storage for the components of one type in an EntityWorld. Uses a sparse
+ * set: the components are packed in a dense array with no gaps, and a
+ * sparse array maps each entity id to its place in the dense array. Adding,
+ * removing and finding a component take constant time, and systems iterate
+ * the dense array directly, visiting only entities that have the component.
+ *
+ * Removing a component moves the last component into its place, so the
+ * order of iteration changes when components are removed.
+ *
+ * @param <T> Type of the components.
+ */
+public class ComponentStore<T> {
+
+    /**
+     * Index of each entity's component in the dense arrays, or -1.
+     */
+    private int[] sparse = new int[64];
+
+    /**
+     * Entity of each component, in the same order as components.
+     */
+    private int[] entities = new int[16];
+
+    /**
+     * The components, packed without gaps.
+     */
+    private Object[] components = new Object[16];
+
+    /**
+     * Number of components in the store.
+     */
+    private int size = 0;
+
+    /**
+     * Constructs an empty store.
+     */
+    public ComponentStore() {
+        Arrays.fill(sparse, -1);
+    }
+
+    /**
+     * Gives an entity a component, replacing any component it had.
+     *
+     * @param entity Id of the entity.
+     * @param component The component.
+     */
+    public void put(int entity, T component) {
+        if (entity >= sparse.length) {
+            int oldLength = sparse.length;
+            sparse = Arrays.copyOf(sparse, Math.max(oldLength * 2, entity + 1));
+            Arrays.fill(sparse, oldLength, sparse.length, -1);
+        }
+
+        int index = sparse[entity];
+        if (index >= 0) {
+            components[index] = component;
+            return;
+        }
+
+        if (size == components.length) {
+            components = Arrays.copyOf(components, size * 2);
+            entities = Arrays.copyOf(entities, size * 2);
+        }
+        sparse[entity] = size;
+        entities[size] = entity;
+        components[size] = component;
+        size++;
+    }
+
+    /**
+     * Removes the component of an entity. Does nothing if the entity
+     * doesn't have one.
+     *
+     * @param entity Id of the entity.
+     */
+    public void remove(int entity) {
+        if (!has(entity)) {
+            return;
+        }
+
+        int index = sparse[entity];
+        int last = size - 1;
+        entities[index] = entities[last];
+        components[index] = components[last];
+        sparse[entities[index]] = index;
+
+        components[last] = null;
+        sparse[entity] = -1;
+        size--;
+    }
+
+    /**
+     * @param entity Id of the entity.
+     * @return Whether the entity has a component in this store.
+     */
+    public boolean has(int entity) {
+        return entity >= 0 && entity < sparse.length && sparse[entity] >= 0;
+    }
+
+    /**
+     * @param entity Id of the entity.
+     * @return Component of the entity, or null if it doesn't have one.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int entity) {
+        return has(entity) ? (T) components[sparse[entity]] : null;
+    }
+
+    /**
+     * @param index Index in the dense array, from 0 to size() - 1.
+     * @return Entity of the component in the given index.
+     */
+    public int getEntity(int index) { return entities[index]; }
+
+    /**
+     * @param index Index in the dense array, from 0 to size() - 1.
+     * @return Component in the given index.
+     */
+    @SuppressWarnings("unchecked")
+    public T getComponent(int index) { return (T) components[index]; }
+
+    /**
+     * @return Number of components in the store.
+     */
+    public int size() { return size; }
+}
\ No newline at end of file
@@ -4,11 +4,16 @@ import javafx.stage.Stage;
 import javafx.scene.canvas.*;
 import javafx.scene.*;
 import javafx.scene.input.KeyCode;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
 
 public class EngineTest extends Application {
 
     private GameLoop game;
     private TestScene ts;
+    private InputRecorder recorder;
+    private SceneManager scenes;
 
     public static void main(String [] args) {
         launch(args);
@@ -21,9 +26,43 @@ public class EngineTest extends Application {
         Group root = new Group();
         ts = new TestScene(root);
         game = new GameLoop(ts);
+        scenes = new SceneManager(stage, game);
+
+        // Start with "--record <file>" to record the input of the session
+        // for replaying it with ReplayDriver.
+        List<String> args = getParameters().getRaw();
+        int record = args.indexOf("--record");
+        if (record >= 0 && record + 1 < args.size()) {
+            try {
+                recorder = new InputRecorder(Paths.get(args.get(record + 1)), ts.getSeed());
+                ts.getKeyHandler().setRecorder(recorder);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Start with "--watch" to reload the map and images whenever
+        // they are changed on disk.
+        if (args.contains("--watch")) {
+            try {
+                MapWatcher watcher = new MapWatcher(ts.getTileMap(), ts.getCanvas());
+                watcher.start();
+                game.setMapWatcher(watcher);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
         game.start();
 
         stage.setScene(ts);
         stage.show();
     }
+
+    public void stop() throws IOException {
+        scenes.close();
+        if (recorder != null) {
+            recorder.finish(ts.getStateHash());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+/**
+ * A system of an EntityWorld. A system holds the behaviour for entities
+ * that have a certain set of components, for example moving every entity
+ * that has a Velocity and a GameObject. It declares which component types
+ * it reads and writes, so that systems that don't touch the same
+ * components can be run at the same time.
+ */
+public interface EntitySystem {
+
+    /**
+     * Updates every entity the system applies to. Called once per tick.
+     *
+     * @param world World whose entities are updated.
+     */
+    void update(EntityWorld world);
+
+    /**
+     * @return Component types the system only reads.
+     */
+    default Class<?>[] getReads() { return new Class<?>[0]; }
+
+    /**
+     * @return Component types the system changes.
+     */
+    default Class<?>[] getWrites() { return new Class<?>[0]; }
+}
\ No newline at end of file
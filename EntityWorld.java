@@ -0,0 +1,177 @@
+import java.util.*;
+
+/**
+ * Entity-component system on top of GameObjects. An entity is only an id,
+ * and everything it is made of is stored as components: a GameObject for
+ * its position and image, a Velocity for movement, a GravityBody for
+ * gravity and any classes the game defines. Each component type has its
+ * own ComponentStore, and the systems added to the world iterate only the
+ * stores they need, so thousands of different kinds of entities can share
+ * the same behaviour without subclassing.
+ *
+ * A GameScene returns its world from getWorld(), and step() runs the
+ * systems after update().
+ */
+public class EntityWorld {
+
+    /**
+     * Store of each component type.
+     */
+    private Map<Class<?>, ComponentStore<?>> stores = new HashMap<>();
+
+    /**
+     * The systems in the order they are run.
+     */
+    private List<EntitySystem> systems = new ArrayList<>();
+
+    /**
+     * Which entity ids are in use.
+     */
+    private BitSet alive = new BitSet();
+
+    /**
+     * Ids of destroyed entities, reused by create().
+     */
+    private int[] freeIds = new int[16];
+
+    /**
+     * Number of ids in freeIds.
+     */
+    private int freeCount = 0;
+
+    /**
+     * Next id that has never been used.
+     */
+    private int nextId = 0;
+
+    /**
+     * Creates an entity with no components.
+     *
+     * @return Id of the entity.
+     */
+    public int create() {
+        int entity = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        alive.set(entity);
+        return entity;
+    }
+
+    /**
+     * Removes an entity and all of its components. Its id may be reused
+     * by entities created later.
+     *
+     * @param entity Id of the entity.
+     */
+    public void destroy(int entity) {
+        if (!alive.get(entity)) {
+            return;
+        }
+        for (ComponentStore<?> store : stores.values()) {
+            store.remove(entity);
+        }
+        alive.clear(entity);
+
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = entity;
+    }
+
+    /**
+     * Gives an entity a component, replacing any component of the same
+     * class it had. The component is stored under its runtime class, so a
+     * subclass such as a Player that extends GameObject is not found with
+     * get(entity, GameObject.class). Use add(entity, type, component) to
+     * store it under a superclass.
+     *
+     * @param entity Id of the entity.
+     * @param component The component.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void add(int entity, T component) {
+        add(entity, (Class<T>) component.getClass(), component);
+    }
+
+    /**
+     * Gives an entity a component stored under the given class, replacing
+     * any component of that class it had.
+     *
+     * @param entity Id of the entity.
+     * @param type Class the component is stored and looked up under.
+     * @param component The component, an instance of the class.
+     */
+    public <T> void add(int entity, Class<T> type, T component) {
+        getStore(type).put(entity, component);
+    }
+
+    /**
+     * @param entity Id of the entity.
+     * @param type Class of the component.
+     * @return Component of the entity, or null if it doesn't have one.
+     */
+    public <T> T get(int entity, Class<T> type) {
+        return getStore(type).get(entity);
+    }
+
+    /**
+     * Removes a component from an entity.
+     *
+     * @param entity Id of the entity.
+     * @param type Class of the component.
+     */
+    public void remove(int entity, Class<?> type) {
+        getStore(type).remove(entity);
+    }
+
+    /**
+     * Returns the store of a component type, creating an empty one if
+     * there are no components of the type yet. Safe to call from systems
+     * that FrameScheduler runs at the same time.
+     *
+     * @param type Class of the components.
+     * @return Store of the components.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> ComponentStore<T> getStore(Class<T> type) {
+        ComponentStore<T> store = (ComponentStore<T>) stores.get(type);
+        if (store == null) {
+            store = new ComponentStore<>();
+            stores.put(type, store);
+        }
+        return store;
+    }
+
+    /**
+     * Runs every system once in the order they were added.
+     */
+    public void update() {
+        for (int i = 0 ; i < systems.size() ; i++) {
+            systems.get(i).update(this);
+        }
+    }
+
+    /**
+     * @param system System that is run on every update.
+     */
+    public void addSystem(EntitySystem system) { systems.add(system); }
+
+    /**
+     * @param system System that is no longer run.
+     */
+    public void removeSystem(EntitySystem system) { systems.remove(system); }
+
+    /**
+     * @return The systems in the order they are run.
+     */
+    public List<EntitySystem> getSystems() { return systems; }
+
+    /**
+     * @param entity Id of the entity.
+     * @return Whether the entity exists.
+     */
+    public boolean isAlive(int entity) { return entity >= 0 && alive.get(entity); }
+
+    /**
+     * @return Number of entities in the world.
+     */
+    public int getEntityCount() { return alive.cardinality(); }
+}
\ No newline at end of file
@@ -0,0 +1,520 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Flow field that leads every tile of a TileMap towards one goal tile.
+ * Instead of every agent searching its own path, the field is computed
+ * once and any number of GameObjects steer by looking up the direction of
+ * the tile they are on, which costs the same no matter how far the goal is.
+ *
+ * The field has two parts. The integration field holds the number of steps
+ * from each tile to the goal, found with a breadth-first search over the
+ * tiles that TileMap.getBlockedTiles() leaves open. The direction field
+ * points each tile at its neighbour closest to the goal. The map is divided
+ * into square chunks, and large maps compute the chunks in parallel.
+ *
+ * When tiles of the map are blocked or opened, the distances are repaired
+ * from the changed tiles instead of searched again. Tiles whose distance
+ * relied on a blocked tile are found first and made unreachable, then a
+ * breadth-first search seeded at them and at the opened tiles fills in
+ * their new distances. Only the chunks around the tiles it touched get new
+ * directions.
+ *
+ * FlowFieldCache keeps the fields of recently used goals.
+ */
+public class FlowField {
+
+    /**
+     * Width and height of a chunk in tiles.
+     */
+    public static final int CHUNK_SIZE = 16;
+
+    /**
+     * Distance of tiles from which the goal can't be reached.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * Direction of tiles that don't lead anywhere: the goal itself and
+     * blocked and unreachable tiles.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Smallest number of tiles whose chunks are computed in parallel.
+     */
+    private static final int PARALLEL_TILES = 16384;
+
+    /**
+     * Column offset of each of the eight directions.
+     */
+    private static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+
+    /**
+     * Row offset of each of the eight directions.
+     */
+    private static final int[] DY = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    /**
+     * Length of each direction's offset, for turning them into unit vectors.
+     */
+    private static final double[] LENGTH = {1, Math.sqrt(2), 1, Math.sqrt(2),
+                                            1, Math.sqrt(2), 1, Math.sqrt(2)};
+
+    /**
+     * Map whose tiles the field covers.
+     */
+    private TileMap map;
+
+    /**
+     * Column of the goal tile.
+     */
+    private int goalColumn;
+
+    /**
+     * Row of the goal tile.
+     */
+    private int goalRow;
+
+    /**
+     * Width of the field in tiles.
+     */
+    private int width;
+
+    /**
+     * Height of the field in tiles.
+     */
+    private int height;
+
+    /**
+     * Number of steps from each tile to the goal, or UNREACHABLE.
+     */
+    private int[] distances;
+
+    /**
+     * Direction of each tile as an index to DX and DY, or NONE.
+     */
+    private byte[] directions;
+
+    /**
+     * Version of the map the field was computed at, or -1.
+     */
+    private int version = -1;
+
+    /**
+     * Tiles that were blocked when the field was computed, or null.
+     */
+    private BitSet blocked;
+
+    /**
+     * Queue of tiles for the searches, kept between them.
+     */
+    private int[] queue;
+
+    /**
+     * Number of chunks in a row of chunks.
+     */
+    private int chunksAcross;
+
+    /**
+     * Chunks whose directions have to be computed again.
+     */
+    private boolean[] dirty;
+
+    /**
+     * Constructs the field. It is computed on the first update().
+     *
+     * @param map Map whose tiles the field covers.
+     * @param goalColumn Column of the goal tile.
+     * @param goalRow Row of the goal tile.
+     */
+    public FlowField(TileMap map, int goalColumn, int goalRow) {
+        this.map = map;
+        this.goalColumn = goalColumn;
+        this.goalRow = goalRow;
+    }
+
+    /**
+     * Computes the field again if the map has changed since it was last
+     * computed. Must be called on the game thread.
+     *
+     * @return Whether the field was computed.
+     */
+    public boolean update() {
+        int currentVersion = map.getVersion();
+        if (currentVersion == version && width == map.getMapWidth()
+                && height == map.getMapHeight()) {
+            return false;
+        }
+        compute(map.getBlockedTiles());
+        version = currentVersion;
+        return true;
+    }
+
+    /**
+     * Computes the integration field, or repairs it from the tiles whose
+     * blocking changed, then the directions of the chunks around the
+     * tiles whose distances changed.
+     *
+     * @param next Tiles that can't be walked through.
+     */
+    private void compute(BitSet next) {
+        boolean full = blocked == null;
+        if (width != map.getMapWidth() || height != map.getMapHeight()) {
+            width = map.getMapWidth();
+            height = map.getMapHeight();
+            distances = new int[width * height];
+            directions = new byte[width * height];
+            queue = new int[width * height];
+            chunksAcross = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            dirty = new boolean[chunksAcross * ((height + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            full = true;
+        }
+
+        if (!full) {
+            BitSet changed = (BitSet) blocked.clone();
+            changed.xor(next);
+            // Repairing many tiles costs more than searching again.
+            if (changed.cardinality() > width * height / 8) {
+                full = true;
+            } else if (!changed.isEmpty()) {
+                repair(next, changed);
+            }
+        }
+        if (full) {
+            integrate(next);
+            Arrays.fill(dirty, true);
+        }
+        blocked = next;
+
+        IntStream chunks = IntStream.range(0, dirty.length).filter(chunk -> dirty[chunk]);
+        if (width * height >= PARALLEL_TILES) {
+            chunks = chunks.parallel();
+        }
+        chunks.forEach(chunk -> {
+            computeDirections(next, distances, (chunk % chunksAcross) * CHUNK_SIZE,
+                              (chunk / chunksAcross) * CHUNK_SIZE);
+        });
+        Arrays.fill(dirty, false);
+    }
+
+    /**
+     * Fills in the number of steps from each tile to the goal with a
+     * breadth-first search.
+     */
+    private void integrate(BitSet blocked) {
+        Arrays.fill(distances, UNREACHABLE);
+        if (goalColumn < 0 || goalRow < 0 || goalColumn >= width || goalRow >= height) {
+            return;
+        }
+        int goal = goalRow * width + goalColumn;
+        if (blocked.get(goal)) {
+            return;
+        }
+
+        int head = 0;
+        int tail = 0;
+        distances[goal] = 0;
+        queue[tail++] = goal;
+
+        while (head < tail) {
+            int tile = queue[head++];
+            int column = tile % width;
+            int row = tile / width;
+            int distance = distances[tile] + 1;
+
+            // Only straight neighbours, every step costs the same.
+            for (int d = 0 ; d < 8 ; d += 2) {
+                int nextColumn = column + DX[d];
+                int nextRow = row + DY[d];
+                if (nextColumn < 0 || nextRow < 0 || nextColumn >= width || nextRow >= height) {
+                    continue;
+                }
+                int next = nextRow * width + nextColumn;
+                if (distances[next] == UNREACHABLE && !blocked.get(next)) {
+                    distances[next] = distance;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Repairs the distances after some tiles were blocked or opened.
+     *
+     * First every tile whose distance came through a newly blocked tile,
+     * and has no other neighbour one step closer to the goal, is marked,
+     * and the same is done for the tiles that relied on those. Marked
+     * tiles hold -1 - their old distance while this runs, and are made
+     * unreachable after it. Then the marked tiles and the opened tiles
+     * get a distance from their unmarked neighbours, and a breadth-first
+     * search goes out from them in order of distance, lowering every
+     * distance it can.
+     *
+     * @param next Tiles that can't be walked through.
+     * @param changed Tiles that were blocked or opened.
+     */
+    private void repair(BitSet next, BitSet changed) {
+        int marked = 0;
+        for (int t = changed.nextSetBit(0) ; t >= 0 ; t = changed.nextSetBit(t + 1)) {
+            touch(t);
+            if (next.get(t) && distances[t] != UNREACHABLE) {
+                distances[t] = -1 - distances[t];
+                queue[marked++] = t;
+            }
+        }
+
+        for (int head = 0 ; head < marked ; head++) {
+            int tile = queue[head];
+            int column = tile % width;
+            int row = tile / width;
+            int childDistance = -distances[tile];
+            for (int d = 0 ; d < 8 ; d += 2) {
+                int nextColumn = column + DX[d];
+                int nextRow = row + DY[d];
+                if (nextColumn < 0 || nextRow < 0 || nextColumn >= width || nextRow >= height) {
+                    continue;
+                }
+                int child = nextRow * width + nextColumn;
+                if (distances[child] == childDistance && !next.get(child)
+                        && !isSupported(next, nextColumn, nextRow)) {
+                    distances[child] = -1 - childDistance;
+                    queue[marked++] = child;
+                    touch(child);
+                }
+            }
+        }
+        for (int i = 0 ; i < marked ; i++) {
+            distances[queue[i]] = UNREACHABLE;
+        }
+
+        // Seeds as distance << 32 | tile, so that sorting orders them
+        // by distance.
+        long[] seeds = new long[marked + changed.cardinality()];
+        int seedCount = 0;
+        for (int i = 0 ; i < marked ; i++) {
+            seedCount = seed(next, queue[i], seeds, seedCount);
+        }
+        for (int t = changed.nextSetBit(0) ; t >= 0 ; t = changed.nextSetBit(t + 1)) {
+            seedCount = seed(next, t, seeds, seedCount);
+        }
+        Arrays.sort(seeds, 0, seedCount);
+
+        // Two queues in order of distance: the sorted seeds and the tiles
+        // reached from them. Always taking the closer head keeps the
+        // search in order of distance, so each tile is queued once.
+        int head = 0;
+        int tail = 0;
+        int nextSeed = 0;
+        while (nextSeed < seedCount || head < tail) {
+            int tile;
+            if (head < tail && (nextSeed == seedCount
+                    || distances[queue[head]] <= (int) (seeds[nextSeed] >>> 32))) {
+                tile = queue[head++];
+            } else {
+                long seed = seeds[nextSeed++];
+                tile = (int) seed;
+                if (distances[tile] != (int) (seed >>> 32)) {
+                    continue;
+                }
+            }
+
+            int column = tile % width;
+            int row = tile / width;
+            int distance = distances[tile] + 1;
+            for (int d = 0 ; d < 8 ; d += 2) {
+                int nextColumn = column + DX[d];
+                int nextRow = row + DY[d];
+                if (nextColumn < 0 || nextRow < 0 || nextColumn >= width || nextRow >= height) {
+                    continue;
+                }
+                int nextTile = nextRow * width + nextColumn;
+                if (distance < distances[nextTile] && !next.get(nextTile)) {
+                    distances[nextTile] = distance;
+                    queue[tail++] = nextTile;
+                    touch(nextTile);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether an open neighbour of the tile that isn't marked is
+     *         one step closer to the goal than the tile.
+     */
+    private boolean isSupported(BitSet next, int column, int row) {
+        int closer = distances[row * width + column] - 1;
+        for (int d = 0 ; d < 8 ; d += 2) {
+            int nextColumn = column + DX[d];
+            int nextRow = row + DY[d];
+            if (nextColumn < 0 || nextRow < 0 || nextColumn >= width || nextRow >= height) {
+                continue;
+            }
+            int neighbour = nextRow * width + nextColumn;
+            if (distances[neighbour] == closer && !next.get(neighbour)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives an open tile a distance from its neighbours and adds it to
+     * the seeds of the repair. Tiles with no reachable neighbour stay
+     * unreachable until the search reaches them.
+     *
+     * @return New number of seeds.
+     */
+    private int seed(BitSet next, int tile, long[] seeds, int seedCount) {
+        if (next.get(tile)) {
+            return seedCount;
+        }
+        int column = tile % width;
+        int row = tile / width;
+        int best = UNREACHABLE;
+        if (column == goalColumn && row == goalRow) {
+            best = 0;
+        } else {
+            for (int d = 0 ; d < 8 ; d += 2) {
+                int distance = distanceAt(distances, column + DX[d], row + DY[d]);
+                if (distance != UNREACHABLE && distance + 1 < best) {
+                    best = distance + 1;
+                }
+            }
+        }
+        if (best >= distances[tile]) {
+            return seedCount;
+        }
+        distances[tile] = best;
+        seeds[seedCount] = ((long) best << 32) | tile;
+        return seedCount + 1;
+    }
+
+    /**
+     * Marks the chunks whose directions depend on the distance of a tile:
+     * the chunk of the tile and of its neighbours.
+     */
+    private void touch(int tile) {
+        int column = tile % width;
+        int row = tile / width;
+        int firstChunkColumn = Math.max(0, column - 1) / CHUNK_SIZE;
+        int lastChunkColumn = Math.min(width - 1, column + 1) / CHUNK_SIZE;
+        int firstChunkRow = Math.max(0, row - 1) / CHUNK_SIZE;
+        int lastChunkRow = Math.min(height - 1, row + 1) / CHUNK_SIZE;
+        for (int chunkY = firstChunkRow ; chunkY <= lastChunkRow ; chunkY++) {
+            for (int chunkX = firstChunkColumn ; chunkX <= lastChunkColumn ; chunkX++) {
+                dirty[chunkY * chunksAcross + chunkX] = true;
+            }
+        }
+    }
+
+    /**
+     * Points every tile of a chunk at its neighbour closest to the goal.
+     * Diagonal moves are not allowed past the corners of blocked tiles.
+     */
+    private void computeDirections(BitSet blocked, int[] dist, int firstColumn, int firstRow) {
+        int lastColumn = Math.min(width, firstColumn + CHUNK_SIZE);
+        int lastRow = Math.min(height, firstRow + CHUNK_SIZE);
+
+        for (int row = firstRow ; row < lastRow ; row++) {
+            for (int column = firstColumn ; column < lastColumn ; column++) {
+                int tile = row * width + column;
+                int best = dist[tile];
+                int direction = NONE;
+
+                if (best != UNREACHABLE && best != 0) {
+                    for (int d = 0 ; d < 8 ; d++) {
+                        int distance = distanceAt(dist, column + DX[d], row + DY[d]);
+                        if (distance < best && (d % 2 == 0
+                                || (distanceAt(dist, column + DX[d], row) != UNREACHABLE
+                                    && distanceAt(dist, column, row + DY[d]) != UNREACHABLE))) {
+                            best = distance;
+                            direction = d;
+                        }
+                    }
+                }
+                directions[tile] = (byte) direction;
+            }
+        }
+    }
+
+    /**
+     * @return Distance of the tile, UNREACHABLE outside the field.
+     */
+    private int distanceAt(int[] dist, int column, int row) {
+        if (column < 0 || row < 0 || column >= width || row >= height) {
+            return UNREACHABLE;
+        }
+        return dist[row * width + column];
+    }
+
+    /**
+     * Moves a GameObject one step along the field from the tile its
+     * center is on, checking for collisions.
+     *
+     * @param object GameObject to move.
+     * @param speed Length of the step in pixels.
+     */
+    public void steer(GameObject object, double speed) {
+        double x = object.getX() + object.getWidth() / 2;
+        double y = object.getY() + object.getHeight() / 2;
+        object.moveXCheckCollision(getDirectionX(x, y) * speed);
+        object.moveYCheckCollision(getDirectionY(x, y) * speed);
+    }
+
+    /**
+     * @param column Column of a tile.
+     * @param row Row of a tile.
+     * @return Number of steps from the tile to the goal, or UNREACHABLE.
+     */
+    public int getDistance(int column, int row) {
+        return distances == null ? UNREACHABLE : distanceAt(distances, column, row);
+    }
+
+    /**
+     * @param column Column of a tile.
+     * @param row Row of a tile.
+     * @return Direction of the tile from 0 to 7, clockwise from right,
+     *         or NONE.
+     */
+    public int getDirection(int column, int row) {
+        if (directions == null || column < 0 || row < 0 || column >= width || row >= height) {
+            return NONE;
+        }
+        return directions[row * width + column];
+    }
+
+    /**
+     * @param x X-coordinate in pixels.
+     * @param y Y-coordinate in pixels.
+     * @return X-component of the unit vector towards the goal from the
+     *         tile at the point, 0 if there is no direction.
+     */
+    public double getDirectionX(double x, double y) {
+        int d = getDirection((int) Math.floor(x / map.getTileWidth()),
+                             (int) Math.floor(y / map.getTileHeight()));
+        return d == NONE ? 0 : DX[d] / LENGTH[d];
+    }
+
+    /**
+     * @param x X-coordinate in pixels.
+     * @param y Y-coordinate in pixels.
+     * @return Y-component of the unit vector towards the goal from the
+     *         tile at the point, 0 if there is no direction.
+     */
+    public double getDirectionY(double x, double y) {
+        int d = getDirection((int) Math.floor(x / map.getTileWidth()),
+                             (int) Math.floor(y / map.getTileHeight()));
+        return d == NONE ? 0 : DY[d] / LENGTH[d];
+    }
+
+    /**
+     * @return Column of the goal tile.
+     */
+    public int getGoalColumn() { return goalColumn; }
+
+    /**
+     * @return Row of the goal tile.
+     */
+    public int getGoalRow() { return goalRow; }
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+import java.util.*;
+
+/**
+ * Keeps the FlowFields of the most recently used goals of a TileMap, so
+ * that every agent heading to the same goal shares one field. A field is
+ * brought up to date when it is taken from the cache, so the cache must be
+ * used on the game thread.
+ */
+public class FlowFieldCache {
+
+    /**
+     * Default number of fields kept.
+     */
+    public static final int DEFAULT_SIZE = 16;
+
+    /**
+     * Map whose tiles the fields cover.
+     */
+    private TileMap map;
+
+    /**
+     * Fields by goal tile id, least recently used first.
+     */
+    private Map<Integer, FlowField> fields;
+
+    /**
+     * Constructs a cache of the default size.
+     *
+     * @param map Map whose tiles the fields cover.
+     */
+    public FlowFieldCache(TileMap map) {
+        this(map, DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs a cache.
+     *
+     * @param map Map whose tiles the fields cover.
+     * @param size Number of fields kept.
+     */
+    public FlowFieldCache(TileMap map, int size) {
+        this.map = map;
+        fields = new LinkedHashMap<Integer, FlowField>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Integer, FlowField> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns the field towards a goal tile, computing it if it isn't
+     * cached and updating it if the map has changed.
+     *
+     * @param goalColumn Column of the goal tile.
+     * @param goalRow Row of the goal tile.
+     * @return Up to date field towards the goal.
+     */
+    public FlowField get(int goalColumn, int goalRow) {
+        int key = goalRow * map.getMapWidth() + goalColumn;
+        FlowField field = fields.get(key);
+        if (field == null || field.getGoalColumn() != goalColumn || field.getGoalRow() != goalRow) {
+            field = new FlowField(map, goalColumn, goalRow);
+            fields.put(key, field);
+        }
+        field.update();
+        return field;
+    }
+
+    /**
+     * Returns the field towards the tile at a point.
+     *
+     * @param x X-coordinate of the goal in pixels.
+     * @param y Y-coordinate of the goal in pixels.
+     * @return Up to date field towards the tile at the point.
+     */
+    public FlowField getAt(double x, double y) {
+        return get((int) Math.floor(x / map.getTileWidth()),
+                   (int) Math.floor(y / map.getTileHeight()));
+    }
+
+    /**
+     * Removes every field.
+     */
+    public void clear() { fields.clear(); }
+
+    /**
+     * @return Number of fields in the cache.
+     */
+    public int size() { return fields.size(); }
+}
\ No newline at end of file
@@ -0,0 +1,11 @@
+/**
+ * Follow mode for GameCameras.
+ * 
+ * SNAP is the default mode. It keeps the target exactly in the center.
+ * DEAD_ZONE only moves when the target leaves a box around the center.
+ * LERP moves a fraction of the way towards the target every frame.
+ * LOOK_AHEAD is like LERP, but leads the target in the direction it moves.
+ */
+public enum FollowMode {
+    SNAP, DEAD_ZONE, LERP, LOOK_AHEAD
+}
\ No newline at end of file
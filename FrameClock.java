@@ -0,0 +1,40 @@
+/**
+ * Clock shared by everything that animates. GameLoop advances it once at
+ * the start of every frame, and animations read the time from it instead
+ * of keeping track of time themselves.
+ */
+public class FrameClock {
+
+    /**
+     * Timestamp of the previous frame in nanoseconds, or -1 before
+     * the first frame.
+     */
+    private long lastNanos = -1;
+
+    /**
+     * Time elapsed since the first frame in nanoseconds.
+     */
+    private long elapsedNanos = 0;
+
+    /**
+     * Advances the clock to the given timestamp.
+     *
+     * @param nanos Timestamp of the current frame in nanoseconds.
+     */
+    public void advance(long nanos) {
+        if (lastNanos >= 0 && nanos > lastNanos) {
+            elapsedNanos += nanos - lastNanos;
+        }
+        lastNanos = nanos;
+    }
+
+    /**
+     * @return Time elapsed since the first frame in milliseconds.
+     */
+    public long getMillis() { return elapsedNanos / 1000000; }
+
+    /**
+     * @return Time elapsed since the first frame in seconds.
+     */
+    public double getSeconds() { return elapsedNanos / 1e9; }
+}
\ No newline at end of file
@@ -0,0 +1,287 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the per-tick work of a scene as stages, such as input, AI,
+ * gravity, collision and camera, using several cores. Every stage
+ * declares the resources it reads and writes as names, for example
+ * "GameObject" or "camera". Two stages conflict if one of them writes a
+ * resource the other reads or writes; a stage then runs after every
+ * conflicting stage that was added before it. Stages that don't conflict
+ * run at the same time on a ForkJoinPool.
+ *
+ * The dependency graph is built once when stages are added or removed,
+ * and the time taken by every stage is recorded in the FrameStats given
+ * to run().
+ */
+public class FrameScheduler {
+
+    /**
+     * A single stage of the frame.
+     */
+    private static class Stage {
+
+        /**
+         * Name of the stage, used in FrameStats.
+         */
+        private String name;
+
+        /**
+         * Work of the stage.
+         */
+        private Runnable task;
+
+        /**
+         * Resources the stage only reads.
+         */
+        private Set<String> reads;
+
+        /**
+         * Resources the stage changes.
+         */
+        private Set<String> writes;
+
+        /**
+         * Indexes of the stages that wait for this one.
+         */
+        private int[] dependents = new int[0];
+
+        /**
+         * Number of stages this one waits for.
+         */
+        private int dependencies;
+
+        /**
+         * @return Whether this stage and the other can't run at the
+         *         same time.
+         */
+        private boolean conflicts(Stage other) {
+            return !Collections.disjoint(writes, other.writes)
+                || !Collections.disjoint(writes, other.reads)
+                || !Collections.disjoint(reads, other.writes);
+        }
+    }
+
+    /**
+     * Pool the stages are run on.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The stages in the order they were added.
+     */
+    private List<Stage> stages = new ArrayList<>();
+
+    /**
+     * Whether the dependency graph has to be rebuilt before the next run.
+     */
+    private boolean changed = true;
+
+    /**
+     * Constructs a scheduler that runs on the common ForkJoinPool.
+     */
+    public FrameScheduler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a scheduler that runs on the given pool.
+     *
+     * @param pool Pool the stages are run on.
+     */
+    public FrameScheduler(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Adds a stage.
+     *
+     * @param name Name of the stage, used in FrameStats.
+     * @param task Work of the stage.
+     * @param reads Resources the stage only reads.
+     * @param writes Resources the stage changes.
+     */
+    public void addStage(String name, Runnable task, String[] reads, String[] writes) {
+        Stage stage = new Stage();
+        stage.name = name;
+        stage.task = task;
+        stage.reads = new HashSet<>(Arrays.asList(reads));
+        stage.writes = new HashSet<>(Arrays.asList(writes));
+        stages.add(stage);
+        changed = true;
+    }
+
+    /**
+     * Adds a system of an EntityWorld as a stage. The component types the
+     * system reads and writes are its resources, named by their class.
+     *
+     * @param world World whose entities the system updates.
+     * @param system The system.
+     */
+    public void addSystem(EntityWorld world, EntitySystem system) {
+        addStage(system.getClass().getSimpleName(), () -> system.update(world),
+                 names(system.getReads()), names(system.getWrites()));
+    }
+
+    /**
+     * @return Names of the given classes.
+     */
+    private static String[] names(Class<?>[] types) {
+        String[] names = new String[types.length];
+        for (int i = 0 ; i < types.length ; i++) {
+            names[i] = types[i].getSimpleName();
+        }
+        return names;
+    }
+
+    /**
+     * Removes a stage.
+     *
+     * @param name Name of the stage.
+     */
+    public void removeStage(String name) {
+        for (Iterator<Stage> i = stages.iterator() ; i.hasNext() ; ) {
+            if (i.next().name.equals(name)) {
+                i.remove();
+                changed = true;
+            }
+        }
+    }
+
+    /**
+     * Works out which stages each stage has to wait for.
+     */
+    private void buildGraph() {
+        int n = stages.size();
+        List<List<Integer>> dependents = new ArrayList<>();
+        for (int i = 0 ; i < n ; i++) {
+            dependents.add(new ArrayList<>());
+            stages.get(i).dependencies = 0;
+        }
+
+        for (int j = 0 ; j < n ; j++) {
+            for (int i = 0 ; i < j ; i++) {
+                if (stages.get(i).conflicts(stages.get(j))) {
+                    dependents.get(i).add(j);
+                    stages.get(j).dependencies++;
+                }
+            }
+        }
+
+        for (int i = 0 ; i < n ; i++) {
+            List<Integer> list = dependents.get(i);
+            int[] array = new int[list.size()];
+            for (int k = 0 ; k < array.length ; k++) {
+                array[k] = list.get(k);
+            }
+            stages.get(i).dependents = array;
+        }
+        changed = false;
+    }
+
+    /**
+     * Runs every stage once. Returns when all of them have finished.
+     */
+    public void run() {
+        run(null);
+    }
+
+    /**
+     * Runs every stage once, recording the time taken by each stage.
+     * Returns when all of them have finished. If a stage throws an
+     * exception, the stages that wait for it are skipped and the
+     * exception is rethrown once the other stages have finished.
+     *
+     * @param stats Timings that the stages are recorded in, or null.
+     */
+    public void run(FrameStats stats) {
+        if (changed) {
+            buildGraph();
+        }
+        int n = stages.size();
+        if (n == 0) {
+            return;
+        }
+
+        AtomicInteger[] waiting = new AtomicInteger[n];
+        for (int i = 0 ; i < n ; i++) {
+            waiting[i] = new AtomicInteger(stages.get(i).dependencies);
+        }
+        boolean[] skipped = new boolean[n];
+        CountDownLatch done = new CountDownLatch(n);
+        Throwable[] failure = new Throwable[1];
+
+        for (int i = 0 ; i < n ; i++) {
+            if (stages.get(i).dependencies == 0) {
+                submit(i, waiting, skipped, done, failure, stats);
+            }
+        }
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        if (failure[0] != null) {
+            throw new RuntimeException("Stage failed", failure[0]);
+        }
+    }
+
+    /**
+     * Runs a stage on the pool and then submits the stages that were
+     * only waiting for it.
+     */
+    private void submit(int index, AtomicInteger[] waiting, boolean[] skipped,
+                        CountDownLatch done, Throwable[] failure, FrameStats stats) {
+        pool.execute(() -> {
+            Stage stage = stages.get(index);
+            boolean skip;
+            synchronized (skipped) {
+                skip = skipped[index];
+            }
+
+            if (!skip) {
+                long start = System.nanoTime();
+                try {
+                    stage.task.run();
+                } catch (Throwable t) {
+                    skip = true;
+                    synchronized (skipped) {
+                        if (failure[0] == null) {
+                            failure[0] = t;
+                        }
+                    }
+                }
+                if (stats != null) {
+                    stats.add(stage.name, System.nanoTime() - start);
+                }
+            }
+
+            for (int dependent : stage.dependents) {
+                if (skip) {
+                    synchronized (skipped) {
+                        skipped[dependent] = true;
+                    }
+                }
+                if (waiting[dependent].decrementAndGet() == 0) {
+                    submit(dependent, waiting, skipped, done, failure, stats);
+                }
+            }
+            done.countDown();
+        });
+    }
+
+    /**
+     * @return Names of the stages in the order they were added.
+     */
+    public List<String> getStageNames() {
+        List<String> names = new ArrayList<>();
+        for (Stage stage : stages) {
+            names.add(stage.name);
+        }
+        return names;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,142 @@
+import java.util.*;
+
+/**
+ * Collects timings of the different phases of a frame, such as applying
+ * object changes, updating the scene and drawing. For each phase it keeps
+ * the number of samples and the total, minimum and maximum time, so runs
+ * of different builds can be compared phase by phase.
+ */
+public class FrameStats {
+
+    /**
+     * Timings of a single phase.
+     */
+    public static class Phase {
+
+        /**
+         * Name of the phase.
+         */
+        private final String name;
+
+        /**
+         * Number of recorded samples.
+         */
+        private long count;
+
+        /**
+         * Sum of all recorded samples in nanoseconds.
+         */
+        private long totalNanos;
+
+        /**
+         * Shortest recorded sample in nanoseconds.
+         */
+        private long minNanos = Long.MAX_VALUE;
+
+        /**
+         * Longest recorded sample in nanoseconds.
+         */
+        private long maxNanos;
+
+        /**
+         * @param name Name of the phase.
+         */
+        private Phase(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param nanos Duration of one sample in nanoseconds.
+         */
+        private void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            minNanos = Math.min(minNanos, nanos);
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        /**
+         * @return Name of the phase.
+         */
+        public String getName() { return name; }
+
+        /**
+         * @return Number of recorded samples.
+         */
+        public long getCount() { return count; }
+
+        /**
+         * @return Sum of all samples in nanoseconds.
+         */
+        public long getTotalNanos() { return totalNanos; }
+
+        /**
+         * @return Shortest sample in nanoseconds, or 0 if there are none.
+         */
+        public long getMinNanos() { return count == 0 ? 0 : minNanos; }
+
+        /**
+         * @return Longest sample in nanoseconds.
+         */
+        public long getMaxNanos() { return maxNanos; }
+
+        /**
+         * @return Average sample in nanoseconds, or 0 if there are none.
+         */
+        public double getAverageNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s n=%d avg=%.1fus min=%.1fus max=%.1fus total=%.1fms",
+                    name, count, getAverageNanos() / 1e3, getMinNanos() / 1e3,
+                    maxNanos / 1e3, totalNanos / 1e6);
+        }
+    }
+
+    /**
+     * Phases in the order they were first recorded.
+     */
+    private Map<String, Phase> phases = new LinkedHashMap<>();
+
+    /**
+     * Records one sample of the given phase.
+     *
+     * @param phase Name of the phase.
+     * @param nanos Duration of the sample in nanoseconds.
+     */
+    public synchronized void add(String phase, long nanos) {
+        Phase p = phases.get(phase);
+        if (p == null) {
+            p = new Phase(phase);
+            phases.put(phase, p);
+        }
+        p.add(nanos);
+    }
+
+    /**
+     * @param phase Name of the phase.
+     * @return Timings of the phase, or null if it has no samples.
+     */
+    public synchronized Phase getPhase(String phase) { return phases.get(phase); }
+
+    /**
+     * @return Timings of all phases in the order they were first recorded.
+     */
+    public synchronized List<Phase> getPhases() { return new ArrayList<>(phases.values()); }
+
+    /**
+     * Discards all recorded samples.
+     */
+    public synchronized void reset() { phases.clear(); }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase p : phases.values()) {
+            sb.append(p).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
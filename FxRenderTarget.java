@@ -0,0 +1,88 @@
+import javafx.scene.canvas.*;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * RenderTarget that draws on a JavaFX Canvas through its GraphicsContext.
+ */
+public class FxRenderTarget implements RenderTarget {
+
+    /**
+     * The canvas.
+     */
+    private Canvas canvas;
+
+    /**
+     * Graphics context of the canvas.
+     */
+    private GraphicsContext gc;
+
+    /**
+     * Fill color last given to the graphics context, or null.
+     */
+    private Color fill;
+
+    /**
+     * Constructs the target.
+     *
+     * @param canvas The canvas.
+     */
+    public FxRenderTarget(Canvas canvas) {
+        this.canvas = canvas;
+        gc = canvas.getGraphicsContext2D();
+    }
+
+    @Override
+    public void begin(double left, double top, double width, double height,
+                      double originX, double originY, double scale) {
+        gc.save();
+        gc.beginPath();
+        gc.rect(left, top, width, height);
+        gc.clip();
+        gc.clearRect(left, top, width, height);
+        gc.translate(originX, originY);
+        gc.scale(scale, scale);
+    }
+
+    @Override
+    public void end() {
+        gc.restore();
+        fill = null;
+    }
+
+    @Override
+    public void drawImage(Image image, double x, double y) {
+        gc.drawImage(image, x, y);
+    }
+
+    @Override
+    public void drawImage(Image image, double x, double y, double width, double height) {
+        gc.drawImage(image, x, y, width, height);
+    }
+
+    @Override
+    public void drawImage(Image image, double sx, double sy, double sw, double sh,
+                          double dx, double dy, double dw, double dh) {
+        gc.drawImage(image, sx, sy, sw, sh, dx, dy, dw, dh);
+    }
+
+    @Override
+    public void fillRect(Color color, double x, double y, double width, double height) {
+        if (color != fill) {
+            gc.setFill(color);
+            fill = color;
+        }
+        gc.fillRect(x, y, width, height);
+    }
+
+    @Override
+    public double getWidth() { return canvas.getWidth(); }
+
+    @Override
+    public double getHeight() { return canvas.getHeight(); }
+
+    /**
+     * @return The canvas.
+     */
+    public Canvas getCanvas() { return canvas; }
+}
\ No newline at end of file
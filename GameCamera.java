@@ -2,6 +2,15 @@
  * GameCamera is used to control which part of the map is 
  * visible at each moment. By default camera is in the upper
  * left corner of the screen.
+ * 
+ * The camera can follow a GameObject using one of the FollowModes.
+ * Everything is drawn at the snapped position of the camera, which is
+ * rounded to whole pixels, so the camera doesn't shimmer and a camera
+ * that moves less than half a pixel doesn't cause a redraw.
+ * 
+ * A camera draws into a viewport, which is the whole canvas by default.
+ * A scene can have several cameras with their own viewports and zoom
+ * levels for split-screen, minimaps and picture-in-picture views.
  */
 public class GameCamera {
     
@@ -16,17 +25,32 @@ public class GameCamera {
     private double y;
 
     /**
-     * Width of the canvas in pixels. Used for correctly
-     * positioning the camera on the screen.
+     * Width of the viewport in pixels, by default the width of the
+     * canvas. Used for correctly positioning the camera on the screen.
      */
     private double canvasWidth;
 
     /**
-     * Height of the canvas in pixels. Used for correctly
-     * positioning the camera on the screen.
+     * Height of the viewport in pixels, by default the height of the
+     * canvas. Used for correctly positioning the camera on the screen.
      */
     private double canvasHeight;
 
+    /**
+     * X-coordinate of the viewport on the canvas.
+     */
+    private double viewportX = 0;
+
+    /**
+     * Y-coordinate of the viewport on the canvas.
+     */
+    private double viewportY = 0;
+
+    /**
+     * How many pixels of the viewport one pixel of the game world takes.
+     */
+    private double zoom = 1;
+
     /**
      * Width of the whole game world in pixels. Used for correctly
      * positioning the camera on the screen.
@@ -39,6 +63,75 @@ public class GameCamera {
      */
     private double worldHeight = 0;
 
+    /**
+     * GameObject that the camera follows, or null.
+     */
+    private GameObject target;
+
+    /**
+     * How the camera follows its target.
+     */
+    private FollowMode followMode = FollowMode.SNAP;
+
+    /**
+     * Width of the box around the center of the canvas that the target
+     * can move in without moving the camera in DEAD_ZONE mode.
+     */
+    private double deadZoneWidth = 64;
+
+    /**
+     * Height of the box around the center of the canvas that the target
+     * can move in without moving the camera in DEAD_ZONE mode.
+     */
+    private double deadZoneHeight = 64;
+
+    /**
+     * Fraction of the distance to the target that the camera moves every
+     * frame in LERP and LOOK_AHEAD modes.
+     */
+    private double lerp = 0.1;
+
+    /**
+     * How many frames ahead of the target the camera aims in
+     * LOOK_AHEAD mode.
+     */
+    private double lookAhead = 20;
+
+    /**
+     * Current look-ahead offset in pixels.
+     */
+    private double lookX = 0;
+
+    /**
+     * Current look-ahead offset in pixels.
+     */
+    private double lookY = 0;
+
+    /**
+     * X-coordinate of the target on the previous update.
+     */
+    private double lastTargetX;
+
+    /**
+     * Y-coordinate of the target on the previous update.
+     */
+    private double lastTargetY;
+
+    /**
+     * Snapped x-coordinate the camera was last rendered at.
+     */
+    private double renderedX;
+
+    /**
+     * Snapped y-coordinate the camera was last rendered at.
+     */
+    private double renderedY;
+
+    /**
+     * Whether the camera has been rendered at all.
+     */
+    private boolean rendered = false;
+
     /**
      * Default constructor. In case user doesn't want to add a camera,
      * the GameScene class automatically uses this constructor.
@@ -80,8 +173,104 @@ public class GameCamera {
      * @param object GameObject to center the camera on.
      */
     public void center(GameObject object) {
-        setPosition(object.getX() + (object.getWidth() / 2) - (canvasWidth / 2),
-                object.getY() + (object.getHeight() / 2) - (canvasHeight / 2));
+        setPosition(object.getX() + (object.getWidth() / 2) - (getViewWidth() / 2),
+                object.getY() + (object.getHeight() / 2) - (getViewHeight() / 2));
+    }
+
+    /**
+     * Makes the camera follow the specified GameObject. The camera moves
+     * towards it on every update() according to the follow mode.
+     * 
+     * @param object GameObject to follow, or null to stop following.
+     */
+    public void follow(GameObject object) {
+        target = object;
+        lookX = 0;
+        lookY = 0;
+        if (object != null) {
+            lastTargetX = object.getX();
+            lastTargetY = object.getY();
+        }
+    }
+
+    /**
+     * Moves the camera towards the followed GameObject according to the
+     * follow mode. Should be called once per frame. Does nothing if the
+     * camera doesn't follow anything.
+     */
+    public void update() {
+        if (target == null) {
+            return;
+        }
+
+        // Camera position that would put the target in the center.
+        double centerX = target.getX() + (target.getWidth() / 2) - (getViewWidth() / 2);
+        double centerY = target.getY() + (target.getHeight() / 2) - (getViewHeight() / 2);
+
+        switch (followMode) {
+            case DEAD_ZONE:
+                setPosition(approach(x, centerX, deadZoneWidth / 2),
+                            approach(y, centerY, deadZoneHeight / 2));
+                break;
+            case LERP:
+                setPosition(lerp(x, centerX), lerp(y, centerY));
+                break;
+            case LOOK_AHEAD:
+                lookX += ((target.getX() - lastTargetX) * lookAhead - lookX) * lerp;
+                lookY += ((target.getY() - lastTargetY) * lookAhead - lookY) * lerp;
+                setPosition(lerp(x, centerX + lookX), lerp(y, centerY + lookY));
+                break;
+            default:
+                setPosition(centerX, centerY);
+                break;
+        }
+
+        lastTargetX = target.getX();
+        lastTargetY = target.getY();
+    }
+
+    /**
+     * @param position Current coordinate of the camera.
+     * @param goal Coordinate that would center the target.
+     * @param halfZone Half of the size of the dead zone.
+     * @return Closest coordinate to the current one that keeps the target
+     *         within the dead zone.
+     */
+    private static double approach(double position, double goal, double halfZone) {
+        if (goal - position > halfZone) {
+            return goal - halfZone;
+        } else if (position - goal > halfZone) {
+            return goal + halfZone;
+        }
+        return position;
+    }
+
+    /**
+     * @param position Current coordinate of the camera.
+     * @param goal Coordinate the camera moves towards.
+     * @return Coordinate a fraction of the way towards the goal. Snaps to
+     *         the goal once the remaining distance is negligible.
+     */
+    private double lerp(double position, double goal) {
+        double next = position + (goal - position) * lerp;
+        return Math.abs(goal - next) < 0.01 ? goal : next;
+    }
+
+    /**
+     * @return Whether the snapped position of the camera differs from the
+     *         one it was last rendered at.
+     */
+    public boolean hasMovedSinceRender() {
+        return !rendered || getSnappedX() != renderedX || getSnappedY() != renderedY;
+    }
+
+    /**
+     * Remembers the current snapped position as the rendered one.
+     */
+    public void markRendered() {
+        renderedX = getSnappedX();
+        renderedY = getSnappedY();
+        rendered = true;
     }
 
     /**
@@ -93,18 +282,21 @@ public class GameCamera {
      * @param y Y-coordinate to be set.
      */
     public void setPosition(double x, double y) {
-        if (x < 0 || worldWidth < canvasWidth) {
+        double viewWidth = getViewWidth();
+        double viewHeight = getViewHeight();
+
+        if (x < 0 || worldWidth < viewWidth) {
             this.x = 0;
-        } else if (x > worldWidth - canvasWidth) {
-            this.x = worldWidth - canvasWidth;
+        } else if (x > worldWidth - viewWidth) {
+            this.x = worldWidth - viewWidth;
         } else {
             this.x = x;
         }
         
-        if (y < 0 || worldHeight < canvasHeight) {
+        if (y < 0 || worldHeight < viewHeight) {
             this.y = 0;
-        } else if (y > worldHeight - canvasHeight) {
-            this.y = worldHeight - canvasHeight;
+        } else if (y > worldHeight - viewHeight) {
+            this.y = worldHeight - viewHeight;
         } else {
             this.y = y;
         }
@@ -119,6 +311,12 @@ public class GameCamera {
      * @param x X-coordinate of the camera.
      */
     public void setX(double x) { this.x = x; }
+
+    /**
+     * @return X-coordinate of the camera rounded to a whole pixel of the
+     *         viewport. Everything is drawn at this position.
+     */
+    public double getSnappedX() { return Math.round(x * zoom) / zoom; }
     
     /**
      * @return Y-coordinate of the camera.
@@ -130,6 +328,12 @@ public class GameCamera {
      */
     public void setY(double y) { this.y = y; }
 
+    /**
+     * @return Y-coordinate of the camera rounded to a whole pixel of the
+     *         viewport. Everything is drawn at this position.
+     */
+    public double getSnappedY() { return Math.round(y * zoom) / zoom; }
+
     /**
      * @return Width of the game world in pixels.
      */
@@ -149,4 +353,110 @@ public class GameCamera {
      * @param height Height of the game world in pixels.
      */
     public void setWorldHeight(double height) { worldHeight = height; }
+
+    /**
+     * @return GameObject that the camera follows, or null.
+     */
+    public GameObject getTarget() { return target; }
+
+    /**
+     * @return How the camera follows its target.
+     */
+    public FollowMode getFollowMode() { return followMode; }
+
+    /**
+     * @param mode How the camera follows its target.
+     */
+    public void setFollowMode(FollowMode mode) { followMode = mode; }
+
+    /**
+     * @param width Width of the dead zone in pixels.
+     * @param height Height of the dead zone in pixels.
+     */
+    public void setDeadZone(double width, double height) {
+        deadZoneWidth = width;
+        deadZoneHeight = height;
+    }
+
+    /**
+     * @return Fraction of the distance to the target moved every frame.
+     */
+    public double getLerp() { return lerp; }
+
+    /**
+     * @param lerp Fraction of the distance to the target moved every
+     *             frame, between 0 and 1.
+     */
+    public void setLerp(double lerp) { this.lerp = lerp; }
+
+    /**
+     * @return How many frames ahead of the target the camera aims.
+     */
+    public double getLookAhead() { return lookAhead; }
+
+    /**
+     * @param frames How many frames ahead of the target the camera aims.
+     */
+    public void setLookAhead(double frames) { lookAhead = frames; }
+
+    /**
+     * Sets the area of the canvas the camera draws into.
+     * 
+     * @param x X-coordinate of the viewport on the canvas.
+     * @param y Y-coordinate of the viewport on the canvas.
+     * @param width Width of the viewport in pixels.
+     * @param height Height of the viewport in pixels.
+     */
+    public void setViewport(double x, double y, double width, double height) {
+        viewportX = x;
+        viewportY = y;
+        canvasWidth = width;
+        canvasHeight = height;
+        rendered = false;
+    }
+
+    /**
+     * @return X-coordinate of the viewport on the canvas.
+     */
+    public double getViewportX() { return viewportX; }
+
+    /**
+     * @return Y-coordinate of the viewport on the canvas.
+     */
+    public double getViewportY() { return viewportY; }
+
+    /**
+     * @return Width of the viewport in pixels, or 0 if it hasn't been set.
+     */
+    public double getViewportWidth() { return canvasWidth; }
+
+    /**
+     * @return Height of the viewport in pixels, or 0 if it hasn't been set.
+     */
+    public double getViewportHeight() { return canvasHeight; }
+
+    /**
+     * @return Width of the part of the game world the camera shows.
+     */
+    public double getViewWidth() { return canvasWidth / zoom; }
+
+    /**
+     * @return Height of the part of the game world the camera shows.
+     */
+    public double getViewHeight() { return canvasHeight / zoom; }
+
+    /**
+     * @return How many pixels of the viewport one pixel of the game
+     *         world takes.
+     */
+    public double getZoom() { return zoom; }
+
+    /**
+     * @param zoom How many pixels of the viewport one pixel of the game
+     *             world takes, for example 0.25 for a minimap.
+     */
+    public void setZoom(double zoom) {
+        this.zoom = zoom;
+        rendered = false;
+    }
 }
\ No newline at end of file
@@ -2,35 +2,104 @@ import javafx.scene.canvas.*;
 import javafx.scene.*;
 import java.util.*;
 import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 /**
  * Class that contains a canvas and a list of game objects to be drawn
  * on that canvas. Can be used as a sort of "level" by changing which
  * canvas is the currently shown one in GameScenes.
+ * 
+ * The canvas keeps what was drawn on it between frames, so render() only
+ * redraws the areas that changed: the old and new areas of GameObjects
+ * that moved or changed their image or were added or removed, and the
+ * chunks of the tile map whose animated tiles changed. Everything is
+ * redrawn when the camera moves. Changes the canvas can't see, such as
+ * editing tiles with TileLayer.set() instead of TileMap.setTile(), should
+ * be followed by invalidate().
+ *
+ * Everything is drawn through a RenderTarget: normally a JavaFX Canvas,
+ * or a SoftwareRenderer for drawing without a screen.
  */
 public class GameCanvas {
 
     /**
-     * Canvas that the game objects are drawn on.
+     * Canvas that the game objects are drawn on, or null if they are
+     * drawn on another render target.
      */
     private Canvas canvas;
 
     /**
-     * This object's methods are used for drawing game objects on the canvas.
+     * Surface that everything is drawn on.
      */
-    private GraphicsContext gc;
+    private RenderTarget target;
 
     /**
      * List of game objects that the GameCanvas will draw.
      */
-    private List<GameObject> objectList = new ArrayList<>();
+    private GameObjectList objectList = new GameObjectList();
 
     /**
      * Background that will be drawn behind all game objects.
      */
     private Image background;
 
+    /**
+     * Parallax layers drawn behind all game objects, after the background.
+     * The first layer is the farthest one.
+     */
+    private List<ParallaxLayer> parallaxLayers = new ArrayList<>();
+
+    /**
+     * Whether everything has to be redrawn on the next frame.
+     */
+    private boolean invalidated = true;
+
+    /**
+     * Whether everything is redrawn on the current frame.
+     */
+    private boolean fullRedraw = true;
+
+    /**
+     * Bounds of the area of the game world that has to be redrawn on the
+     * current frame. Empty when left is greater than right.
+     */
+    private double dirtyLeft, dirtyTop, dirtyRight, dirtyBottom;
+
+    /**
+     * Bounds of the area of the canvas that has been redrawn on the
+     * current frame. Cameras whose viewports overlap it redraw it too,
+     * so a picture-in-picture view isn't painted over by the main view.
+     */
+    private double drawnLeft, drawnTop, drawnRight, drawnBottom;
+
+    /**
+     * Area of the view of the camera being drawn by render() as {left,
+     * top, right, bottom}, reused every frame.
+     */
+    private double[] clip = new double[4];
+
+    /**
+     * Whether render() is drawing the area in clip.
+     */
+    private boolean clipping = false;
+
+    /**
+     * Whole view of a camera as {left, top, right, bottom}, reused by
+     * getDrawnArea() when render() isn't drawing.
+     */
+    private double[] view = new double[4];
+
+    /**
+     * GameObjects found in the area being drawn, reused every frame.
+     */
+    private List<GameObject> visible = new ArrayList<>();
+
+    /**
+     * Particle emitters drawn on top of the GameObjects.
+     */
+    private List<ParticleEmitter> emitters = new ArrayList<>();
+
     /**
      * Constructs a GameCanvas with the necessary attributes.
      * 
@@ -39,7 +108,17 @@ public class GameCanvas {
      */
     public GameCanvas(double width, double height) {
         canvas = new Canvas(width, height);
-        gc = canvas.getGraphicsContext2D();
+        target = new FxRenderTarget(canvas);
+    }
+
+    /**
+     * Constructs a GameCanvas that draws on the given render target
+     * instead of a JavaFX Canvas, for example a SoftwareRenderer.
+     * 
+     * @param target Surface that everything is drawn on.
+     */
+    public GameCanvas(RenderTarget target) {
+        this.target = target;
     }
 
     /**
@@ -50,6 +129,9 @@ public class GameCanvas {
      * Smallest index = drawn first (under all others)
      * Largest index = drawn last (on top of all others)
      * 
+     * The object is added to the list at the start of the next frame,
+     * so it is safe to add objects during GameScene.update().
+     * 
      * @param object GameObject to be added to list
      */
     public void add(GameObject object) {
@@ -57,30 +139,424 @@ public class GameCanvas {
     }
 
     /**
-     * Draws background and all GameObjects on the canvas, adjusting the
-     * drawing location depending on the position of the camera.
+     * Removes specified GameObject from the list of GameObjects. The object
+     * is removed at the start of the next frame, so it is safe to remove
+     * objects during GameScene.update().
+     * 
+     * @param object GameObject to be removed from list
+     */
+    public void remove(GameObject object) {
+        objectList.remove(object);
+    }
+
+    /**
+     * Adds a particle emitter whose particles are updated on every step
+     * of the scene and drawn on top of the GameObjects.
+     * 
+     * @param emitter Particle emitter to be added.
+     */
+    public void addEmitter(ParticleEmitter emitter) {
+        emitters.add(emitter);
+    }
+
+    /**
+     * @param emitter Particle emitter to be removed.
+     */
+    public void removeEmitter(ParticleEmitter emitter) {
+        if (emitters.remove(emitter)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Advances the animation of every GameObject to the given time of
+     * the shared clock.
+     *
+     * @param millis Time of the shared clock in milliseconds.
+     */
+    public void updateAnimations(long millis) {
+        for (int i = 0 ; i < objectList.size() ; i++) {
+            objectList.get(i).updateAnimation(millis);
+        }
+    }
+
+    /**
+     * Moves the particles of every emitter by one tick.
+     */
+    public void updateEmitters() {
+        for (int i = 0 ; i < emitters.size() ; i++) {
+            emitters.get(i).update();
+        }
+    }
+
+    /**
+     * Works out which areas of the game world have to be redrawn on this
+     * frame. Must be called once per frame after the scene has been
+     * updated and the tile animations advanced, before render().
+     * 
+     * @param map Tile map whose changed animation chunks are redrawn,
+     *            or null.
+     */
+    public void beginFrame(TileMap map) {
+        fullRedraw = invalidated;
+        invalidated = false;
+
+        dirtyLeft = Double.POSITIVE_INFINITY;
+        dirtyTop = Double.POSITIVE_INFINITY;
+        dirtyRight = Double.NEGATIVE_INFINITY;
+        dirtyBottom = Double.NEGATIVE_INFINITY;
+
+        drawnLeft = Double.POSITIVE_INFINITY;
+        drawnTop = Double.POSITIVE_INFINITY;
+        drawnRight = Double.NEGATIVE_INFINITY;
+        drawnBottom = Double.NEGATIVE_INFINITY;
+
+        // Objects removed since the previous frame leave their old area.
+        double[] removed = objectList.getRemovedArea();
+        addDirty(removed[0], removed[1], removed[2] - removed[0], removed[3] - removed[1]);
+        objectList.clearRemovedArea();
+
+        // Both the area an object was drawn in and the area it will be
+        // drawn in have to be redrawn. Added objects have only the latter.
+        for (int i = 0 ; i < objectList.size() ; i++) {
+            GameObject o = objectList.get(i);
+            if (o.hasChangedSinceRender()) {
+                if (o.wasDrawn()) {
+                    double[] a = o.getRenderedArea();
+                    addDirty(a[0], a[1], a[2], a[3]);
+                }
+                if (o.isDrawn()) {
+                    addDirty(o.getX(), o.getY(), o.getWidth(), o.getHeight());
+                }
+                o.markRendered();
+            }
+        }
+
+        // Particles move every tick, so the areas they cover now and
+        // covered on the previous frame are always redrawn.
+        for (int i = 0 ; i < emitters.size() ; i++) {
+            ParticleEmitter emitter = emitters.get(i);
+            double[] old = emitter.getRenderedBounds();
+            double[] now = emitter.getBounds();
+            addDirty(old[0], old[1], old[2] - old[0], old[3] - old[1]);
+            addDirty(now[0], now[1], now[2] - now[0], now[3] - now[1]);
+            emitter.markRendered();
+        }
+
+        if (map != null) {
+            TileAnimations animations = map.getAnimations();
+            BitSet chunks = animations.getDirtyChunks();
+            int across = animations.getChunksAcross();
+            double chunkWidth = TileAnimations.CHUNK_SIZE * map.getTileWidth();
+            double chunkHeight = TileAnimations.CHUNK_SIZE * map.getTileHeight();
+
+            for (int c = chunks.nextSetBit(0) ; c >= 0 ; c = chunks.nextSetBit(c + 1)) {
+                addDirty((c % across) * chunkWidth, (c / across) * chunkHeight,
+                         chunkWidth, chunkHeight);
+            }
+        }
+    }
+
+    /**
+     * Adds an area of the game world to the area that is redrawn. Areas
+     * with no width or height are ignored.
+     */
+    private void addDirty(double x, double y, double width, double height) {
+        if (!(width >= 0 && height >= 0)) {
+            return;
+        }
+        dirtyLeft = Math.min(dirtyLeft, x);
+        dirtyTop = Math.min(dirtyTop, y);
+        dirtyRight = Math.max(dirtyRight, x + width);
+        dirtyBottom = Math.max(dirtyBottom, y + height);
+    }
+
+    /**
+     * Makes the next frame redraw everything.
+     */
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    /**
+     * Renders the scene through each camera in turn, in its own viewport.
+     * All cameras find the objects in their view from the same spatial
+     * index of the object list.
+     * 
+     * @param cameras Cameras in drawing order.
+     * @param map Tile map to be drawn, or null.
+     */
+    public void render(List<GameCamera> cameras, TileMap map) {
+        for (int i = 0 ; i < cameras.size() ; i++) {
+            render(cameras.get(i), map);
+        }
+    }
+
+    /**
+     * Draws the background, the tile map and all GameObjects as seen by
+     * the camera, in its viewport. If the camera hasn't moved since it was
+     * last rendered, only the area that changed since the previous frame
+     * is redrawn, and nothing at all if nothing changed.
      * 
      * @param camera Camera that adjusts the drawing location.
+     * @param map Tile map to be drawn, or null.
      */
-    public void drawObjects(GameCamera camera) {
-        double cameraX = camera.getX();
-        double cameraY = camera.getY();
+    public void render(GameCamera camera, TileMap map) {
+        double cameraX = camera.getSnappedX();
+        double cameraY = camera.getSnappedY();
+        double zoom = camera.getZoom();
+        double viewportX = camera.getViewportX();
+        double viewportY = camera.getViewportY();
+
+        double left = viewportX;
+        double top = viewportY;
+        double right = viewportX + getViewportWidth(camera);
+        double bottom = viewportY + getViewportHeight(camera);
+
+        if (!fullRedraw && !camera.hasMovedSinceRender()) {
+            // The dirty area is widened by a pixel to cover the edges
+            // of images drawn at fractional coordinates.
+            double dirtyX = Math.floor(viewportX + (dirtyLeft - cameraX) * zoom) - 1;
+            double dirtyY = Math.floor(viewportY + (dirtyTop - cameraY) * zoom) - 1;
+            double dirtyX2 = Math.ceil(viewportX + (dirtyRight - cameraX) * zoom) + 1;
+            double dirtyY2 = Math.ceil(viewportY + (dirtyBottom - cameraY) * zoom) + 1;
+
+            left = Math.max(left, Math.min(dirtyX, drawnLeft));
+            top = Math.max(top, Math.min(dirtyY, drawnTop));
+            right = Math.min(right, Math.max(dirtyX2, drawnRight));
+            bottom = Math.min(bottom, Math.max(dirtyY2, drawnBottom));
+
+            if (right <= left || bottom <= top) {
+                return;
+            }
+        }
+
+        target.begin(left, top, right - left, bottom - top, viewportX, viewportY, zoom);
+        clip[0] = (left - viewportX) / zoom;
+        clip[1] = (top - viewportY) / zoom;
+        clip[2] = (right - viewportX) / zoom;
+        clip[3] = (bottom - viewportY) / zoom;
+        clipping = true;
+        double width = clip[2] - clip[0];
+        double height = clip[3] - clip[1];
+
+        drawBackground(camera);
+        if (map != null) {
+            map.draw(camera, clip[0] + cameraX, clip[1] + cameraY, width, height);
+        }
+        drawObjects(camera);
+        drawParticles(camera);
+        if (map != null) {
+            map.drawForeground(camera, clip[0] + cameraX, clip[1] + cameraY, width, height);
+        }
+
+        clipping = false;
+        target.end();
+        camera.markRendered();
+
+        drawnLeft = Math.min(drawnLeft, left);
+        drawnTop = Math.min(drawnTop, top);
+        drawnRight = Math.max(drawnRight, right);
+        drawnBottom = Math.max(drawnBottom, bottom);
+    }
+
+    /**
+     * @return Width of the viewport of the camera, or of the canvas if
+     *         the camera has no viewport.
+     */
+    private double getViewportWidth(GameCamera camera) {
+        return camera.getViewportWidth() > 0 ? camera.getViewportWidth() : target.getWidth();
+    }
+
+    /**
+     * @return Height of the viewport of the camera, or of the canvas if
+     *         the camera has no viewport.
+     */
+    private double getViewportHeight(GameCamera camera) {
+        return camera.getViewportHeight() > 0 ? camera.getViewportHeight() : target.getHeight();
+    }
+
+    /**
+     * @return Area of the view of the camera being drawn as {left, top,
+     *         right, bottom}, relative to the snapped camera position.
+     */
+    private double[] getDrawnArea(GameCamera camera) {
+        if (clipping) {
+            return clip;
+        }
+        view[0] = 0;
+        view[1] = 0;
+        view[2] = getViewportWidth(camera) / camera.getZoom();
+        view[3] = getViewportHeight(camera) / camera.getZoom();
+        return view;
+    }
+
+    /**
+     * Draws the background and the parallax layers on the canvas,
+     * adjusting the drawing location depending on the position of the
+     * camera. Only the part of each image that is on the canvas is drawn,
+     * so large images cost no more than small ones.
+     * 
+     * @param camera Camera that adjusts the drawing location.
+     */
+    public void drawBackground(GameCamera camera) {
+        double cameraX = camera.getSnappedX();
+        double cameraY = camera.getSnappedY();
+        double[] area = getDrawnArea(camera);
 
         if(background != null) {
-            gc.drawImage(background, 0 - cameraX, 0 - cameraY);
+            drawVisible(background, area, 0 - cameraX, 0 - cameraY);
+        }
+
+        for (ParallaxLayer layer : parallaxLayers) {
+            Image image = layer.getImage();
+            double width = image.getWidth();
+            double height = image.getHeight();
+            if (width <= 0 || height <= 0) {
+                continue;
+            }
+
+            // Location of the first copy of the image on the canvas.
+            double originX = layer.getX() - cameraX * layer.getScrollX();
+            double originY = layer.getY() - cameraY * layer.getScrollY();
+
+            // Range of the copies that cover the canvas.
+            int firstX = 0;
+            int lastX = 0;
+            int firstY = 0;
+            int lastY = 0;
+            if (layer.getRepeatX()) {
+                firstX = (int) Math.floor((area[0] - originX) / width);
+                lastX = (int) Math.floor((area[2] - originX) / width);
+            }
+            if (layer.getRepeatY()) {
+                firstY = (int) Math.floor((area[1] - originY) / height);
+                lastY = (int) Math.floor((area[3] - originY) / height);
+            }
+
+            for (int i = firstY ; i <= lastY ; i++) {
+                for (int j = firstX ; j <= lastX ; j++) {
+                    drawVisible(image, area, originX + j * width, originY + i * height);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the part of the image that is in the area being drawn, using
+     * the source rectangle of drawImage to skip the rest.
+     * 
+     * @param image Image to be drawn in its natural size.
+     * @param area Area being drawn as {left, top, right, bottom}.
+     * @param x X-coordinate of the image relative to the camera.
+     * @param y Y-coordinate of the image relative to the camera.
+     */
+    private void drawVisible(Image image, double[] area, double x, double y) {
+        double left = Math.max(0, area[0] - x);
+        double top = Math.max(0, area[1] - y);
+        double right = Math.min(image.getWidth(), area[2] - x);
+        double bottom = Math.min(image.getHeight(), area[3] - y);
+
+        if (right > left && bottom > top) {
+            target.drawImage(image, left, top, right - left, bottom - top,
+                             x + left, y + top, right - left, bottom - top);
+        }
+    }
+
+    /**
+     * Draws all GameObjects on the canvas, adjusting the drawing
+     * location depending on the position of the camera. Only the objects
+     * in the view of the camera, or in the area being redrawn, are drawn.
+     * They are found from the spatial index of the object list.
+     * 
+     * @param camera Camera that adjusts the drawing location.
+     */
+    public void drawObjects(GameCamera camera) {
+        double cameraX = camera.getSnappedX();
+        double cameraY = camera.getSnappedY();
+        double[] area = getDrawnArea(camera);
+
+        objectList.query(area[0] + cameraX, area[1] + cameraY,
+                         area[2] - area[0], area[3] - area[1], visible);
+
+        for (int i = 0 ; i < visible.size() ; i++) {
+            GameObject o = visible.get(i);
+            AnimationClip clip = o.getClip();
+            if (clip != null) {
+                // The frame is drawn straight from the shared sheet.
+                SpriteSheet sheet = clip.getSheet();
+                int frame = o.getFrame();
+                target.drawImage(sheet.getImage(),
+                                 sheet.getFrameX(frame),
+                                 sheet.getFrameY(frame),
+                                 sheet.getFrameWidth(),
+                                 sheet.getFrameHeight(),
+                                 o.getX() - cameraX,
+                                 o.getY() - cameraY,
+                                 o.getWidth(),
+                                 o.getHeight());
+            } else if(o.getImage() != null) {
+                target.drawImage(o.getImage(), 
+                                 o.getX() - cameraX, 
+                                 o.getY() - cameraY,
+                                 o.getWidth(),
+                                 o.getHeight());
+            }
         }
+        visible.clear();
+    }
 
-        for (GameObject o : objectList) {
-            if(o.getImage() != null) {
-                gc.drawImage(o.getImage(), 
-                             o.getX() - cameraX, 
-                             o.getY() - cameraY,
-                             o.getWidth(),
-                             o.getHeight());
+    /**
+     * Draws the particles of every emitter, one batch per emitter.
+     * Particles outside the view of the camera, or outside the area being
+     * redrawn, are skipped.
+     * 
+     * @param camera Camera that adjusts the drawing location.
+     */
+    public void drawParticles(GameCamera camera) {
+        double cameraX = camera.getSnappedX();
+        double cameraY = camera.getSnappedY();
+        double[] area = getDrawnArea(camera);
+
+        for (int e = 0 ; e < emitters.size() ; e++) {
+            ParticleEmitter emitter = emitters.get(e);
+            double[] b = emitter.getBounds();
+            if (emitter.getCount() == 0 || b[0] - cameraX >= area[2] || b[2] - cameraX <= area[0]
+                    || b[1] - cameraY >= area[3] || b[3] - cameraY <= area[1]) {
+                continue;
+            }
+
+            float[] xs = emitter.getXs();
+            float[] ys = emitter.getYs();
+            int count = emitter.getCount();
+            double size = emitter.getSize();
+            double left = area[0] + cameraX - size;
+            double top = area[1] + cameraY - size;
+            double right = area[2] + cameraX;
+            double bottom = area[3] + cameraY;
+            Image image = emitter.getImage();
+            Color color = emitter.getColor();
+
+            for (int i = 0 ; i < count ; i++) {
+                double x = xs[i];
+                double y = ys[i];
+                if (x <= left || x >= right || y <= top || y >= bottom) {
+                    continue;
+                }
+                if (image != null) {
+                    target.drawImage(image, x - cameraX, y - cameraY, size, size);
+                } else {
+                    target.fillRect(color, x - cameraX, y - cameraY, size, size);
+                }
             }
         }
     }
 
+    /**
+     * @return Particle emitters drawn on top of the GameObjects.
+     */
+    public List<ParticleEmitter> getEmitters() { return emitters; }
+
     /**
      * Draws specified image on specified location, adjusting the
      * drawing location depending on the position of the camera.
@@ -91,51 +567,94 @@ public class GameCanvas {
      * @param y Y-coordinate the image will be drawn in.
      */
     public void draw(GameCamera camera, Image image, double x, double y) {
-        double cameraX = camera.getX();
-        double cameraY = camera.getY();
+        double cameraX = camera.getSnappedX();
+        double cameraY = camera.getSnappedY();
 
-        gc.drawImage(image, x - cameraX, y - cameraY);
+        target.drawImage(image, x - cameraX, y - cameraY);
     }
  
     /**
      * @return List of game objects.
      */
-    public List<GameObject> getObjectList() { return objectList; }
+    public GameObjectList getObjectList() { return objectList; }
 
     /**
      * @param list List of game objects.
      */
-    public void setObjectList(List<GameObject> list) { objectList = list; }
+    public void setObjectList(GameObjectList list) {
+        objectList = list;
+        invalidate();
+    }
+
+    /**
+     * @return Index that finds the game objects in an area.
+     */
+    public SpatialIndex getSpatialIndex() { return objectList.getSpatialIndex(); }
 
     /**
-     * @return Canvas that game objects are drawn on.
+     * Selects the index used for culling and collision checks, for
+     * example an AabbTree when object sizes vary a lot.
+     * 
+     * @param index Index that finds the game objects in an area.
+     */
+    public void setSpatialIndex(SpatialIndex index) { objectList.setSpatialIndex(index); }
+
+    /**
+     * @return Canvas that game objects are drawn on, or null if they are
+     *         drawn on another render target.
      */
     public Canvas getCanvas() { return canvas; }
 
     /**
      * @param canvas Canvas that game objects are drawn on.
      */
-    public void setCanvas(Canvas canvas) { this.canvas = canvas; }
+    public void setCanvas(Canvas canvas) {
+        this.canvas = canvas;
+        setRenderTarget(new FxRenderTarget(canvas));
+    }
+
+    /**
+     * @return Surface that everything is drawn on.
+     */
+    public RenderTarget getRenderTarget() { return target; }
+
+    /**
+     * @param target Surface that everything is drawn on.
+     */
+    public void setRenderTarget(RenderTarget target) {
+        this.target = target;
+        invalidate();
+    }
 
     /**
      * @return Canvas width in pixels.
      */
-    public double getWidth() { return canvas.getWidth(); }
+    public double getWidth() { return target.getWidth(); }
 
     /**
-     * @param width Canvas width in pixels.
+     * @param width Canvas width in pixels. Ignored when drawing on
+     *              another render target than a JavaFX Canvas.
      */
-    public void setWidth(double width) { canvas.setWidth(width); }
+    public void setWidth(double width) {
+        if (canvas != null) {
+            canvas.setWidth(width);
+        }
+    }
 
     /**
      * @return Canvas height in pixels.
      */
-    public double getHeight() { return canvas.getHeight(); }
+    public double getHeight() { return target.getHeight(); }
 
     /**
-     * @param height Canvas height in pixels.
+     * @param height Canvas height in pixels. Ignored when drawing on
+     *               another render target than a JavaFX Canvas.
      */
-    public void setHeight(double height) { canvas.setHeight(height); }
+    public void setHeight(double height) {
+        if (canvas != null) {
+            canvas.setHeight(height);
+        }
+    }
 
     /**
      * @return Background image for canvas.
@@ -145,5 +664,31 @@ public class GameCanvas {
     /**
      * @param background Background image for canvas.
      */
-    public void setBackground(Image background) { this.background = background; }
+    public void setBackground(Image background) {
+        this.background = background;
+        invalidate();
+    }
+
+    /**
+     * Adds a parallax layer in front of the layers added before it.
+     * 
+     * @param layer Parallax layer to be added.
+     */
+    public void addParallaxLayer(ParallaxLayer layer) {
+        parallaxLayers.add(layer);
+        invalidate();
+    }
+
+    /**
+     * @param layer Parallax layer to be removed.
+     */
+    public void removeParallaxLayer(ParallaxLayer layer) {
+        parallaxLayers.remove(layer);
+        invalidate();
+    }
+
+    /**
+     * @return Parallax layers, the farthest one first.
+     */
+    public List<ParallaxLayer> getParallaxLayers() { return parallaxLayers; }
 }
\ No newline at end of file
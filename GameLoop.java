@@ -1,6 +1,9 @@
 import javafx.scene.canvas.*;
 import javafx.scene.*;
 import javafx.animation.AnimationTimer;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 /**
  * This class is the game loop. It updates the given scene
@@ -19,6 +22,29 @@ public class GameLoop {
      */
     private GameCanvas canvas;
 
+    /**
+     * Watcher whose reloaded map and image changes are applied at the
+     * start of every frame, or null.
+     */
+    private MapWatcher mapWatcher;
+
+    /**
+     * Clock shared by everything that animates, advanced once per frame.
+     */
+    private FrameClock clock = new FrameClock();
+
+    /**
+     * Scene that replaces the current one at the start of the next
+     * frame, or null.
+     */
+    private AtomicReference<GameScene> nextScene = new AtomicReference<>();
+
+    /**
+     * Called with the old and the new scene after the scene has been
+     * replaced, or null.
+     */
+    private BiConsumer<GameScene, GameScene> sceneListener;
+
     /**
      * Constructs the game loop and initializes its attributes.
      * 
@@ -30,17 +56,36 @@ public class GameLoop {
     }
 
     /**
-     * Starts the game loop. Updates the given scene and draws the
-     * contents of its canvas along with a possible tileMap on the screen.
+     * Starts the game loop. Applies pending object additions and removals,
+     * updates the given scene and draws the contents of its canvas along
+     * with a possible tileMap on the screen.
      */
     public void start() {
         new AnimationTimer() {
             @Override public void handle(long currentNanoTime) {
-                scene.update();
-                if(scene.getTileMap() != null) {
-                    scene.getTileMap().draw();
+                GameScene next = nextScene.getAndSet(null);
+                if (next != null) {
+                    swapScene(next);
                 }
-                canvas.drawObjects(scene.getGameCamera());
+
+                if (mapWatcher != null) {
+                    mapWatcher.applyChanges();
+                }
+
+                // Objects added or removed during the previous frame
+                // are applied by step(), before the scene is updated.
+                scene.step();
+                clock.advance(currentNanoTime);
+
+                TileMap map = scene.getTileMap();
+                if(map != null) {
+                    map.updateAnimations(clock.getMillis());
+                }
+                canvas.updateAnimations(clock.getMillis());
+
+                // Only the areas that changed are redrawn.
+                canvas.beginFrame(map);
+                canvas.render(scene.getCameras(), map);
 
                 // Caps the frames per second at 60.
                 try { 
@@ -51,4 +96,80 @@ public class GameLoop {
             }
         }.start();
     }
+
+    /**
+     * Replaces the scene that is run. The scene is swapped at the start
+     * of the next frame, so the current frame always finishes with the
+     * old scene. Can be called from any thread.
+     *
+     * @param scene Scene that will be run and its canvas drawn.
+     */
+    public void setScene(GameScene scene) {
+        nextScene.set(scene);
+    }
+
+    /**
+     * Swaps the scene in on the game thread. A map watcher is moved over
+     * to the map of the new scene, or closed if the new scene has no map.
+     *
+     * @param next The new scene.
+     */
+    private void swapScene(GameScene next) {
+        GameScene old = scene;
+        scene = next;
+        canvas = next.getCanvas();
+        canvas.invalidate();
+
+        if (mapWatcher != null) {
+            try {
+                mapWatcher.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mapWatcher = null;
+
+            TileMap map = next.getTileMap();
+            if (map != null) {
+                try {
+                    mapWatcher = new MapWatcher(map, canvas);
+                    mapWatcher.start();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        if (sceneListener != null) {
+            sceneListener.accept(old, next);
+        }
+    }
+
+    /**
+     * @return The scene that is run.
+     */
+    public GameScene getScene() { return scene; }
+
+    /**
+     * @param listener Called on the game thread with the old and the new
+     *                 scene after the scene has been replaced, or null.
+     */
+    public void setSceneListener(BiConsumer<GameScene, GameScene> listener) {
+        sceneListener = listener;
+    }
+
+    /**
+     * @return Clock shared by everything that animates.
+     */
+    public FrameClock getClock() { return clock; }
+
+    /**
+     * @return Watcher whose changes are applied every frame, or null.
+     */
+    public MapWatcher getMapWatcher() { return mapWatcher; }
+
+    /**
+     * @param watcher Watcher whose reloaded map and image changes are
+     *                applied at the start of every frame, or null.
+     */
+    public void setMapWatcher(MapWatcher watcher) { mapWatcher = watcher; }
 }
\ No newline at end of file
@@ -9,6 +9,13 @@ import javafx.scene.image.Image;
  */
 public class GameObject{
 
+    /**
+     * Objects found near a rectangle by collision checks, reused on
+     * each thread.
+     */
+    private static final ThreadLocal<List<GameObject>> NEARBY =
+            ThreadLocal.withInitial(ArrayList::new);
+
     /**
      * X-coordinate of the GameObject.
      */
@@ -39,10 +46,78 @@ public class GameObject{
      */
     private Image image;
 
+    /**
+     * Animation the GameObject plays instead of showing its image,
+     * or null.
+     */
+    private AnimationClip clip;
+
+    /**
+     * Time of the shared clock at which the animation started in
+     * milliseconds, or -1 if it starts on the next update.
+     */
+    private long clipStart = -1;
+
+    /**
+     * Frame of the sprite sheet currently shown, or -1 if no animation
+     * is playing.
+     */
+    private int frame = -1;
+
     /**
      * List of GameObjects that is used for collision checking.
      */
-    private List<GameObject> objectList;
+    private GameObjectList objectList;
+
+    /**
+     * Index of this GameObject in the GameObjectList it belongs to,
+     * or -1 if it is not in a list. Maintained by GameObjectList.
+     */
+    private int listIndex = -1;
+
+    /**
+     * Leaf of this GameObject in the AabbTree it was last inserted into,
+     * or -1. Maintained by AabbTree.
+     */
+    private int treeLeaf = -1;
+
+    /**
+     * Whether this GameObject has been queued for removal from its
+     * GameObjectList. Maintained by GameObjectList.
+     */
+    private boolean pendingRemoval = false;
+
+    /**
+     * Whether this GameObject has been queued to be added to a
+     * GameObjectList. Maintained by GameObjectList.
+     */
+    private boolean pendingAdd = false;
+
+    /**
+     * GameObjectList this GameObject is in, or null. Notified when the
+     * GameObject moves so that its spatial index stays up to date.
+     */
+    private GameObjectList owner;
+
+    /**
+     * Image the GameObject was last drawn with, or null.
+     */
+    private Image renderedImage;
+
+    /**
+     * Area the GameObject was last drawn in: x, y, width and height.
+     */
+    private double[] renderedArea = new double[4];
+
+    /**
+     * Animation the GameObject was last drawn with, or null.
+     */
+    private AnimationClip renderedClip;
+
+    /**
+     * Frame of the sprite sheet the GameObject was last drawn with.
+     */
+    private int renderedFrame = -1;
 
     /**
      * Determines whether the GameObject can collide or not.
@@ -97,6 +172,24 @@ public class GameObject{
      */
     public GameObject(double x, double y, double width, double height,
                       Image image, GameScene scene) {
+        this(x, y, width, height, image, scene.getCanvas());
+    }
+
+    /**
+     * Constructs GameObject on a canvas that doesn't belong to a scene
+     * yet, for example while SceneManager prepares the next scene in
+     * the background.
+     * 
+     * @param x X-coordinate of GameObject.
+     * @param y Y-coordinate of GameObject.
+     * @param width Width of GameObject.
+     * @param height Height of GameObject.
+     * @param image Image that will be drawn in the location
+     *              of the GameObject.
+     * @param canvas Canvas that contains the list of GameObjects.
+     */
+    public GameObject(double x, double y, double width, double height,
+                      Image image, GameCanvas canvas) {
         this.x = x;
         this.y = y;
         this.image = image;
@@ -104,7 +197,7 @@ public class GameObject{
         this.height = height;
         
         bounds = new Rectangle((int) x, (int) y, (int) width, (int) height);
-        objectList = scene.getCanvas().getObjectList();
+        objectList = canvas.getObjectList();
     }
 
     /**
@@ -192,6 +285,7 @@ public class GameObject{
     public void setX(double x) {
         this.x = x;
         bounds.x = (int) x;   
+        boundsChanged();
     }
 
     /**
@@ -211,23 +305,44 @@ public class GameObject{
             Rectangle tempRectangle = new Rectangle(bounds);
             tempRectangle.setLocation((int) x, (int) getY());
 
-            // Iterate objectList to check if given new location would
-            // intersect with another solid object.
-            for (GameObject o : objectList) {
-
-                if(o != this 
-                    && o.getPhysicsType() == PhysicsType.SOLID 
-                    && o.getBounds().intersects(tempRectangle)) {
-                    isFree = false;
-                }                                                               
-            }
+            isFree = isFree(tempRectangle);
         }
 
         // If given new location is free of solid objects, move this object.
         if(isFree) {
             this.x = x;
             bounds.x = (int) x;   
+            boundsChanged();
+        }
+    }
+
+    /**
+     * Checks if the given rectangle would intersect with another solid
+     * object. Only the objects near the rectangle are checked, found
+     * from the spatial index of objectList.
+     * 
+     * @param area Rectangle that is checked for solid objects.
+     * @return True if no other solid object intersects the rectangle.
+     */
+    private boolean isFree(Rectangle area) {
+        // Bounds are rounded to whole pixels, so look a pixel further.
+        List<GameObject> nearby = NEARBY.get();
+        nearby.clear();
+        objectList.getSpatialIndex().query(area.x - 1, area.y - 1,
+                area.width + 2, area.height + 2, nearby);
+
+        for (int i = 0 ; i < nearby.size() ; i++) {
+            GameObject o = nearby.get(i);
+
+            if(o != this 
+                && o.getPhysicsType() == PhysicsType.SOLID 
+                && o.getBounds().intersects(area)) {
+                nearby.clear();
+                return false;
+            }
         }
+        nearby.clear();
+        return true;
     }
 
     /**
@@ -243,6 +358,7 @@ public class GameObject{
     public void setY(double y) {
         this.y = y;
         bounds.y = (int) y;    
+        boundsChanged();
     }
 
     /**
@@ -262,33 +378,42 @@ public class GameObject{
             Rectangle tempRectangle = new Rectangle(bounds);
             tempRectangle.setLocation((int) getX(), (int) y);
             
-            // Iterate objectList to check if given new location would
-            // intersect with another solid object.
-            for (GameObject o : objectList) {
-                if(o != this 
-                    && o.getPhysicsType() == PhysicsType.SOLID 
-                    && o.getBounds().intersects(tempRectangle)) {
-                    isFree = false;
-                }                                                               
-            }
+            isFree = isFree(tempRectangle);
         }
 
         // If given new location is free of solid objects, move this object.
         if(isFree) {
             this.y = y;
             bounds.y = (int) y;
+            boundsChanged();
         }
     }
 
     /**
+     * Returns the bounding rectangle itself, not a copy, so that collision
+     * checks don't allocate. It must not be changed: the spatial index and
+     * the redrawing of the canvas only follow changes made through
+     * setX(), setY(), setWidth(), setHeight() and setBounds().
+     *
      * @return Bounding rectangle of GameObject.
      */
     public Rectangle getBounds() { return bounds; }
 
     /**
+     * Moves and resizes the GameObject to a rectangle without checking
+     * for collisions. The rectangle is copied, so changing it afterwards
+     * doesn't affect the GameObject.
+     *
      * @param bounds Bounding rectangle of GameObject.
      */
-    public void setBounds(Rectangle bounds) { this.bounds = bounds; }
+    public void setBounds(Rectangle bounds) {
+        x = bounds.x;
+        y = bounds.y;
+        width = bounds.width;
+        height = bounds.height;
+        this.bounds.setBounds(bounds);
+        boundsChanged();
+    }
 
     /**
      * @return Width of GameObject in pixels.
@@ -303,6 +428,7 @@ public class GameObject{
     public void setWidth(double width) {
         this.width = width;
         bounds.setSize((int) width, (int) height);
+        boundsChanged();
     }
 
     /**
@@ -318,6 +444,7 @@ public class GameObject{
     public void setHeight(double height) {
         this.height = height;
         bounds.setSize((int) width, (int) height);
+        boundsChanged();
     }
 
     /**
@@ -332,6 +459,62 @@ public class GameObject{
      */
     public void setImage(Image image) { this.image = image; }
 
+    /**
+     * Starts playing an animation, which is shown instead of the image
+     * of the GameObject from the next update of the shared clock on.
+     * Playing the clip that is already playing does nothing, so this
+     * can be called on every update.
+     *
+     * @param clip The animation to play, or null to stop the animation.
+     */
+    public void play(AnimationClip clip) {
+        if (clip == this.clip) {
+            return;
+        }
+        if (clip == null) {
+            stopAnimation();
+            return;
+        }
+        this.clip = clip;
+        clipStart = -1;
+        frame = clip.getFrame(0);
+    }
+
+    /**
+     * Stops the animation, after which the image of the GameObject is
+     * shown again.
+     */
+    public void stopAnimation() {
+        clip = null;
+        frame = -1;
+    }
+
+    /**
+     * Advances the animation to the given time of the shared clock.
+     *
+     * @param millis Time of the shared clock in milliseconds.
+     */
+    void updateAnimation(long millis) {
+        if (clip == null) {
+            return;
+        }
+        if (clipStart < 0) {
+            clipStart = millis;
+        }
+        frame = clip.getFrame(millis - clipStart);
+    }
+
+    /**
+     * @return Animation the GameObject plays, or null.
+     */
+    public AnimationClip getClip() { return clip; }
+
+    /**
+     * @return Frame of the sprite sheet currently shown, or -1 if no
+     *         animation is playing.
+     */
+    public int getFrame() { return frame; }
+
     /**
      * @return Physics type of the object = whether it can collide or not.
      */
@@ -361,4 +544,121 @@ public class GameObject{
      * @param gravity Personal multiplier for how gravity affects this object.
      */
     public void setPersonalGravity(double gravity) { personalGravity = gravity; }
+
+    /**
+     * @return Index of this object in its GameObjectList, or -1.
+     */
+    int getListIndex() { return listIndex; }
+
+    /**
+     * @param index Index of this object in its GameObjectList, or -1.
+     */
+    void setListIndex(int index) { listIndex = index; }
+
+    /**
+     * @return Leaf of this object in the AabbTree it was last inserted
+     *         into, or -1.
+     */
+    int getTreeLeaf() { return treeLeaf; }
+
+    /**
+     * @param leaf Leaf of this object in an AabbTree, or -1.
+     */
+    void setTreeLeaf(int leaf) { treeLeaf = leaf; }
+
+    /**
+     * @return Whether this object has been queued for removal.
+     */
+    boolean isPendingRemoval() { return pendingRemoval; }
+
+    /**
+     * @param pending Whether this object has been queued for removal.
+     */
+    void setPendingRemoval(boolean pending) { pendingRemoval = pending; }
+
+    /**
+     * @return Whether this object has been queued to be added.
+     */
+    boolean isPendingAdd() { return pendingAdd; }
+
+    /**
+     * @param pending Whether this object has been queued to be added.
+     */
+    void setPendingAdd(boolean pending) { pendingAdd = pending; }
+
+    /**
+     * Tells the GameObjectList this object is in that it moved.
+     */
+    private void boundsChanged() {
+        if (owner != null) {
+            owner.moved(this);
+        }
+    }
+
+    /**
+     * @return GameObjectList this object is in, or null.
+     */
+    GameObjectList getOwner() { return owner; }
+
+    /**
+     * @param owner GameObjectList this object is in, or null.
+     */
+    void setOwner(GameObjectList owner) { this.owner = owner; }
+
+    /**
+     * @return Whether the GameObject looks different or is in a different
+     *         place than when it was last drawn.
+     */
+    boolean hasChangedSinceRender() {
+        return image != renderedImage || clip != renderedClip || frame != renderedFrame
+            || (isDrawn() && (x != renderedArea[0] || y != renderedArea[1]
+                || width != renderedArea[2] || height != renderedArea[3]));
+    }
+
+    /**
+     * @return Whether the GameObject has an image or an animation to draw.
+     */
+    boolean isDrawn() {
+        return image != null || clip != null;
+    }
+
+    /**
+     * @return Whether the GameObject had an image or an animation when it
+     *         was last drawn.
+     */
+    boolean wasDrawn() {
+        return renderedImage != null || renderedClip != null;
+    }
+
+    /**
+     * Remembers the current image, frame and area as the drawn ones.
+     */
+    void markRendered() {
+        renderedImage = image;
+        renderedClip = clip;
+        renderedFrame = frame;
+        renderedArea[0] = x;
+        renderedArea[1] = y;
+        renderedArea[2] = width;
+        renderedArea[3] = height;
+    }
+
+    /**
+     * Forgets that the GameObject was drawn, so that it is drawn again if
+     * it is added back to a list after being removed.
+     */
+    void forgetRendered() {
+        renderedImage = null;
+        renderedClip = null;
+    }
+
+    /**
+     * @return Image the GameObject was last drawn with, or null.
+     */
+    Image getRenderedImage() { return renderedImage; }
+
+    /**
+     * @return Area the GameObject was last drawn in: x, y, width and height.
+     */
+    double[] getRenderedArea() { return renderedArea; }
 }
\ No newline at end of file
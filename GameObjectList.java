@@ -0,0 +1,320 @@
+import java.util.*;
+
+/**
+ * Container for the GameObjects of a GameCanvas. Adding and removing
+ * objects is buffered: add() and remove() only queue the change, and the
+ * queued changes are applied when flush() is called. GameLoop calls flush()
+ * once at the start of every frame, so objects can be spawned and despawned
+ * freely while the list is being iterated in GameScene.update().
+ *
+ * Every object knows its own index in the list, so removing an object
+ * doesn't need to search the list. Removed slots are compacted in a single
+ * pass during flush(), which keeps the drawing order of the remaining
+ * objects intact.
+ *
+ * The list keeps a SpatialIndex of its objects, updated as they are
+ * flushed in and out and as they move, so that cameras and other code
+ * can find the objects in an area with query() instead of going through
+ * the whole list.
+ */
+public class GameObjectList implements Iterable<GameObject> {
+
+    /**
+     * The objects in drawing order. Only the first size slots are in use.
+     */
+    private GameObject[] objects = new GameObject[16];
+
+    /**
+     * Number of objects currently in the list.
+     */
+    private int size = 0;
+
+    /**
+     * Objects that will be added to the end of the list on the next flush.
+     * Objects whose addition was cancelled stay here with their pending
+     * add flag cleared and are skipped by the flush.
+     */
+    private List<GameObject> pendingAdds = new ArrayList<>();
+
+    /**
+     * Objects that will be removed from the list on the next flush.
+     */
+    private List<GameObject> pendingRemoves = new ArrayList<>();
+
+    /**
+     * Incremented every time a flush adds or removes objects.
+     */
+    private int version = 0;
+
+    /**
+     * Bounds of the areas the objects removed since the last call to
+     * clearRemovedArea() were drawn in, as {left, top, right, bottom}.
+     * Empty when left is greater than right.
+     */
+    private double[] removedArea = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                                    Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+    /**
+     * Index of the objects in the list by their position.
+     */
+    private SpatialIndex index = new SpatialGrid();
+
+    /**
+     * Sorts query results into drawing order.
+     */
+    private static final Comparator<GameObject> LIST_ORDER =
+            (a, b) -> Integer.compare(a.getListIndex(), b.getListIndex());
+
+    /**
+     * Queues the given GameObject to be added to the end of the list.
+     * The object becomes visible to iteration on the next flush. Adding
+     * an object that is already in the list or already queued to be added
+     * does nothing, unless it has been queued for removal, in which case
+     * it is moved to the end.
+     *
+     * @param object GameObject to be added.
+     */
+    public void add(GameObject object) {
+        if (object.isPendingAdd() || (contains(object) && !object.isPendingRemoval())) {
+            return;
+        }
+        object.setPendingAdd(true);
+        pendingAdds.add(object);
+    }
+
+    /**
+     * Queues the given GameObject to be removed from the list and cancels
+     * its queued addition, if any. The object stays visible to iteration
+     * until the next flush. Removing an object that is not in the list
+     * does nothing.
+     *
+     * @param object GameObject to be removed.
+     */
+    public void remove(GameObject object) {
+        object.setPendingAdd(false);
+        if (contains(object) && !object.isPendingRemoval()) {
+            object.setPendingRemoval(true);
+            pendingRemoves.add(object);
+        }
+    }
+
+    /**
+     * Applies all queued removals and additions. Removals are applied
+     * first by clearing the slots of the removed objects and compacting
+     * the remaining objects in one pass, then the added objects are
+     * appended in the order they were added.
+     */
+    public void flush() {
+        if (hasPendingChanges()) {
+            version++;
+        }
+
+        if (!pendingRemoves.isEmpty()) {
+            for (GameObject o : pendingRemoves) {
+                objects[o.getListIndex()] = null;
+                o.setListIndex(-1);
+                o.setPendingRemoval(false);
+                o.setOwner(null);
+                index.remove(o);
+                if (o.wasDrawn()) {
+                    double[] a = o.getRenderedArea();
+                    removedArea[0] = Math.min(removedArea[0], a[0]);
+                    removedArea[1] = Math.min(removedArea[1], a[1]);
+                    removedArea[2] = Math.max(removedArea[2], a[0] + a[2]);
+                    removedArea[3] = Math.max(removedArea[3], a[1] + a[3]);
+                }
+                o.forgetRendered();
+            }
+            pendingRemoves.clear();
+
+            int write = 0;
+            for (int read = 0 ; read < size ; read++) {
+                GameObject o = objects[read];
+                if (o != null) {
+                    objects[write] = o;
+                    o.setListIndex(write);
+                    write++;
+                }
+            }
+            Arrays.fill(objects, write, size, null);
+            size = write;
+        }
+
+        if (!pendingAdds.isEmpty()) {
+            if (size + pendingAdds.size() > objects.length) {
+                objects = Arrays.copyOf(objects,
+                        Math.max(objects.length * 2, size + pendingAdds.size()));
+            }
+            for (GameObject o : pendingAdds) {
+                if (!o.isPendingAdd()) {
+                    continue;
+                }
+                o.setPendingAdd(false);
+                o.setListIndex(size);
+                o.setOwner(this);
+                objects[size] = o;
+                index.insert(o);
+                size++;
+            }
+            pendingAdds.clear();
+        }
+    }
+
+    /**
+     * Queues removal of every object in the list and discards all
+     * queued additions.
+     */
+    public void clear() {
+        for (GameObject o : pendingAdds) {
+            o.setPendingAdd(false);
+        }
+        pendingAdds.clear();
+        for (int i = 0 ; i < size ; i++) {
+            remove(objects[i]);
+        }
+    }
+
+    /**
+     * Updates the spatial index after an object in the list moved or
+     * changed its size. Called by the GameObject itself.
+     *
+     * @param object GameObject that moved.
+     */
+    void moved(GameObject object) {
+        index.update(object);
+    }
+
+    /**
+     * Finds the objects in the list that intersect a rectangle, using the
+     * spatial index. Queued additions are not included.
+     *
+     * @param x X-coordinate of the rectangle.
+     * @param y Y-coordinate of the rectangle.
+     * @param width Width of the rectangle.
+     * @param height Height of the rectangle.
+     * @param result List that is cleared and filled with the objects
+     *               in drawing order.
+     */
+    public void query(double x, double y, double width, double height, List<GameObject> result) {
+        result.clear();
+        index.query(x, y, width, height, result);
+        if (result.size() < 2) {
+            return;
+        }
+
+        // Objects that span several cells may be found more than once.
+        result.sort(LIST_ORDER);
+        int write = 1;
+        for (int read = 1 ; read < result.size() ; read++) {
+            GameObject o = result.get(read);
+            if (o != result.get(write - 1)) {
+                result.set(write, o);
+                write++;
+            }
+        }
+        result.subList(write, result.size()).clear();
+    }
+
+    /**
+     * @param index Index of the GameObject in drawing order.
+     * @return GameObject in the given index.
+     */
+    public GameObject get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return objects[index];
+    }
+
+    /**
+     * @param object GameObject to look for.
+     * @return True if the object is in the list, not counting queued
+     *         additions.
+     */
+    public boolean contains(GameObject object) {
+        int index = object.getListIndex();
+        return index >= 0 && index < size && objects[index] == object;
+    }
+
+    /**
+     * @return Number of objects in the list, not counting queued
+     *         additions.
+     */
+    public int size() { return size; }
+
+    /**
+     * @return True if the list contains no objects.
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * @return True if there are additions or removals waiting for
+     *         the next flush.
+     */
+    public boolean hasPendingChanges() {
+        return !pendingAdds.isEmpty() || !pendingRemoves.isEmpty();
+    }
+
+    /**
+     * @return Number that changes every time objects are added or removed.
+     */
+    public int getVersion() { return version; }
+
+    /**
+     * @return Bounds of the areas the removed objects were drawn in, as
+     *         {left, top, right, bottom}. Empty when left is greater than
+     *         right.
+     */
+    double[] getRemovedArea() { return removedArea; }
+
+    /**
+     * Empties the area returned by getRemovedArea().
+     */
+    void clearRemovedArea() {
+        removedArea[0] = Double.POSITIVE_INFINITY;
+        removedArea[1] = Double.POSITIVE_INFINITY;
+        removedArea[2] = Double.NEGATIVE_INFINITY;
+        removedArea[3] = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return Index of the objects in the list by their position.
+     */
+    public SpatialIndex getSpatialIndex() { return index; }
+
+    /**
+     * Replaces the spatial index and adds every object in the list to it.
+     *
+     * @param index Index of the objects in the list by their position.
+     */
+    public void setSpatialIndex(SpatialIndex index) {
+        index.clear();
+        for (int i = 0 ; i < size ; i++) {
+            index.insert(objects[i]);
+        }
+        this.index = index;
+    }
+
+    /**
+     * Iterates the objects in drawing order. Because changes are only
+     * applied on flush, the iteration is not disturbed by objects being
+     * added or removed during it.
+     */
+    @Override
+    public Iterator<GameObject> iterator() {
+        return new Iterator<GameObject>() {
+            private int next = 0;
+
+            @Override public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override public GameObject next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return objects[next++];
+            }
+        };
+    }
+}
\ No newline at end of file
@@ -1,3 +1,4 @@
+import java.util.*;
 import javafx.scene.Group;
 import javafx.scene.Scene;
 
@@ -7,6 +8,49 @@ import javafx.scene.Scene;
  */
 abstract class GameScene extends Scene {
 
+    /**
+     * Seed of the random number generator of the scene.
+     */
+    private long seed = System.nanoTime();
+
+    /**
+     * Random number generator of the scene. Games should take their
+     * random numbers from here so that recorded sessions can be replayed.
+     */
+    private SceneRandom random = new SceneRandom(seed);
+
+    /**
+     * Number of ticks the scene has been stepped.
+     */
+    private long tick = 0;
+
+    /**
+     * Whether step() is running.
+     */
+    private boolean stepping = false;
+
+    /**
+     * Tasks queued with runBeforeStep(), run at the start of the next step.
+     */
+    private List<Runnable> beforeStep = new ArrayList<>();
+
+    /**
+     * Camera returned by getGameCamera() in scenes that don't have
+     * their own camera.
+     */
+    private GameCamera defaultCamera;
+
+    /**
+     * Cameras added with addCamera(), in drawing order.
+     */
+    private List<GameCamera> cameras = new ArrayList<>();
+
+    /**
+     * List holding only the main camera, returned by getCameras() when
+     * no cameras have been added.
+     */
+    private List<GameCamera> mainCamera = new ArrayList<>(Arrays.asList((GameCamera) null));
+
     /**
      * Constructs the game scene and passes the root node to
      * its super constructor (Scene).
@@ -29,13 +73,156 @@ abstract class GameScene extends Scene {
      */
     abstract GameCanvas getCanvas();
 
+    /**
+     * Called on the game thread after the scene has been replaced by
+     * another one. Scenes that pinned images with AssetCache.acquire()
+     * or started threads of their own release them here. Images that
+     * are only cached stay available to the next scene.
+     */
+    public void unload() {
+    }
+
+    /**
+     * Advances the scene by one tick without drawing anything. Runs the
+     * tasks queued with runBeforeStep(), applies pending object additions
+     * and removals, updates the scene and then
+     * runs the systems of its EntityWorld and the stages of its
+     * FrameScheduler, if it has them. Finally moves the particles of
+     * the canvas.
+     */
+    public void step() {
+        step(null);
+    }
+
+    /**
+     * Advances the scene by one tick without drawing anything, recording
+     * the time taken by each phase.
+     *
+     * @param stats Timings that the phases are recorded in, or null.
+     */
+    public void step(FrameStats stats) {
+        long start = System.nanoTime();
+        for (int i = 0 ; i < beforeStep.size() ; i++) {
+            beforeStep.get(i).run();
+        }
+        beforeStep.clear();
+        stepping = true;
+        try {
+            advance(stats, start);
+        } finally {
+            stepping = false;
+        }
+    }
+
+    /**
+     * Runs the phases of a step.
+     *
+     * @param stats Timings that the phases are recorded in, or null.
+     * @param start Time the step started, in nanoseconds.
+     */
+    private void advance(FrameStats stats, long start) {
+        getCanvas().getObjectList().flush();
+        long flushed = System.nanoTime();
+        update();
+        long updated = System.nanoTime();
+
+        EntityWorld world = getWorld();
+        if (world != null) {
+            world.update();
+        }
+        long systems = System.nanoTime();
+
+        FrameScheduler scheduler = getScheduler();
+        if (scheduler != null) {
+            scheduler.run(stats);
+        }
+        long stages = System.nanoTime();
+
+        getCanvas().updateEmitters();
+        tick++;
+
+        if (stats != null) {
+            stats.add("flush", flushed - start);
+            stats.add("update", updated - flushed);
+            if (world != null) {
+                stats.add("systems", systems - updated);
+            }
+            if (scheduler != null) {
+                stats.add("stages", stages - systems);
+            }
+            stats.add("particles", System.nanoTime() - stages);
+        }
+    }
+
+    /**
+     * Computes a hash of the simulation state: the position and size of
+     * every GameObject and the position of the camera. Two runs that
+     * ended in the same state have the same hash.
+     *
+     * @return Hash of the current state of the scene.
+     */
+    public long getStateHash() {
+        long hash = 17;
+        GameObjectList objects = getCanvas().getObjectList();
+
+        for (int i = 0 ; i < objects.size() ; i++) {
+            GameObject o = objects.get(i);
+            hash = hash * 31 + Double.doubleToLongBits(o.getX());
+            hash = hash * 31 + Double.doubleToLongBits(o.getY());
+            hash = hash * 31 + Double.doubleToLongBits(o.getWidth());
+            hash = hash * 31 + Double.doubleToLongBits(o.getHeight());
+        }
+
+        GameCamera camera = getGameCamera();
+        hash = hash * 31 + Double.doubleToLongBits(camera.getX());
+        hash = hash * 31 + Double.doubleToLongBits(camera.getY());
+        return hash;
+    }
+
     /**
      * This method makes retrieving a camera possible in 
      * several classes that need it.
      */
     public GameCamera getGameCamera() {
-        GameCamera camera = new GameCamera();
-        return camera;
+        if (defaultCamera == null) {
+            defaultCamera = new GameCamera();
+        }
+        return defaultCamera;
+    }
+
+    /**
+     * Returns the cameras the scene is drawn through, each into its own
+     * viewport. If no cameras have been added, the only camera is the one
+     * returned by getGameCamera().
+     *
+     * @return Cameras in drawing order.
+     */
+    public List<GameCamera> getCameras() {
+        if (cameras.isEmpty()) {
+            mainCamera.set(0, getGameCamera());
+            return mainCamera;
+        }
+        return cameras;
+    }
+
+    /**
+     * Adds a camera the scene is drawn through. Once cameras have been
+     * added, getGameCamera() is only drawn if it is added as well. Cameras
+     * added later are drawn on top of the earlier ones.
+     *
+     * @param camera Camera with its own viewport.
+     */
+    public void addCamera(GameCamera camera) {
+        cameras.add(camera);
+        getCanvas().invalidate();
+    }
+
+    /**
+     * @param camera Camera that is no longer drawn.
+     */
+    public void removeCamera(GameCamera camera) {
+        cameras.remove(camera);
+        getCanvas().invalidate();
     }
 
     /**
@@ -45,4 +232,81 @@ abstract class GameScene extends Scene {
     public TileMap getTileMap() {
         return null;
     }
+
+    /**
+     * This method makes retrieving the entity-component world of the
+     * scene possible. Its systems are run on every step.
+     */
+    public EntityWorld getWorld() {
+        return null;
+    }
+
+    /**
+     * This method makes retrieving the frame scheduler of the scene
+     * possible. Its stages are run on every step, in parallel where
+     * they don't conflict.
+     */
+    public FrameScheduler getScheduler() {
+        return null;
+    }
+
+    /**
+     * This method makes retrieving the key handler possible, for
+     * example for recording and replaying input.
+     */
+    public KeyHandler getKeyHandler() {
+        return null;
+    }
+
+    /**
+     * @return Random number generator of the scene.
+     */
+    public SceneRandom getRandom() { return random; }
+
+    /**
+     * @return Seed of the random number generator of the scene.
+     */
+    public long getSeed() { return seed; }
+
+    /**
+     * Reseeds the random number generator of the scene.
+     *
+     * @param seed Seed of the random number generator.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        random.setSeed(seed);
+    }
+
+    /**
+     * Queues a task that changes the scene in ways that would disturb the
+     * iteration of a running step, such as flushing the object list. The
+     * task runs at the start of the next step(), before anything else.
+     *
+     * @param task The task.
+     */
+    public void runBeforeStep(Runnable task) {
+        beforeStep.add(task);
+    }
+
+    /**
+     * @return Whether step() is running, for example because this is
+     *         called from update().
+     */
+    public boolean isStepping() { return stepping; }
+
+    /**
+     * @return Number of ticks the scene has been stepped.
+     */
+    public long getTick() { return tick; }
+
+    /**
+     * Sets the number of ticks the scene has been stepped, for example
+     * when a snapshot is restored.
+     *
+     * @param tick Number of ticks.
+     */
+    public void setTick(long tick) {
+        this.tick = tick;
+    }
 }
\ No newline at end of file
@@ -23,7 +23,7 @@ public class Gravity {
      * List of GameObjects for which gravity is automatically
      * applied if on.
      */
-    private List<GameObject> objectList;
+    private GameObjectList objectList;
 
     /**
      * Constructs the object, specifies its strength and the list
@@ -39,13 +39,15 @@ public class Gravity {
      */
     public void pull() {
         if(gravityType == GravityType.VERTICAL) {
-            for (GameObject o : objectList) {
+            for (int i = 0 ; i < objectList.size() ; i++) {
+                GameObject o = objectList.get(i);
                 if (o.getGravityOn()) {
                     o.moveYCheckCollision(strength * o.getPersonalGravity());
                 }
             }
         } else if(gravityType == GravityType.HORIZONTAL) {
-            for (GameObject o : objectList) {
+            for (int i = 0 ; i < objectList.size() ; i++) {
+                GameObject o = objectList.get(i);
                 if (o.getGravityOn()) {
                     o.moveXCheckCollision(strength * o.getPersonalGravity());
                 }
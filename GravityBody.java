@@ -0,0 +1,38 @@
+/**
+ * Component that makes gravity accelerate an entity. Works like the
+ * gravity settings of GameObject, but lets GravitySystem find the
+ * affected entities without going through every object.
+ */
+public class GravityBody {
+
+    /**
+     * Personal multiplier for how gravity affects the entity.
+     */
+    private double personalGravity;
+
+    /**
+     * Constructs a body that gravity affects normally.
+     */
+    public GravityBody() {
+        this(1);
+    }
+
+    /**
+     * Constructs a body with a personal gravity multiplier.
+     *
+     * @param personalGravity Multiplier for how gravity affects the entity.
+     */
+    public GravityBody(double personalGravity) {
+        this.personalGravity = personalGravity;
+    }
+
+    /**
+     * @return Personal multiplier for how gravity affects the entity.
+     */
+    public double getPersonalGravity() { return personalGravity; }
+
+    /**
+     * @param gravity Personal multiplier for how gravity affects the entity.
+     */
+    public void setPersonalGravity(double gravity) { personalGravity = gravity; }
+}
\ No newline at end of file
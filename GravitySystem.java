@@ -0,0 +1,73 @@
+/**
+ * System that accelerates every entity with a GravityBody and a Velocity
+ * in the direction of gravity.
+ */
+public class GravitySystem implements EntitySystem {
+
+    /**
+     * Velocity added per tick to an entity with personal gravity 1.
+     */
+    private double strength;
+
+    /**
+     * Specifies in which direction the gravity pulls.
+     */
+    private GravityType gravityType = GravityType.VERTICAL;
+
+    /**
+     * Constructs the system.
+     *
+     * @param strength Velocity added per tick to an entity with
+     *                 personal gravity 1.
+     */
+    public GravitySystem(double strength) {
+        this.strength = strength;
+    }
+
+    @Override
+    public void update(EntityWorld world) {
+        ComponentStore<GravityBody> bodies = world.getStore(GravityBody.class);
+        ComponentStore<Velocity> velocities = world.getStore(Velocity.class);
+
+        for (int i = 0 ; i < bodies.size() ; i++) {
+            Velocity v = velocities.get(bodies.getEntity(i));
+            if (v == null) {
+                continue;
+            }
+
+            double pull = strength * bodies.getComponent(i).getPersonalGravity();
+            if (gravityType == GravityType.VERTICAL) {
+                v.setDy(v.getDy() + pull);
+            } else {
+                v.setDx(v.getDx() + pull);
+            }
+        }
+    }
+
+    @Override
+    public Class<?>[] getReads() { return new Class<?>[] {GravityBody.class}; }
+
+    @Override
+    public Class<?>[] getWrites() { return new Class<?>[] {Velocity.class}; }
+
+    /**
+     * @return Velocity added per tick to an entity with personal gravity 1.
+     */
+    public double getStrength() { return strength; }
+
+    /**
+     * @param strength Velocity added per tick to an entity with
+     *                 personal gravity 1.
+     */
+    public void setStrength(double strength) { this.strength = strength; }
+
+    /**
+     * @return Whether the gravity pulls vertically or horizontally.
+     */
+    public GravityType getGravityType() { return gravityType; }
+
+    /**
+     * @param type Whether the gravity pulls vertically or horizontally.
+     */
+    public void setGravityType(GravityType type) { gravityType = type; }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs GameScenes without drawing them and without waiting between ticks,
+ * so a simulation runs as fast as the CPU allows instead of at 60 ticks
+ * per second. Useful for AI training, level validation and soak testing.
+ *
+ * Several independent scenes can be run in parallel, each on its own
+ * worker thread. Scenes must not share mutable state with each other.
+ */
+public class HeadlessRunner {
+
+    /**
+     * Number of worker threads used by runAll().
+     */
+    private final int threads;
+
+    /**
+     * Constructs a runner that uses one worker thread per available
+     * processor.
+     */
+    public HeadlessRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a runner with the given number of worker threads.
+     *
+     * @param threads Number of worker threads used by runAll().
+     */
+    public HeadlessRunner(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Steps the given scene the given number of ticks on the calling
+     * thread.
+     *
+     * @param scene Scene to be run.
+     * @param ticks Number of ticks to run.
+     * @return Timings of the phases of every tick.
+     */
+    public FrameStats run(GameScene scene, long ticks) {
+        FrameStats stats = new FrameStats();
+        for (long i = 0 ; i < ticks ; i++) {
+            scene.step(stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Steps every given scene the given number of ticks, running the
+     * scenes in parallel on the worker threads. Returns once every scene
+     * has finished.
+     *
+     * @param scenes Scenes to be run.
+     * @param ticks Number of ticks to run each scene.
+     * @return Timings of each scene, in the same order as the scenes.
+     * @throws InterruptedException If the calling thread is interrupted
+     *                              while waiting for the scenes.
+     * @throws ExecutionException If a scene throws an exception. The
+     *                            remaining scenes are cancelled.
+     */
+    public List<FrameStats> runAll(List<? extends GameScene> scenes, long ticks)
+            throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads, Math.max(1, scenes.size())), runnable -> {
+                    Thread thread = new Thread(runnable, "headless-runner");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        try {
+            List<Future<FrameStats>> futures = new ArrayList<>();
+            for (GameScene scene : scenes) {
+                futures.add(executor.submit(() -> run(scene, ticks)));
+            }
+
+            List<FrameStats> results = new ArrayList<>();
+            for (Future<FrameStats> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Number of worker threads used by runAll().
+     */
+    public int getThreads() { return threads; }
+}
\ No newline at end of file
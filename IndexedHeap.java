@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int node ids ordered by int keys, used as the open
+ * set of PathFinder. Every node id knows its position in the heap, so the
+ * key of a node already in the heap can be lowered without searching for
+ * it. Stores only primitive arrays, so pushing and popping don't allocate.
+ */
+public class IndexedHeap {
+
+    /**
+     * Node ids in heap order. Only the first size slots are in use.
+     */
+    private int[] heap;
+
+    /**
+     * Position of each node id in the heap, or -1 if it isn't in it.
+     */
+    private int[] positions;
+
+    /**
+     * Key of each node id.
+     */
+    private int[] keys;
+
+    /**
+     * Number of nodes in the heap.
+     */
+    private int size = 0;
+
+    /**
+     * Constructs an empty heap.
+     *
+     * @param capacity Number of node ids, from 0 to capacity - 1.
+     */
+    public IndexedHeap(int capacity) {
+        heap = new int[capacity];
+        positions = new int[capacity];
+        keys = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Adds a node, or lowers its key if it is already in the heap with
+     * a higher key.
+     *
+     * @param node Node id.
+     * @param key Key of the node.
+     */
+    public void push(int node, int key) {
+        int position = positions[node];
+        if (position < 0) {
+            position = size++;
+            heap[position] = node;
+            positions[node] = position;
+        } else if (key >= keys[node]) {
+            return;
+        }
+        keys[node] = key;
+        siftUp(position);
+    }
+
+    /**
+     * Removes the node with the smallest key.
+     *
+     * @return Id of the removed node.
+     */
+    public int pop() {
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * @param node Node id.
+     * @return Whether the node is in the heap.
+     */
+    public boolean contains(int node) { return positions[node] >= 0; }
+
+    /**
+     * Removes every node. Costs one step per node in the heap, not per
+     * node id.
+     */
+    public void clear() {
+        for (int i = 0 ; i < size ; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * @return Whether the heap is empty.
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /**
+     * @return Number of nodes in the heap.
+     */
+    public int size() { return size; }
+
+    /**
+     * Moves the node in the given position up until its parent has a
+     * smaller key.
+     */
+    private void siftUp(int position) {
+        int node = heap[position];
+        int key = keys[node];
+        while (position > 0) {
+            int parentPosition = (position - 1) >>> 1;
+            int parent = heap[parentPosition];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+
+    /**
+     * Moves the node in the given position down until its children have
+     * larger keys.
+     */
+    private void siftDown(int position) {
+        int node = heap[position];
+        int key = keys[node];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            if (key <= keys[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            positions[heap[child]] = position;
+            position = child;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,95 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free queue of input events. One thread (the JavaFX application
+ * thread) offers events and one thread (the thread running the game loop)
+ * polls them, so neither side ever blocks or allocates.
+ *
+ * Events are stored as non-negative integers in a ring buffer whose
+ * capacity is a power of two.
+ */
+public class InputQueue {
+
+    /**
+     * Value returned by poll() when the queue is empty.
+     */
+    public static final int EMPTY = -1;
+
+    /**
+     * Ring buffer holding the queued events.
+     */
+    private final int[] buffer;
+
+    /**
+     * Mask used to wrap sequence numbers to buffer indices.
+     */
+    private final int mask;
+
+    /**
+     * Sequence number of the next event to be polled. Only written
+     * by the consumer thread.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Sequence number of the next free slot. Only written by the
+     * producer thread.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Number of events that were dropped because the queue was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Constructs the queue.
+     *
+     * @param capacity Maximum number of queued events. Rounded up to
+     *                 the next power of two.
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        buffer = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an event to the queue. May only be called from the
+     * producer thread.
+     *
+     * @param event Event to be queued. Must not be negative.
+     * @return False if the queue was full and the event was dropped.
+     */
+    public boolean offer(int event) {
+        long t = tail.get();
+        if (t - head.get() == buffer.length) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        buffer[(int) t & mask] = event;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest event from the queue. May only be called from
+     * the consumer thread.
+     *
+     * @return The oldest event, or EMPTY if the queue is empty.
+     */
+    public int poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return EMPTY;
+        }
+        int event = buffer[(int) h & mask];
+        head.lazySet(h + 1);
+        return event;
+    }
+
+    /**
+     * @return Number of events that were dropped because the queue was full.
+     */
+    public long getDropped() { return dropped.get(); }
+}
\ No newline at end of file
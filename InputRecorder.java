@@ -0,0 +1,135 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records the keyboard input of a game session into a compact binary file
+ * that InputReplay can play back. The file starts with a header that
+ * contains the random seed of the scene, followed by one record per tick
+ * listing the key events that KeyHandler applied during that tick. Ticks
+ * without input take a single byte.
+ *
+ * File layout, with all counts and events written as variable-length
+ * integers:
+ *
+ * header:  magic (int), version (short), seed (long)
+ * tick:    event count + 1, events...
+ * end:     0, state hash of the scene (long)
+ */
+public class InputRecorder implements Closeable {
+
+    /**
+     * First four bytes of every recording.
+     */
+    static final int MAGIC = 0x424e4952;
+
+    /**
+     * Version of the file format.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * Stream the recording is written to.
+     */
+    private DataOutputStream out;
+
+    /**
+     * Events of the tick that is being recorded.
+     */
+    private int[] events = new int[64];
+
+    /**
+     * Number of events in the tick that is being recorded.
+     */
+    private int eventCount = 0;
+
+    /**
+     * Number of recorded ticks.
+     */
+    private long ticks = 0;
+
+    /**
+     * Creates the recording file and writes its header.
+     *
+     * @param file File that the recording is written to.
+     * @param seed Random seed of the recorded scene.
+     * @throws IOException If the file can't be written.
+     */
+    public InputRecorder(Path file, long seed) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(seed);
+    }
+
+    /**
+     * Adds a key event to the tick that is being recorded.
+     *
+     * @param event Key event encoded by KeyHandler.
+     */
+    void record(int event) {
+        if (eventCount == events.length) {
+            events = java.util.Arrays.copyOf(events, events.length * 2);
+        }
+        events[eventCount++] = event;
+    }
+
+    /**
+     * Writes the events recorded since the previous call as one tick.
+     */
+    void endTick() {
+        try {
+            writeVarInt(eventCount + 1);
+            for (int i = 0 ; i < eventCount ; i++) {
+                writeVarInt(events[i]);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        eventCount = 0;
+        ticks++;
+    }
+
+    /**
+     * Ends the recording with the state hash of the scene, so that
+     * replays can check that they ended in the same state, and closes
+     * the file.
+     *
+     * @param stateHash State hash of the recorded scene.
+     * @throws IOException If the file can't be written.
+     */
+    public void finish(long stateHash) throws IOException {
+        writeVarInt(0);
+        out.writeLong(stateHash);
+        close();
+    }
+
+    /**
+     * Closes the file without writing a state hash.
+     *
+     * @throws IOException If the file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Writes a non-negative integer using 7 bits per byte.
+     *
+     * @param value Integer to be written.
+     * @throws IOException If the file can't be written.
+     */
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * @return Number of recorded ticks.
+     */
+    public long getTicks() { return ticks; }
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Plays back a recording made by InputRecorder. The whole recording is
+ * read into memory up front, so playback never waits for the disk.
+ * When set to a KeyHandler, each updateKeys() call takes the key events
+ * of the next recorded tick instead of live keyboard input.
+ */
+public class InputReplay {
+
+    /**
+     * The recording.
+     */
+    private ByteBuffer data;
+
+    /**
+     * Random seed of the recorded scene.
+     */
+    private long seed;
+
+    /**
+     * Whether the recording ended with a state hash.
+     */
+    private boolean hasStateHash = false;
+
+    /**
+     * State hash of the recorded scene at the end of the recording.
+     */
+    private long stateHash;
+
+    /**
+     * Whether all recorded ticks have been played back.
+     */
+    private boolean finished = false;
+
+    /**
+     * Reads the recording and its header.
+     *
+     * @param file File that contains the recording.
+     * @throws IOException If the file can't be read or isn't a recording.
+     */
+    public InputReplay(Path file) throws IOException {
+        data = ByteBuffer.wrap(Files.readAllBytes(file));
+
+        if (data.remaining() < 14 || data.getInt() != InputRecorder.MAGIC) {
+            throw new IOException("Not an input recording: " + file);
+        }
+        short version = data.getShort();
+        if (version != InputRecorder.VERSION) {
+            throw new IOException("Unsupported recording version " + version + ": " + file);
+        }
+        seed = data.getLong();
+        finished = !data.hasRemaining();
+    }
+
+    /**
+     * Applies the key events of the next recorded tick to the given
+     * key handler.
+     *
+     * @param keyHandler Key handler that the events are applied to.
+     * @return False if there were no more ticks to play back.
+     * @throws IOException If the recording ends in the middle of a tick.
+     *                     The recording is finished after that.
+     */
+    boolean nextTick(KeyHandler keyHandler) throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        int count = readVarInt() - 1;
+        if (count < 0) {
+            readEnd();
+            return false;
+        }
+
+        for (int i = 0 ; i < count ; i++) {
+            keyHandler.applyEvent(readVarInt());
+        }
+        finished = !data.hasRemaining();
+        return true;
+    }
+
+    /**
+     * Reads the state hash that follows the end marker, if there is one,
+     * and marks the recording as finished.
+     */
+    private void readEnd() {
+        finished = true;
+        if (data.remaining() >= 8) {
+            hasStateHash = true;
+            stateHash = data.getLong();
+        }
+    }
+
+    /**
+     * Reads a non-negative integer written with 7 bits per byte.
+     *
+     * @return The integer.
+     * @throws IOException If the recording ends in the middle of the
+     *                     integer.
+     */
+    private int readVarInt() throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        try {
+            do {
+                b = data.get();
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+        } catch (BufferUnderflowException e) {
+            finished = true;
+            throw new IOException("Truncated recording", e);
+        }
+        return value;
+    }
+
+    /**
+     * @return Whether there are ticks left to play back.
+     */
+    public boolean hasNext() {
+        if (!finished && data.get(data.position()) == 0) {
+            // Only the end marker and state hash are left. Consume them
+            // so the state hash becomes available.
+            data.get();
+            readEnd();
+        }
+        return !finished;
+    }
+
+    /**
+     * @return Random seed of the recorded scene.
+     */
+    public long getSeed() { return seed; }
+
+    /**
+     * @return Whether the recording ended with a state hash. Only known
+     *         once all ticks have been played back.
+     */
+    public boolean hasStateHash() { return hasStateHash; }
+
+    /**
+     * @return State hash of the recorded scene at the end of the recording.
+     */
+    public long getStateHash() { return stateHash; }
+}
\ No newline at end of file
@@ -0,0 +1,136 @@
+/**
+ * The last positions received for a remote object, each with the time it
+ * was sent at, on the clock of the sender. Positions over a network
+ * arrive late and unevenly, so remote
+ * objects are drawn a little in the past, at a position interpolated
+ * between the two received positions around that time. The buffer has a
+ * fixed capacity and allocates nothing after it has been constructed;
+ * when it is full, the oldest position is dropped.
+ */
+public class InterpolationBuffer {
+
+    /**
+     * Times of the positions in milliseconds.
+     */
+    private long[] times;
+
+    /**
+     * X-coordinates of the positions.
+     */
+    private double[] xs;
+
+    /**
+     * Y-coordinates of the positions.
+     */
+    private double[] ys;
+
+    /**
+     * Index of the oldest position.
+     */
+    private int start = 0;
+
+    /**
+     * Number of positions.
+     */
+    private int count = 0;
+
+    /**
+     * Constructs an empty buffer.
+     *
+     * @param capacity Largest number of positions kept.
+     */
+    public InterpolationBuffer(int capacity) {
+        times = new long[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+    }
+
+    /**
+     * Adds a position. Positions must be added in time order; a position
+     * that isn't newer than the newest one replaces it.
+     *
+     * @param time Time of the position in milliseconds.
+     * @param x X-coordinate.
+     * @param y Y-coordinate.
+     */
+    public void add(long time, double x, double y) {
+        if (count > 0) {
+            int newest = index(count - 1);
+            if (time <= times[newest]) {
+                xs[newest] = x;
+                ys[newest] = y;
+                return;
+            }
+        }
+        if (count == times.length) {
+            start = index(1);
+            count--;
+        }
+        int i = index(count);
+        times[i] = time;
+        xs[i] = x;
+        ys[i] = y;
+        count++;
+    }
+
+    /**
+     * Finds the position at the given time. Times before the oldest
+     * position give the oldest one and times after the newest give the
+     * newest one.
+     *
+     * @param time Time in milliseconds.
+     * @param out Array the x- and y-coordinate are stored in.
+     * @return Whether the buffer had any positions.
+     */
+    public boolean sample(long time, double[] out) {
+        if (count == 0) {
+            return false;
+        }
+
+        int previous = index(0);
+        if (time <= times[previous]) {
+            out[0] = xs[previous];
+            out[1] = ys[previous];
+            return true;
+        }
+        for (int n = 1 ; n < count ; n++) {
+            int next = index(n);
+            if (time < times[next]) {
+                double t = (time - times[previous]) / (double) (times[next] - times[previous]);
+                out[0] = xs[previous] + (xs[next] - xs[previous]) * t;
+                out[1] = ys[previous] + (ys[next] - ys[previous]) * t;
+                return true;
+            }
+            previous = next;
+        }
+        out[0] = xs[previous];
+        out[1] = ys[previous];
+        return true;
+    }
+
+    /**
+     * @param n Number of a position from the oldest one.
+     * @return Index of the position in the arrays.
+     */
+    private int index(int n) {
+        return (start + n) % times.length;
+    }
+
+    /**
+     * Removes every position.
+     */
+    public void clear() {
+        start = 0;
+        count = 0;
+    }
+
+    /**
+     * @return Number of positions.
+     */
+    public int getCount() { return count; }
+
+    /**
+     * @return Largest number of positions kept.
+     */
+    public int getCapacity() { return times.length; }
+}
\ No newline at end of file
@@ -1,20 +1,59 @@
+import java.io.IOException;
 import java.util.*;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 
 /**
- * This class handles keyboard input. It detects, which keys are being
- * pressed, adds them to a Set, and removes them from the set when
- * they are no longer being pressed. The resulting set can then be retrieved
- * and used for input detection in a game.
+ * This class handles keyboard input. The key handlers are registered on
+ * the scene once, and they push every key press and release into a
+ * lock-free InputQueue. Once per frame, updateKeys() drains the queue
+ * into a snapshot of the keyboard, which the game then reads.
+ *
+ * The snapshot contains the keys that are being held down, and the keys
+ * that were pressed or released during the frame. A key that is pressed
+ * and released within a single frame is therefore never lost: it shows up
+ * as both pressed and released, even though it is no longer held down.
+ * Reading the snapshot doesn't allocate, and because the handlers only
+ * touch the queue, the game loop can run on any thread.
  */
 public class KeyHandler {
 
     /**
-     * The set that contains all keys that are being currently pressed
-     * at any moment.
+     * Maximum number of key events that can be queued between two frames.
      */
-    private Set<KeyCode> keySet;
+    private static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * All key codes, indexed by their ordinal.
+     */
+    private static final KeyCode[] KEYS = KeyCode.values();
+
+    /**
+     * Queue that the key handlers push events into.
+     */
+    private InputQueue queue;
+
+    /**
+     * Bits of the keys that are currently held down, indexed by
+     * KeyCode ordinal.
+     */
+    private long[] down;
+
+    /**
+     * Bits of the keys that were pressed during the last frame.
+     */
+    private long[] pressed;
+
+    /**
+     * Bits of the keys that were released during the last frame.
+     */
+    private long[] released;
+
+    /**
+     * The set that contains all keys that are being currently held down.
+     * Refilled in place on every updateKeys().
+     */
+    private EnumSet<KeyCode> keySet;
 
     /**
      * The GameScene that this object is used in.
@@ -22,31 +61,179 @@ public class KeyHandler {
     private GameScene scene;
 
     /**
-     * Constructs the key handler and initializes the necessary attributes.
-     * 
+     * Recorder that the applied key events are written to, or null.
+     */
+    private InputRecorder recorder;
+
+    /**
+     * Recording that key events are taken from instead of the
+     * keyboard, or null.
+     */
+    private InputReplay replay;
+
+    /**
+     * Constructs the key handler, initializes the necessary attributes
+     * and registers the key handlers on the scene.
+     *
      * @param scene The GameScene that this object is used in.
      */
     public KeyHandler(GameScene scene) {
         this.scene = scene;
-        keySet = new LinkedHashSet<>();
+        queue = new InputQueue(QUEUE_CAPACITY);
+
+        int words = (KEYS.length + 63) / 64;
+        down = new long[words];
+        pressed = new long[words];
+        released = new long[words];
+        keySet = EnumSet.noneOf(KeyCode.class);
+
+        scene.addEventHandler(KeyEvent.KEY_PRESSED,
+                event -> queue.offer(encode(event.getCode(), true)));
+        scene.addEventHandler(KeyEvent.KEY_RELEASED,
+                event -> queue.offer(encode(event.getCode(), false)));
     }
 
     /**
-     * Whenever a key is pressed, adds it to the key set.
-     * Whenever a pressed key is released, removes it from the key set.
+     * Takes a new snapshot of the keyboard. Applies every key event that
+     * has been queued since the previous call, or the events of the next
+     * tick of the replay if one is set. Should be called once per frame,
+     * before input is read.
      */
     public void updateKeys() {
-        scene.setOnKeyPressed(event -> keySet.add(event.getCode()));
-        scene.setOnKeyReleased(event -> keySet.remove(event.getCode()));
+        Arrays.fill(pressed, 0);
+        Arrays.fill(released, 0);
+
+        if (replay != null) {
+            // Live input is discarded while a replay is running.
+            while (queue.poll() != InputQueue.EMPTY) { }
+            try {
+                replay.nextTick(this);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            int event;
+            while ((event = queue.poll()) != InputQueue.EMPTY) {
+                applyEvent(event);
+                if (recorder != null) {
+                    recorder.record(event);
+                }
+            }
+            if (recorder != null) {
+                recorder.endTick();
+            }
+        }
+
+        keySet.clear();
+        for (int word = 0 ; word < down.length ; word++) {
+            long bits = down[word];
+            while (bits != 0) {
+                keySet.add(KEYS[word * 64 + Long.numberOfTrailingZeros(bits)]);
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    /**
+     * Applies a single encoded key event to the snapshot. Key repeat
+     * events of a key that is already held down don't count as presses.
+     *
+     * @param event Key event encoded with encode().
+     */
+    void applyEvent(int event) {
+        int key = event >>> 1;
+        int word = key >>> 6;
+        long bit = 1L << key;
+
+        if ((event & 1) != 0) {
+            if ((down[word] & bit) == 0) {
+                down[word] |= bit;
+                pressed[word] |= bit;
+            }
+        } else {
+            down[word] &= ~bit;
+            released[word] |= bit;
+        }
     }
 
     /**
-     * @return The set that contains all currently pressed keys.
+     * Encodes a key event as a non-negative integer.
+     *
+     * @param code Key that was pressed or released.
+     * @param press True for a press, false for a release.
+     * @return The encoded event.
+     */
+    static int encode(KeyCode code, boolean press) {
+        return code.ordinal() << 1 | (press ? 1 : 0);
+    }
+
+    /**
+     * @param code Key to check.
+     * @return Whether the key is currently held down.
+     */
+    public boolean isDown(KeyCode code) {
+        int key = code.ordinal();
+        return (down[key >>> 6] & 1L << key) != 0;
+    }
+
+    /**
+     * @param code Key to check.
+     * @return Whether the key was pressed during the last frame.
+     */
+    public boolean wasPressed(KeyCode code) {
+        int key = code.ordinal();
+        return (pressed[key >>> 6] & 1L << key) != 0;
+    }
+
+    /**
+     * @param code Key to check.
+     * @return Whether the key was released during the last frame.
+     */
+    public boolean wasReleased(KeyCode code) {
+        int key = code.ordinal();
+        return (released[key >>> 6] & 1L << key) != 0;
+    }
+
+    /**
+     * @return The set that contains all currently pressed keys. The same
+     *         set is updated in place on every updateKeys().
      */
     public Set<KeyCode> getKeySet() { return keySet; }
 
     /**
-     * @param keySet The set that contains all currently pressed keys.
+     * Releases all keys without reporting them as released.
+     */
+    public void reset() {
+        Arrays.fill(down, 0);
+        Arrays.fill(pressed, 0);
+        Arrays.fill(released, 0);
+        keySet.clear();
+    }
+
+    /**
+     * @return The queue that the key handlers push events into.
+     */
+    public InputQueue getQueue() { return queue; }
+
+    /**
+     * @return Recorder that the applied key events are written to, or null.
+     */
+    public InputRecorder getRecorder() { return recorder; }
+
+    /**
+     * @param recorder Recorder that the applied key events are written
+     *                 to, or null to stop recording.
+     */
+    public void setRecorder(InputRecorder recorder) { this.recorder = recorder; }
+
+    /**
+     * @return Recording that key events are taken from, or null.
+     */
+    public InputReplay getReplay() { return replay; }
+
+    /**
+     * @param replay Recording that key events are taken from instead of
+     *               the keyboard, or null to use the keyboard again.
      */
-    public void setKeySet(Set<KeyCode> keySet) { this.keySet = keySet; }
+    public void setReplay(InputReplay replay) { this.replay = replay; }
 }
\ No newline at end of file
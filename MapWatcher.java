@@ -0,0 +1,247 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javafx.scene.image.Image;
+
+/**
+ * Watches the directory of a TileMap's .tmx file and reloads the map and
+ * its images when they change on disk, so levels can be edited without
+ * restarting the game.
+ *
+ * A changed .tmx file is read on the watcher thread and swapped into the
+ * live TileMap, which only replaces the tile rows and objects that changed.
+ * A changed image is decoded on a background thread and then replaced in
+ * the shared AssetCache, in the GameObjects that use it and in the tile set
+ * of the map. The changes themselves are applied on the game thread by
+ * applyChanges(), which GameLoop calls at the start of every frame.
+ *
+ * Images are matched to AssetCache paths by prefixing the file name with
+ * the directory of the .tmx file as it was given to the TileMap, so
+ * "images/map1.tmx" matches images cached as "images/sun.png".
+ */
+public class MapWatcher implements Closeable {
+
+    /**
+     * File name extensions of the images that are reloaded.
+     */
+    private static final String[] IMAGE_EXTENSIONS = {".png", ".jpg", ".jpeg", ".gif", ".bmp"};
+
+    /**
+     * Time to wait after a change before reading the files, so that the
+     * several events of one save are handled together.
+     */
+    private static final long SETTLE_MILLIS = 50;
+
+    /**
+     * The map that is reloaded.
+     */
+    private TileMap map;
+
+    /**
+     * Canvas whose GameObjects get the reloaded images.
+     */
+    private GameCanvas canvas;
+
+    /**
+     * The watched directory.
+     */
+    private Path directory;
+
+    /**
+     * Prefix that turns a file name into an AssetCache path.
+     */
+    private String pathPrefix;
+
+    /**
+     * Service that reports changes in the watched directory.
+     */
+    private WatchService watchService;
+
+    /**
+     * Thread that waits for changes.
+     */
+    private Thread thread;
+
+    /**
+     * Thread that decodes changed images.
+     */
+    private ExecutorService decoder;
+
+    /**
+     * Changes waiting to be applied on the game thread.
+     */
+    private Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructs the watcher and registers the directory of the map.
+     * Call start() to begin watching.
+     *
+     * @param map The map that is reloaded.
+     * @param canvas Canvas whose GameObjects get the reloaded images.
+     * @throws IOException If the directory can't be watched.
+     */
+    public MapWatcher(TileMap map, GameCanvas canvas) throws IOException {
+        this.map = map;
+        this.canvas = canvas;
+
+        Path parent = map.getSource().getParent();
+        pathPrefix = parent == null ? "" : parent.toString().replace('\\', '/') + "/";
+        directory = map.getSource().toAbsolutePath().getParent();
+
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Starts watching the directory on a background thread.
+     */
+    public void start() {
+        decoder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread t = new Thread(runnable, "map-watcher-decoder");
+            t.setDaemon(true);
+            return t;
+        });
+        thread = new Thread(this::watch, "map-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Applies the changes that have been loaded since the previous call.
+     * Must be called on the game thread.
+     */
+    public void applyChanges() {
+        Runnable change;
+        while ((change = pending.poll()) != null) {
+            try {
+                change.run();
+            } catch (RuntimeException e) {
+                // A file that was saved halfway can't be parsed. The next
+                // save triggers another reload.
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Waits for changes in the directory until the watcher is closed.
+     */
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+                Thread.sleep(SETTLE_MILLIS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Set<Path> changed = new LinkedHashSet<>();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() != StandardWatchEventKinds.OVERFLOW) {
+                    changed.add((Path) event.context());
+                }
+            }
+            key.reset();
+
+            for (Path name : changed) {
+                fileChanged(name);
+            }
+        }
+    }
+
+    /**
+     * Loads a changed file and queues it to be applied.
+     *
+     * @param name Name of the changed file in the watched directory.
+     */
+    private void fileChanged(Path name) {
+        Path file = directory.resolve(name);
+
+        if (name.equals(map.getSource().getFileName())) {
+            try {
+                List<String> lines = Files.readAllLines(file);
+                pending.add(() -> map.reload(lines));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else if (isImage(name)) {
+            String path = pathPrefix + name;
+            decoder.execute(() -> {
+                Image image = new Image(file.toUri().toString());
+                if (!image.isError()) {
+                    pending.add(() -> imageChanged(path, image));
+                }
+            });
+        }
+    }
+
+    /**
+     * Replaces an image in the shared AssetCache, in the GameObjects that
+     * use it and in the tile set of the map.
+     *
+     * @param path AssetCache path of the image.
+     * @param image The new image.
+     */
+    private void imageChanged(String path, Image image) {
+        Image old = AssetCache.getDefault().replace(path, image);
+
+        if (old != null) {
+            boolean sheetChanged = false;
+            GameObjectList objects = canvas.getObjectList();
+            for (int i = 0 ; i < objects.size() ; i++) {
+                GameObject o = objects.get(i);
+                if (o.getImage() == old) {
+                    o.setImage(image);
+                }
+                if (o.getClip() != null && o.getClip().getSheet().getImage() == old) {
+                    o.getClip().getSheet().setImage(image);
+                    sheetChanged = true;
+                }
+            }
+            // Objects showing the same frame of a sheet don't look
+            // changed to the canvas, so they are redrawn here.
+            if (sheetChanged) {
+                canvas.invalidate();
+            }
+        }
+
+        if (path.equals(map.getTileSetPath())) {
+            map.reloadTileSet();
+        }
+    }
+
+    /**
+     * @param name File name.
+     * @return Whether the file is an image that can be reloaded.
+     */
+    private static boolean isImage(Path name) {
+        String lower = name.toString().toLowerCase();
+        for (String extension : IMAGE_EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops watching the directory.
+     *
+     * @throws IOException If the watch service can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (decoder != null) {
+            decoder.shutdownNow();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,40 @@
+/**
+ * System that moves the GameObject of every entity that has a Velocity.
+ * Solid objects are stopped by other solid objects like in
+ * GameObject.moveXCheckCollision(), and the blocked part of the velocity
+ * is set to zero.
+ */
+public class MovementSystem implements EntitySystem {
+
+    @Override
+    public void update(EntityWorld world) {
+        ComponentStore<Velocity> velocities = world.getStore(Velocity.class);
+        ComponentStore<GameObject> objects = world.getStore(GameObject.class);
+
+        for (int i = 0 ; i < velocities.size() ; i++) {
+            GameObject o = objects.get(velocities.getEntity(i));
+            if (o == null) {
+                continue;
+            }
+
+            Velocity v = velocities.getComponent(i);
+            if (v.getDx() != 0) {
+                double oldX = o.getX();
+                o.moveXCheckCollision(v.getDx());
+                if (o.getX() == oldX) {
+                    v.setDx(0);
+                }
+            }
+            if (v.getDy() != 0) {
+                double oldY = o.getY();
+                o.moveYCheckCollision(v.getDy());
+                if (o.getY() == oldY) {
+                    v.setDy(0);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Class<?>[] getWrites() { return new Class<?>[] {Velocity.class, GameObject.class}; }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+import javafx.scene.image.Image;
+
+/**
+ * A background image that scrolls at its own speed relative to the camera,
+ * used for parallax backgrounds. A layer with scroll factor 0 stays still
+ * on the screen, a layer with scroll factor 1 moves with the game world,
+ * and values in between make distant layers move slower than near ones.
+ * A layer can repeat itself horizontally, vertically or both to cover
+ * the whole screen.
+ */
+public class ParallaxLayer {
+
+    /**
+     * Image of the layer.
+     */
+    private Image image;
+
+    /**
+     * How much the layer moves horizontally per pixel of camera movement.
+     */
+    private double scrollX;
+
+    /**
+     * How much the layer moves vertically per pixel of camera movement.
+     */
+    private double scrollY;
+
+    /**
+     * Whether the image repeats horizontally.
+     */
+    private boolean repeatX = false;
+
+    /**
+     * Whether the image repeats vertically.
+     */
+    private boolean repeatY = false;
+
+    /**
+     * X-coordinate of the layer when the camera is at 0.
+     */
+    private double x = 0;
+
+    /**
+     * Y-coordinate of the layer when the camera is at 0.
+     */
+    private double y = 0;
+
+    /**
+     * Constructs a layer that scrolls equally in both directions.
+     *
+     * @param image Image of the layer.
+     * @param scroll How much the layer moves per pixel of camera movement.
+     */
+    public ParallaxLayer(Image image, double scroll) {
+        this(image, scroll, scroll);
+    }
+
+    /**
+     * Constructs a layer with separate horizontal and vertical scrolling.
+     *
+     * @param image Image of the layer.
+     * @param scrollX How much the layer moves horizontally per pixel
+     *                of camera movement.
+     * @param scrollY How much the layer moves vertically per pixel
+     *                of camera movement.
+     */
+    public ParallaxLayer(Image image, double scrollX, double scrollY) {
+        this.image = image;
+        this.scrollX = scrollX;
+        this.scrollY = scrollY;
+    }
+
+    /**
+     * @return Image of the layer.
+     */
+    public Image getImage() { return image; }
+
+    /**
+     * @param image Image of the layer.
+     */
+    public void setImage(Image image) { this.image = image; }
+
+    /**
+     * @return How much the layer moves horizontally per pixel of
+     *         camera movement.
+     */
+    public double getScrollX() { return scrollX; }
+
+    /**
+     * @param scrollX How much the layer moves horizontally per pixel of
+     *                camera movement.
+     */
+    public void setScrollX(double scrollX) { this.scrollX = scrollX; }
+
+    /**
+     * @return How much the layer moves vertically per pixel of
+     *         camera movement.
+     */
+    public double getScrollY() { return scrollY; }
+
+    /**
+     * @param scrollY How much the layer moves vertically per pixel of
+     *                camera movement.
+     */
+    public void setScrollY(double scrollY) { this.scrollY = scrollY; }
+
+    /**
+     * @return Whether the image repeats horizontally.
+     */
+    public boolean getRepeatX() { return repeatX; }
+
+    /**
+     * @param repeatX Whether the image repeats horizontally.
+     */
+    public void setRepeatX(boolean repeatX) { this.repeatX = repeatX; }
+
+    /**
+     * @return Whether the image repeats vertically.
+     */
+    public boolean getRepeatY() { return repeatY; }
+
+    /**
+     * @param repeatY Whether the image repeats vertically.
+     */
+    public void setRepeatY(boolean repeatY) { this.repeatY = repeatY; }
+
+    /**
+     * @return X-coordinate of the layer when the camera is at 0.
+     */
+    public double getX() { return x; }
+
+    /**
+     * @param x X-coordinate of the layer when the camera is at 0.
+     */
+    public void setX(double x) { this.x = x; }
+
+    /**
+     * @return Y-coordinate of the layer when the camera is at 0.
+     */
+    public double getY() { return y; }
+
+    /**
+     * @param y Y-coordinate of the layer when the camera is at 0.
+     */
+    public void setY(double y) { this.y = y; }
+}
\ No newline at end of file
@@ -0,0 +1,420 @@
+import java.util.*;
+import java.util.stream.IntStream;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * Emits and moves large numbers of small particles for effects such as
+ * explosions and engine trails. Particles are not GameObjects: they don't
+ * collide, aren't in any object list and are stored in flat float arrays,
+ * one array per property, so updating them is a tight loop over primitive
+ * arrays. Dead particles are replaced by the last live particle, so the
+ * live particles always fill the start of the arrays.
+ *
+ * Large emitters update their particles in parallel. GameCanvas draws the
+ * particles of its emitters in one batch per emitter, skipping particles
+ * outside the view of the camera, and redraws only the area they cover.
+ *
+ * Velocities, gravity and life times are given per tick, like the
+ * movement of GameObjects.
+ */
+public class ParticleEmitter {
+
+    /**
+     * Smallest number of particles that is updated in parallel.
+     */
+    private static final int PARALLEL_PARTICLES = 8192;
+
+    /**
+     * Number of particles updated by one parallel task.
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * X-coordinate of each particle.
+     */
+    private float[] x;
+
+    /**
+     * Y-coordinate of each particle.
+     */
+    private float[] y;
+
+    /**
+     * Horizontal velocity of each particle in pixels per tick.
+     */
+    private float[] vx;
+
+    /**
+     * Vertical velocity of each particle in pixels per tick.
+     */
+    private float[] vy;
+
+    /**
+     * Ticks each particle has left to live.
+     */
+    private float[] life;
+
+    /**
+     * Number of live particles.
+     */
+    private int count = 0;
+
+    /**
+     * Image drawn for each particle, or null to draw squares of the color.
+     */
+    private Image image;
+
+    /**
+     * Color of the particles when there is no image.
+     */
+    private Color color = Color.WHITE;
+
+    /**
+     * Width and height of a particle in pixels.
+     */
+    private double size = 2;
+
+    /**
+     * Speed of new particles in pixels per tick.
+     */
+    private double speed = 2;
+
+    /**
+     * How much the speed of new particles varies, from 0 to 1.
+     */
+    private double speedVariation = 0.5;
+
+    /**
+     * Direction of new particles in radians, 0 pointing right.
+     */
+    private double direction = 0;
+
+    /**
+     * Width of the cone new particles are emitted in, in radians.
+     */
+    private double spread = 2 * Math.PI;
+
+    /**
+     * Ticks new particles live.
+     */
+    private double lifeTime = 60;
+
+    /**
+     * How much the life time of new particles varies, from 0 to 1.
+     */
+    private double lifeVariation = 0.5;
+
+    /**
+     * Added to the vertical velocity of every particle every tick.
+     */
+    private double gravity = 0;
+
+    /**
+     * Fraction of the velocity kept every tick.
+     */
+    private double drag = 1;
+
+    /**
+     * Random number generator for new particles.
+     */
+    private Random random;
+
+    /**
+     * Bounds of the area the particles cover as {left, top, right,
+     * bottom}. Empty when left is greater than right.
+     */
+    private double[] bounds = new double[4];
+
+    /**
+     * Bounds of the area the particles covered when they were last drawn.
+     */
+    private double[] renderedBounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                                       Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+    /**
+     * Constructs an emitter.
+     *
+     * @param capacity Largest number of live particles. Particles emitted
+     *                 beyond it are dropped.
+     */
+    public ParticleEmitter(int capacity) {
+        this(capacity, new Random());
+    }
+
+    /**
+     * Constructs an emitter that takes its random numbers from the given
+     * generator, for example the one of a GameScene to keep replays
+     * deterministic.
+     *
+     * @param capacity Largest number of live particles.
+     * @param random Random number generator for new particles.
+     */
+    public ParticleEmitter(int capacity, Random random) {
+        x = new float[capacity];
+        y = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        life = new float[capacity];
+        this.random = random;
+        clearBounds();
+    }
+
+    /**
+     * Emits new particles from a point.
+     *
+     * @param px X-coordinate of the point.
+     * @param py Y-coordinate of the point.
+     * @param amount Number of particles to emit.
+     * @return Number of particles emitted, less than amount if the
+     *         emitter is full.
+     */
+    public int emit(double px, double py, int amount) {
+        int emitted = Math.min(amount, x.length - count);
+        for (int n = 0 ; n < emitted ; n++) {
+            int i = count++;
+            double angle = direction + (random.nextDouble() - 0.5) * spread;
+            double s = speed * (1 + (random.nextDouble() * 2 - 1) * speedVariation);
+            x[i] = (float) px;
+            y[i] = (float) py;
+            vx[i] = (float) (Math.cos(angle) * s);
+            vy[i] = (float) (Math.sin(angle) * s);
+            life[i] = (float) (lifeTime * (1 + (random.nextDouble() * 2 - 1) * lifeVariation));
+            include(x[i], y[i]);
+        }
+        return emitted;
+    }
+
+    /**
+     * Moves every particle by one tick and removes the particles whose
+     * life has run out.
+     */
+    public void update() {
+        if (count >= PARALLEL_PARTICLES) {
+            int batches = (count + BATCH_SIZE - 1) / BATCH_SIZE;
+            IntStream.range(0, batches).parallel().forEach(b ->
+                move(b * BATCH_SIZE, Math.min(count, (b + 1) * BATCH_SIZE)));
+        } else {
+            move(0, count);
+        }
+
+        // Remove dead particles by moving the last live one in their place.
+        clearBounds();
+        int i = 0;
+        while (i < count) {
+            if (life[i] <= 0) {
+                count--;
+                x[i] = x[count];
+                y[i] = y[count];
+                vx[i] = vx[count];
+                vy[i] = vy[count];
+                life[i] = life[count];
+            } else {
+                include(x[i], y[i]);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Moves the particles in a range by one tick.
+     *
+     * @param from Index of the first particle.
+     * @param to Index after the last particle.
+     */
+    private void move(int from, int to) {
+        float g = (float) gravity;
+        float d = (float) drag;
+        for (int i = from ; i < to ; i++) {
+            vy[i] = (vy[i] + g) * d;
+            vx[i] = vx[i] * d;
+            x[i] += vx[i];
+            y[i] += vy[i];
+            life[i] -= 1;
+        }
+    }
+
+    /**
+     * Grows the bounds to cover a particle at the given point.
+     */
+    private void include(float px, float py) {
+        bounds[0] = Math.min(bounds[0], px);
+        bounds[1] = Math.min(bounds[1], py);
+        bounds[2] = Math.max(bounds[2], px + size);
+        bounds[3] = Math.max(bounds[3], py + size);
+    }
+
+    /**
+     * Empties the bounds.
+     */
+    private void clearBounds() {
+        bounds[0] = Double.POSITIVE_INFINITY;
+        bounds[1] = Double.POSITIVE_INFINITY;
+        bounds[2] = Double.NEGATIVE_INFINITY;
+        bounds[3] = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Removes every particle.
+     */
+    public void clear() {
+        count = 0;
+        clearBounds();
+    }
+
+    /**
+     * @return X-coordinates of the particles. Only the first getCount()
+     *         are in use.
+     */
+    float[] getXs() { return x; }
+
+    /**
+     * @return Y-coordinates of the particles. Only the first getCount()
+     *         are in use.
+     */
+    float[] getYs() { return y; }
+
+    /**
+     * @return Area the particles cover as {left, top, right, bottom},
+     *         empty when left is greater than right.
+     */
+    double[] getBounds() { return bounds; }
+
+    /**
+     * @return Area the particles covered when they were last drawn.
+     */
+    double[] getRenderedBounds() { return renderedBounds; }
+
+    /**
+     * Remembers the current bounds as the drawn ones.
+     */
+    void markRendered() {
+        System.arraycopy(bounds, 0, renderedBounds, 0, 4);
+    }
+
+    /**
+     * @return Number of live particles.
+     */
+    public int getCount() { return count; }
+
+    /**
+     * @return Largest number of live particles.
+     */
+    public int getCapacity() { return x.length; }
+
+    /**
+     * @return Image drawn for each particle, or null.
+     */
+    public Image getImage() { return image; }
+
+    /**
+     * @param image Image drawn for each particle, or null to draw squares
+     *              of the color.
+     */
+    public void setImage(Image image) { this.image = image; }
+
+    /**
+     * @return Color of the particles when there is no image.
+     */
+    public Color getColor() { return color; }
+
+    /**
+     * @param color Color of the particles when there is no image.
+     */
+    public void setColor(Color color) { this.color = color; }
+
+    /**
+     * @return Width and height of a particle in pixels.
+     */
+    public double getSize() { return size; }
+
+    /**
+     * @param size Width and height of a particle in pixels.
+     */
+    public void setSize(double size) { this.size = size; }
+
+    /**
+     * @return Speed of new particles in pixels per tick.
+     */
+    public double getSpeed() { return speed; }
+
+    /**
+     * @param speed Speed of new particles in pixels per tick.
+     */
+    public void setSpeed(double speed) { this.speed = speed; }
+
+    /**
+     * @return How much the speed of new particles varies, from 0 to 1.
+     */
+    public double getSpeedVariation() { return speedVariation; }
+
+    /**
+     * @param variation How much the speed of new particles varies,
+     *                  from 0 to 1.
+     */
+    public void setSpeedVariation(double variation) { speedVariation = variation; }
+
+    /**
+     * @return Direction of new particles in radians, 0 pointing right.
+     */
+    public double getDirection() { return direction; }
+
+    /**
+     * @param direction Direction of new particles in radians, 0 pointing
+     *                  right.
+     */
+    public void setDirection(double direction) { this.direction = direction; }
+
+    /**
+     * @return Width of the cone new particles are emitted in, in radians.
+     */
+    public double getSpread() { return spread; }
+
+    /**
+     * @param spread Width of the cone new particles are emitted in,
+     *               in radians. 2 * PI emits in every direction.
+     */
+    public void setSpread(double spread) { this.spread = spread; }
+
+    /**
+     * @return Ticks new particles live.
+     */
+    public double getLifeTime() { return lifeTime; }
+
+    /**
+     * @param ticks Ticks new particles live.
+     */
+    public void setLifeTime(double ticks) { lifeTime = ticks; }
+
+    /**
+     * @return How much the life time of new particles varies, from 0 to 1.
+     */
+    public double getLifeVariation() { return lifeVariation; }
+
+    /**
+     * @param variation How much the life time of new particles varies,
+     *                  from 0 to 1.
+     */
+    public void setLifeVariation(double variation) { lifeVariation = variation; }
+
+    /**
+     * @return Added to the vertical velocity of every particle every tick.
+     */
+    public double getGravity() { return gravity; }
+
+    /**
+     * @param gravity Added to the vertical velocity of every particle
+     *                every tick.
+     */
+    public void setGravity(double gravity) { this.gravity = gravity; }
+
+    /**
+     * @return Fraction of the velocity kept every tick.
+     */
+    public double getDrag() { return drag; }
+
+    /**
+     * @param drag Fraction of the velocity kept every tick, 1 for no drag.
+     */
+    public void setDrag(double drag) { this.drag = drag; }
+}
\ No newline at end of file
@@ -0,0 +1,998 @@
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Finds paths between tiles of a TileMap with A*. A tile can't be walked
+ * through if TileMap.getBlockedTiles() says so: if it is a solid tile or
+ * if a GameObject of the map's object layer covers any part of it. Moving
+ * diagonally is allowed by default, but not past the corners of blocked
+ * tiles.
+ *
+ * The open set is an IndexedHeap over int tile ids and the rest of the
+ * search state is kept in int arrays that are reused between searches, so
+ * a search doesn't allocate per tile. On maps wider or taller than the
+ * search window, a search first only looks at the tiles of a window of
+ * that size around the start and goal, which keeps the arrays of each
+ * thread small on large maps. If the goal isn't in the window or can't be
+ * reached inside it, the map is searched as clusters of CLUSTER_SIZE tiles
+ * instead, over the entrances between neighbouring clusters, which needs
+ * memory per entrance instead of per tile. Paths found inside the window
+ * are the shortest, paths found over the clusters can be slightly longer.
+ * Paths can be found on the calling
+ * thread with find(), or on background workers with request(), and found
+ * paths are cached. The cache is cleared when the tiles of the map change,
+ * which is checked from TileMap.getVersion() on every call, so find() and
+ * request() must be called on the game thread.
+ */
+public class PathFinder implements Closeable {
+
+    /**
+     * Cost of moving to a neighbouring tile horizontally or vertically.
+     */
+    private static final int STRAIGHT_COST = 10;
+
+    /**
+     * Cost of moving to a neighbouring tile diagonally.
+     */
+    private static final int DIAGONAL_COST = 14;
+
+    /**
+     * Default number of paths kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    /**
+     * Default width and height of the search window in tiles.
+     */
+    public static final int DEFAULT_WINDOW = 512;
+
+    /**
+     * Width and height of a cluster in tiles.
+     */
+    public static final int CLUSTER_SIZE = 64;
+
+    /**
+     * Cost of tiles and entrances that can't be reached.
+     */
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * Cached result of a search that found no path.
+     */
+    private static final TilePath NO_PATH = new TilePath(new int[0], new int[0], 0, 0);
+
+    /**
+     * Which tiles can't be walked through, taken from the map at one
+     * version. Never changed after it is built, so workers can share it.
+     */
+    private static class Grid {
+
+        /**
+         * Width of the grid in tiles.
+         */
+        private int width;
+
+        /**
+         * Height of the grid in tiles.
+         */
+        private int height;
+
+        /**
+         * Tile ids of the blocked tiles. Tile id is row * width + column.
+         */
+        private BitSet blocked;
+
+        /**
+         * Version of the map the grid was built from.
+         */
+        private int version;
+
+        /**
+         * Clusters of the grid, or null until a search needs them.
+         */
+        private volatile Clusters clusters;
+
+        /**
+         * @return Whether the tile is inside the grid.
+         */
+        private boolean contains(int column, int row) {
+            return column >= 0 && row >= 0 && column < width && row < height;
+        }
+
+        /**
+         * @return Whether the tile is inside the grid and not blocked.
+         */
+        private boolean isOpen(int column, int row) {
+            return contains(column, row) && !blocked.get(row * width + column);
+        }
+    }
+
+    /**
+     * Search state of one thread, reused between searches.
+     */
+    private static class Search {
+
+        /**
+         * Open set of the search.
+         */
+        private IndexedHeap open;
+
+        /**
+         * Cost of the cheapest known path to each node.
+         */
+        private int[] cost;
+
+        /**
+         * Node the cheapest known path to each node comes from.
+         */
+        private int[] parent;
+
+        /**
+         * Search during which each node was last reached. Nodes with an
+         * older stamp count as unreached, so the arrays never need to be
+         * cleared.
+         */
+        private int[] stamp;
+
+        /**
+         * Number of the current search.
+         */
+        private int generation = 0;
+
+        /**
+         * Column of the first tile of the window of the current search.
+         */
+        private int left;
+
+        /**
+         * Row of the first tile of the window of the current search.
+         */
+        private int top;
+
+        /**
+         * Width of the window of the current search in tiles. Node id
+         * is (row - top) * width + column - left.
+         */
+        private int width;
+
+        /**
+         * Height of the window of the current search in tiles.
+         */
+        private int height;
+
+        /**
+         * @return Whether the tile is inside the window and open.
+         */
+        private boolean isOpen(Grid g, int column, int row) {
+            return column >= left && row >= top && column < left + width && row < top + height
+                && g.isOpen(column, row);
+        }
+
+        /**
+         * Open set of the search over the clusters.
+         */
+        private IndexedHeap nodeOpen;
+
+        /**
+         * Cost of the cheapest known path to each entrance.
+         */
+        private int[] nodeCost;
+
+        /**
+         * Entrance the cheapest known path to each entrance comes from.
+         */
+        private int[] nodeParent;
+
+        /**
+         * Search over the clusters during which each entrance was last
+         * reached.
+         */
+        private int[] nodeStamp;
+
+        /**
+         * Number of the current search over the clusters.
+         */
+        private int nodeGeneration = 0;
+
+        /**
+         * @param tiles Number of tiles in the window.
+         */
+        private Search(int tiles) {
+            open = new IndexedHeap(tiles);
+            cost = new int[tiles];
+            parent = new int[tiles];
+            stamp = new int[tiles];
+        }
+    }
+
+    /**
+     * The map divided into square clusters, with an entrance on each run
+     * of open tiles along the border of two neighbouring clusters. An
+     * entrance is a pair of tiles facing each other across the border,
+     * one in each cluster. Built from one grid and never changed after,
+     * except for the costs, which are found when a search first needs
+     * them.
+     */
+    private static class Clusters {
+
+        /**
+         * Number of clusters in a row of clusters.
+         */
+        private int across;
+
+        /**
+         * Column of the tile of each entrance. Entrances are sorted by
+         * cluster.
+         */
+        private int[] columns;
+
+        /**
+         * Row of the tile of each entrance.
+         */
+        private int[] rows;
+
+        /**
+         * Cluster of each entrance.
+         */
+        private int[] clusters;
+
+        /**
+         * Entrance across the border from each entrance.
+         */
+        private int[] partners;
+
+        /**
+         * First entrance of each cluster. The entrances of cluster c are
+         * firstNode[c] to firstNode[c + 1] - 1.
+         */
+        private int[] firstNode;
+
+        /**
+         * Costs between the entrances of each cluster inside the cluster,
+         * as count * count arrays by from * count + to, or null until
+         * they are needed.
+         */
+        private AtomicReferenceArray<int[]> costs;
+
+        /**
+         * Finds the entrances of a grid.
+         */
+        private Clusters(Grid g) {
+            across = (g.width + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+            int down = (g.height + CLUSTER_SIZE - 1) / CLUSTER_SIZE;
+
+            // Entrances in pairs, so partners are 2k and 2k + 1.
+            Steps found = new Steps();
+            for (int cy = 0 ; cy < down ; cy++) {
+                for (int cx = 0 ; cx < across - 1 ; cx++) {
+                    int x = (cx + 1) * CLUSTER_SIZE - 1;
+                    int end = Math.min(g.height, (cy + 1) * CLUSTER_SIZE);
+                    int runStart = -1;
+                    for (int y = cy * CLUSTER_SIZE ; y <= end ; y++) {
+                        boolean open = y < end && g.isOpen(x, y) && g.isOpen(x + 1, y);
+                        if (open && runStart < 0) {
+                            runStart = y;
+                        } else if (!open && runStart >= 0) {
+                            int middle = (runStart + y - 1) / 2;
+                            found.add(x, middle);
+                            found.add(x + 1, middle);
+                            runStart = -1;
+                        }
+                    }
+                }
+            }
+            for (int cy = 0 ; cy < down - 1 ; cy++) {
+                for (int cx = 0 ; cx < across ; cx++) {
+                    int y = (cy + 1) * CLUSTER_SIZE - 1;
+                    int end = Math.min(g.width, (cx + 1) * CLUSTER_SIZE);
+                    int runStart = -1;
+                    for (int x = cx * CLUSTER_SIZE ; x <= end ; x++) {
+                        boolean open = x < end && g.isOpen(x, y) && g.isOpen(x, y + 1);
+                        if (open && runStart < 0) {
+                            runStart = x;
+                        } else if (!open && runStart >= 0) {
+                            int middle = (runStart + x - 1) / 2;
+                            found.add(middle, y);
+                            found.add(middle, y + 1);
+                            runStart = -1;
+                        }
+                    }
+                }
+            }
+
+            // Sort the entrances by cluster.
+            int count = found.length;
+            firstNode = new int[across * down + 1];
+            for (int i = 0 ; i < count ; i++) {
+                firstNode[clusterOf(found.columns[i], found.rows[i]) + 1]++;
+            }
+            for (int c = 0 ; c < across * down ; c++) {
+                firstNode[c + 1] += firstNode[c];
+            }
+            int[] next = Arrays.copyOf(firstNode, across * down);
+            int[] index = new int[count];
+            for (int i = 0 ; i < count ; i++) {
+                index[i] = next[clusterOf(found.columns[i], found.rows[i])]++;
+            }
+            columns = new int[count];
+            rows = new int[count];
+            clusters = new int[count];
+            partners = new int[count];
+            for (int i = 0 ; i < count ; i++) {
+                int j = index[i];
+                columns[j] = found.columns[i];
+                rows[j] = found.rows[i];
+                clusters[j] = clusterOf(columns[j], rows[j]);
+                partners[j] = index[i ^ 1];
+            }
+            costs = new AtomicReferenceArray<>(across * down);
+        }
+
+        /**
+         * @return Index of the cluster that holds the tile.
+         */
+        private int clusterOf(int column, int row) {
+            return (row / CLUSTER_SIZE) * across + column / CLUSTER_SIZE;
+        }
+
+        /**
+         * Finds the cost from a tile to every entrance of its cluster
+         * inside the cluster. Leaves the search holding the costs of
+         * every tile of the cluster.
+         *
+         * @return Cost of each entrance of the cluster, or UNREACHABLE.
+         */
+        private int[] floodCosts(PathFinder finder, Grid g, Search s, int cluster,
+                                 int column, int row) {
+            placeWindow(g, s, this, cluster);
+            finder.run(g, s, column, row, -1, -1);
+            int first = firstNode[cluster];
+            int[] result = new int[firstNode[cluster + 1] - first];
+            for (int i = 0 ; i < result.length ; i++) {
+                result[i] = costAt(s, columns[first + i], rows[first + i]);
+            }
+            return result;
+        }
+
+        /**
+         * @return Costs between the entrances of a cluster, found on
+         *         first use.
+         */
+        private int[] getCosts(PathFinder finder, Grid g, Search s, int cluster) {
+            int[] result = costs.get(cluster);
+            if (result == null) {
+                int first = firstNode[cluster];
+                int count = firstNode[cluster + 1] - first;
+                result = new int[count * count];
+                for (int i = 0 ; i < count ; i++) {
+                    int[] from = floodCosts(finder, g, s, cluster, columns[first + i], rows[first + i]);
+                    System.arraycopy(from, 0, result, i * count, count);
+                }
+                costs.set(cluster, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Tiles of a path being built, in order.
+     */
+    private static class Steps {
+
+        /**
+         * Columns of the tiles. Only the first length slots are in use.
+         */
+        private int[] columns = new int[16];
+
+        /**
+         * Rows of the tiles.
+         */
+        private int[] rows = new int[16];
+
+        /**
+         * Number of tiles.
+         */
+        private int length = 0;
+
+        /**
+         * Makes room for more tiles.
+         */
+        private void reserve(int more) {
+            if (length + more > columns.length) {
+                int size = Math.max(columns.length * 2, length + more);
+                columns = Arrays.copyOf(columns, size);
+                rows = Arrays.copyOf(rows, size);
+            }
+        }
+
+        /**
+         * Adds a tile to the end.
+         */
+        private void add(int column, int row) {
+            reserve(1);
+            columns[length] = column;
+            rows[length] = row;
+            length++;
+        }
+    }
+
+    /**
+     * Map whose tiles are searched.
+     */
+    private TileMap map;
+
+    /**
+     * Grid built from the current version of the map.
+     */
+    private volatile Grid grid;
+
+    /**
+     * Search state of each thread.
+     */
+    private ThreadLocal<Search> searches = new ThreadLocal<>();
+
+    /**
+     * Found paths by start and goal tile ids, least recently used first.
+     */
+    private Map<Long, TilePath> cache;
+
+    /**
+     * Workers that run the searches of request().
+     */
+    private ExecutorService workers;
+
+    /**
+     * Whether paths can move diagonally.
+     */
+    private boolean diagonal = true;
+
+    /**
+     * Width and height of the search window in tiles.
+     */
+    private int window = DEFAULT_WINDOW;
+
+    /**
+     * Constructs a path finder with one worker per available processor
+     * beyond the first.
+     *
+     * @param map Map whose tiles are searched.
+     */
+    public PathFinder(TileMap map) {
+        this(map, Math.max(1, Runtime.getRuntime().availableProcessors() - 1), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructs a path finder.
+     *
+     * @param map Map whose tiles are searched.
+     * @param threads Number of background workers.
+     * @param cacheSize Number of paths kept in the cache.
+     */
+    public PathFinder(TileMap map, int threads, int cacheSize) {
+        this.map = map;
+        cache = new LinkedHashMap<Long, TilePath>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Long, TilePath> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread t = new Thread(runnable, "path-finder");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Finds a path on the calling thread.
+     *
+     * @param startColumn Column of the start tile.
+     * @param startRow Row of the start tile.
+     * @param goalColumn Column of the goal tile.
+     * @param goalRow Row of the goal tile.
+     * @return The path, or null if the goal can't be reached or
+     *         either tile is outside the map.
+     */
+    public TilePath find(int startColumn, int startRow, int goalColumn, int goalRow) {
+        Grid current = refresh();
+        if (!current.contains(startColumn, startRow) || !current.contains(goalColumn, goalRow)) {
+            return null;
+        }
+        long key = key(current, startColumn, startRow, goalColumn, goalRow);
+        TilePath path = getCached(key);
+        if (path == null) {
+            path = search(current, startColumn, startRow, goalColumn, goalRow);
+            putCached(current, key, path);
+        }
+        return path == NO_PATH ? null : path;
+    }
+
+    /**
+     * Finds a path on a background worker. Cached paths are returned
+     * immediately.
+     *
+     * @param startColumn Column of the start tile.
+     * @param startRow Row of the start tile.
+     * @param goalColumn Column of the goal tile.
+     * @param goalRow Row of the goal tile.
+     * @return Future that completes with the path, or with null
+     *         if the goal can't be reached or either tile is outside the
+     *         map.
+     */
+    public CompletableFuture<TilePath> request(int startColumn, int startRow,
+                                               int goalColumn, int goalRow) {
+        Grid current = refresh();
+        if (!current.contains(startColumn, startRow) || !current.contains(goalColumn, goalRow)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long key = key(current, startColumn, startRow, goalColumn, goalRow);
+        TilePath cached = getCached(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached == NO_PATH ? null : cached);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            TilePath path = search(current, startColumn, startRow, goalColumn, goalRow);
+            putCached(current, key, path);
+            return path == NO_PATH ? null : path;
+        }, workers);
+    }
+
+    /**
+     * Rebuilds the grid and clears the cache if the map has changed.
+     *
+     * @return Grid of the current version of the map.
+     */
+    private Grid refresh() {
+        int version = map.getVersion();
+        Grid current = grid;
+        if (current != null && current.version == version
+                && current.width == map.getMapWidth() && current.height == map.getMapHeight()) {
+            return current;
+        }
+
+        current = new Grid();
+        current.width = map.getMapWidth();
+        current.height = map.getMapHeight();
+        current.version = version;
+        current.blocked = map.getBlockedTiles();
+
+        synchronized (cache) {
+            cache.clear();
+            grid = current;
+        }
+        return current;
+    }
+
+    /**
+     * Finds a path from the start tile to the goal tile. The search first
+     * runs A* in a window around the two tiles, and if the goal isn't
+     * found there on a map larger than the window, searches the clusters.
+     *
+     * @return The found path, or NO_PATH if there is none.
+     */
+    private TilePath search(Grid g, int startColumn, int startRow, int goalColumn, int goalRow) {
+        if (!g.isOpen(startColumn, startRow) || !g.isOpen(goalColumn, goalRow)) {
+            return NO_PATH;
+        }
+
+        int windowWidth = Math.min(window, g.width);
+        int windowHeight = Math.min(window, g.height);
+        Search s = getSearch(g, windowWidth * windowHeight);
+        if (placeWindow(g, s, windowWidth, windowHeight,
+                        startColumn, startRow, goalColumn, goalRow)) {
+            if (run(g, s, startColumn, startRow, goalColumn, goalRow)) {
+                Steps steps = new Steps();
+                collect(s, goalColumn, goalRow, steps, false);
+                return toPath(steps);
+            }
+            if (windowWidth == g.width && windowHeight == g.height) {
+                return NO_PATH;
+            }
+        }
+        return searchClusters(g, s, startColumn, startRow, goalColumn, goalRow);
+    }
+
+    /**
+     * @param tiles Number of tiles in the window of the search.
+     * @return Search state of the calling thread, large enough for the
+     *         window and for a cluster.
+     */
+    private Search getSearch(Grid g, int tiles) {
+        int needed = Math.max(tiles, Math.min(CLUSTER_SIZE, g.width) * Math.min(CLUSTER_SIZE, g.height));
+        Search s = searches.get();
+        if (s == null || s.cost.length < needed) {
+            s = new Search(needed);
+            searches.set(s);
+        }
+        return s;
+    }
+
+    /**
+     * Places the window of a search so that it holds the start and the
+     * goal with as much room around them as it can, inside the map.
+     *
+     * @return Whether the start and the goal fit in the window.
+     */
+    private boolean placeWindow(Grid g, Search s, int windowWidth, int windowHeight,
+                                int startColumn, int startRow, int goalColumn, int goalRow) {
+        int spanWidth = Math.abs(goalColumn - startColumn) + 1;
+        int spanHeight = Math.abs(goalRow - startRow) + 1;
+        if (spanWidth > windowWidth || spanHeight > windowHeight) {
+            return false;
+        }
+        int left = Math.min(startColumn, goalColumn) - (windowWidth - spanWidth) / 2;
+        int top = Math.min(startRow, goalRow) - (windowHeight - spanHeight) / 2;
+        s.left = Math.max(0, Math.min(left, g.width - windowWidth));
+        s.top = Math.max(0, Math.min(top, g.height - windowHeight));
+        s.width = windowWidth;
+        s.height = windowHeight;
+        return true;
+    }
+
+    /**
+     * Places the window of a search on a cluster.
+     *
+     * @param cluster Index of the cluster.
+     */
+    private static void placeWindow(Grid g, Search s, Clusters c, int cluster) {
+        s.left = (cluster % c.across) * CLUSTER_SIZE;
+        s.top = (cluster / c.across) * CLUSTER_SIZE;
+        s.width = Math.min(CLUSTER_SIZE, g.width - s.left);
+        s.height = Math.min(CLUSTER_SIZE, g.height - s.top);
+    }
+
+    /**
+     * Runs A* inside the window of the search. With a goal column of -1
+     * there is no goal, and the search finds the cost of every tile in
+     * the window it can reach.
+     *
+     * @return Whether the goal was reached.
+     */
+    private boolean run(Grid g, Search s, int startColumn, int startRow, int goalColumn, int goalRow) {
+        s.generation++;
+        s.open.clear();
+
+        int start = (startRow - s.top) * s.width + startColumn - s.left;
+        int goal = goalColumn < 0 ? -1 : (goalRow - s.top) * s.width + goalColumn - s.left;
+        s.cost[start] = 0;
+        s.parent[start] = -1;
+        s.stamp[start] = s.generation;
+        s.open.push(start, goal < 0 ? 0 : heuristic(startColumn, startRow, goalColumn, goalRow));
+
+        while (!s.open.isEmpty()) {
+            int node = s.open.pop();
+            if (node == goal) {
+                return true;
+            }
+            int column = s.left + node % s.width;
+            int row = s.top + node / s.width;
+
+            for (int dy = -1 ; dy <= 1 ; dy++) {
+                for (int dx = -1 ; dx <= 1 ; dx++) {
+                    if ((dx == 0 && dy == 0) || (!diagonal && dx != 0 && dy != 0)) {
+                        continue;
+                    }
+                    int nextColumn = column + dx;
+                    int nextRow = row + dy;
+                    if (!s.isOpen(g, nextColumn, nextRow)) {
+                        continue;
+                    }
+                    // Don't cut corners of blocked tiles.
+                    if (dx != 0 && dy != 0
+                            && (!s.isOpen(g, column + dx, row) || !s.isOpen(g, column, row + dy))) {
+                        continue;
+                    }
+
+                    int next = node + dy * s.width + dx;
+                    int cost = s.cost[node] + (dx != 0 && dy != 0 ? DIAGONAL_COST : STRAIGHT_COST);
+                    if (s.stamp[next] != s.generation || cost < s.cost[next]) {
+                        s.stamp[next] = s.generation;
+                        s.cost[next] = cost;
+                        s.parent[next] = node;
+                        int estimate = goal < 0 ? 0 : heuristic(nextColumn, nextRow, goalColumn, goalRow);
+                        s.open.push(next, cost + estimate);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Cost of the tile found by the last run, or UNREACHABLE if
+     *         the run didn't reach it.
+     */
+    private static int costAt(Search s, int column, int row) {
+        if (column < s.left || row < s.top || column >= s.left + s.width || row >= s.top + s.height) {
+            return UNREACHABLE;
+        }
+        int node = (row - s.top) * s.width + column - s.left;
+        return s.stamp[node] == s.generation ? s.cost[node] : UNREACHABLE;
+    }
+
+    /**
+     * Follows the parents of the last run from a tile back to the start
+     * and adds the tiles to the steps in order from the start.
+     *
+     * @param skipStart Whether the start tile is left out, because the
+     *                  steps already end with it.
+     */
+    private static void collect(Search s, int column, int row, Steps steps, boolean skipStart) {
+        int end = (row - s.top) * s.width + column - s.left;
+        int length = 0;
+        for (int node = end ; node != -1 ; node = s.parent[node]) {
+            length++;
+        }
+        if (skipStart) {
+            length--;
+        }
+        int first = steps.length;
+        steps.reserve(length);
+        int i = first + length - 1;
+        for (int node = end ; i >= first ; node = s.parent[node]) {
+            steps.columns[i] = s.left + node % s.width;
+            steps.rows[i] = s.top + node / s.width;
+            i--;
+        }
+        steps.length += length;
+    }
+
+    /**
+     * Finds a path over the clusters of the grid: A* over the entrances,
+     * moving between entrances of the same cluster at the cost of the
+     * path inside the cluster, after which the path is filled in tile by
+     * tile one cluster at a time. The arrays this needs are per entrance
+     * and per cluster instead of per tile, so maps of any size can be
+     * searched. The path can be slightly longer than the shortest one,
+     * because it crosses between clusters only at the middle of each
+     * entrance.
+     *
+     * @return The found path, or NO_PATH if there is none.
+     */
+    private TilePath searchClusters(Grid g, Search s, int startColumn, int startRow,
+                                    int goalColumn, int goalRow) {
+        Clusters c = getClusters(g);
+        int nodes = c.columns.length;
+        int startNode = nodes;
+        int goalNode = nodes + 1;
+        int startCluster = c.clusterOf(startColumn, startRow);
+        int goalCluster = c.clusterOf(goalColumn, goalRow);
+
+        // Costs from the start to the entrances of its cluster, and from
+        // the entrances of the cluster of the goal to the goal.
+        int[] fromStart = c.floodCosts(this, g, s, startCluster, startColumn, startRow);
+        int direct = startCluster == goalCluster ? costAt(s, goalColumn, goalRow) : UNREACHABLE;
+        int[] toGoal = c.floodCosts(this, g, s, goalCluster, goalColumn, goalRow);
+
+        if (s.nodeCost == null || s.nodeCost.length < nodes + 2) {
+            s.nodeOpen = new IndexedHeap(nodes + 2);
+            s.nodeCost = new int[nodes + 2];
+            s.nodeParent = new int[nodes + 2];
+            s.nodeStamp = new int[nodes + 2];
+        }
+        s.nodeGeneration++;
+        s.nodeOpen.clear();
+        s.nodeCost[startNode] = 0;
+        s.nodeParent[startNode] = -1;
+        s.nodeStamp[startNode] = s.nodeGeneration;
+        s.nodeOpen.push(startNode, heuristic(startColumn, startRow, goalColumn, goalRow));
+
+        boolean found = false;
+        while (!s.nodeOpen.isEmpty()) {
+            int node = s.nodeOpen.pop();
+            if (node == goalNode) {
+                found = true;
+                break;
+            }
+            if (node == startNode) {
+                int first = c.firstNode[startCluster];
+                for (int i = 0 ; i < fromStart.length ; i++) {
+                    relax(c, s, node, first + i, fromStart[i], goalColumn, goalRow);
+                }
+                relax(c, s, node, goalNode, direct, goalColumn, goalRow);
+                continue;
+            }
+
+            relax(c, s, node, c.partners[node], STRAIGHT_COST, goalColumn, goalRow);
+            int cluster = c.clusters[node];
+            int first = c.firstNode[cluster];
+            int count = c.firstNode[cluster + 1] - first;
+            int[] costs = c.getCosts(this, g, s, cluster);
+            int from = node - first;
+            for (int i = 0 ; i < count ; i++) {
+                relax(c, s, node, first + i, costs[from * count + i], goalColumn, goalRow);
+            }
+            if (cluster == goalCluster) {
+                relax(c, s, node, goalNode, toGoal[from], goalColumn, goalRow);
+            }
+        }
+        if (!found) {
+            return NO_PATH;
+        }
+
+        // Entrances from the goal back to the start.
+        int length = 0;
+        for (int node = goalNode ; node != -1 ; node = s.nodeParent[node]) {
+            length++;
+        }
+        int[] route = new int[length];
+        for (int node = goalNode, i = length - 1 ; node != -1 ; node = s.nodeParent[node], i--) {
+            route[i] = node;
+        }
+
+        // Fill in the tiles between each entrance and the next. Entrances
+        // in different clusters are neighbours across the border.
+        Steps steps = new Steps();
+        steps.add(startColumn, startRow);
+        for (int i = 1 ; i < length ; i++) {
+            int fromColumn = steps.columns[steps.length - 1];
+            int fromRow = steps.rows[steps.length - 1];
+            int toColumn = route[i] == goalNode ? goalColumn : c.columns[route[i]];
+            int toRow = route[i] == goalNode ? goalRow : c.rows[route[i]];
+            int cluster = c.clusterOf(fromColumn, fromRow);
+            if (cluster != c.clusterOf(toColumn, toRow)) {
+                steps.add(toColumn, toRow);
+                continue;
+            }
+            placeWindow(g, s, c, cluster);
+            run(g, s, fromColumn, fromRow, toColumn, toRow);
+            collect(s, toColumn, toRow, steps, true);
+        }
+        return toPath(steps);
+    }
+
+    /**
+     * Lowers the cost of an entrance if the path through the given one is
+     * cheaper.
+     *
+     * @param edge Cost from node to next, or UNREACHABLE.
+     */
+    private void relax(Clusters c, Search s, int node, int next, int edge,
+                       int goalColumn, int goalRow) {
+        if (edge == UNREACHABLE || next < 0) {
+            return;
+        }
+        int cost = s.nodeCost[node] + edge;
+        if (s.nodeStamp[next] != s.nodeGeneration || cost < s.nodeCost[next]) {
+            s.nodeStamp[next] = s.nodeGeneration;
+            s.nodeCost[next] = cost;
+            s.nodeParent[next] = node;
+            int estimate = next >= c.columns.length ? 0
+                : heuristic(c.columns[next], c.rows[next], goalColumn, goalRow);
+            s.nodeOpen.push(next, cost + estimate);
+        }
+    }
+
+    /**
+     * @return Clusters of the grid, built on first use.
+     */
+    private static Clusters getClusters(Grid g) {
+        Clusters c = g.clusters;
+        if (c == null) {
+            synchronized (g) {
+                c = g.clusters;
+                if (c == null) {
+                    c = new Clusters(g);
+                    g.clusters = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @return Estimated cost from a tile to the goal, never more than
+     *         the real cost.
+     */
+    private int heuristic(int column, int row, int goalColumn, int goalRow) {
+        int dx = Math.abs(goalColumn - column);
+        int dy = Math.abs(goalRow - row);
+        if (!diagonal) {
+            return STRAIGHT_COST * (dx + dy);
+        }
+        return STRAIGHT_COST * Math.max(dx, dy)
+            + (DIAGONAL_COST - STRAIGHT_COST) * Math.min(dx, dy);
+    }
+
+    /**
+     * @return Path through the tiles of the steps.
+     */
+    private TilePath toPath(Steps steps) {
+        return new TilePath(Arrays.copyOf(steps.columns, steps.length),
+                            Arrays.copyOf(steps.rows, steps.length),
+                            map.getTileWidth(), map.getTileHeight());
+    }
+
+    /**
+     * @return Cache key of a path between two tiles.
+     */
+    private static long key(Grid g, int startColumn, int startRow, int goalColumn, int goalRow) {
+        long start = (long) startRow * g.width + startColumn;
+        long goal = (long) goalRow * g.width + goalColumn;
+        return (start << 32) | (goal & 0xffffffffL);
+    }
+
+    /**
+     * @return Cached path, NO_PATH, or null if the path isn't cached.
+     */
+    private TilePath getCached(long key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    /**
+     * Caches a path unless the map has changed since the search started.
+     */
+    private void putCached(Grid searched, long key, TilePath path) {
+        synchronized (cache) {
+            if (grid == searched) {
+                cache.put(key, path);
+            }
+        }
+    }
+
+    /**
+     * Removes every cached path.
+     */
+    public void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return Number of paths in the cache.
+     */
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return Whether paths can move diagonally.
+     */
+    public boolean getDiagonal() { return diagonal; }
+
+    /**
+     * Should be set before paths are requested, as it clears the cache.
+     * 
+     * @param diagonal Whether paths can move diagonally.
+     */
+    public void setDiagonal(boolean diagonal) {
+        this.diagonal = diagonal;
+        // The costs inside the clusters depend on it too.
+        synchronized (cache) {
+            cache.clear();
+            grid = null;
+        }
+    }
+
+    /**
+     * @return Width and height of the search window in tiles.
+     */
+    public int getWindow() { return window; }
+
+    /**
+     * Should be set before paths are requested, as it clears the cache.
+     * Every thread that searches keeps about 24 bytes per tile of the
+     * window.
+     *
+     * @param window Width and height of the search window in tiles.
+     */
+    public void setWindow(int window) {
+        this.window = window;
+        clearCache();
+    }
+
+    /**
+     * Stops the background workers.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+/**
+ * Predicts a locally controlled object whose true state is decided by a
+ * server. Every move is applied to the object at once, so the controls
+ * respond without waiting for the network, and is remembered until the
+ * server confirms it. When the server reports where the object was after
+ * a move, the object is put there and the moves the server hasn't seen
+ * yet are simulated again on top of that state, with the same collision
+ * checks and gravity as the server uses.
+ *
+ * When the predictor is given a Gravity, it applies the gravity to the
+ * object itself after every move and turns gravityOn off on the object,
+ * so that Gravity.pull() doesn't pull it a second time.
+ *
+ * The moves are kept in a ring of fixed capacity, so predicting and
+ * correcting allocate nothing. How the moves reach the server and how the
+ * server reports the confirmed state depend on the game.
+ */
+public class Predictor {
+
+    /**
+     * The predicted object.
+     */
+    private GameObject object;
+
+    /**
+     * Gravity applied after every move, or null.
+     */
+    private Gravity gravity;
+
+    /**
+     * Whether the gravity applies to the object, taken from the object
+     * when the predictor was constructed.
+     */
+    private boolean pulled;
+
+    /**
+     * Horizontal movement of the remembered moves.
+     */
+    private double[] dxs;
+
+    /**
+     * Vertical movement of the remembered moves.
+     */
+    private double[] dys;
+
+    /**
+     * Number of the next move.
+     */
+    private int nextMove = 1;
+
+    /**
+     * Number of the oldest move that hasn't been confirmed.
+     */
+    private int oldestMove = 1;
+
+    /**
+     * Constructs a predictor. If a gravity is given and gravityOn is set
+     * on the object, the predictor takes over pulling the object and
+     * turns gravityOn off on it.
+     *
+     * @param object The predicted object.
+     * @param gravity Gravity applied after every move, or null.
+     * @param capacity Largest number of unconfirmed moves remembered.
+     */
+    public Predictor(GameObject object, Gravity gravity, int capacity) {
+        this.object = object;
+        this.gravity = gravity;
+        if (gravity != null) {
+            pulled = object.getGravityOn();
+            object.setGravityOn(false);
+        }
+        dxs = new double[capacity];
+        dys = new double[capacity];
+    }
+
+    /**
+     * Moves the object and remembers the move. If too many moves are
+     * unconfirmed, the oldest one is forgotten.
+     *
+     * @param dx Horizontal movement.
+     * @param dy Vertical movement.
+     * @return Number of the move, which the server reports back when it
+     *         confirms the move.
+     */
+    public int move(double dx, double dy) {
+        if (nextMove - oldestMove == dxs.length) {
+            oldestMove++;
+        }
+        int i = nextMove % dxs.length;
+        dxs[i] = dx;
+        dys[i] = dy;
+        simulate(dx, dy);
+        return nextMove++;
+    }
+
+    /**
+     * Simulates one move the way the server does.
+     *
+     * @param dx Horizontal movement.
+     * @param dy Vertical movement.
+     */
+    private void simulate(double dx, double dy) {
+        if (dx != 0) {
+            object.moveXCheckCollision(dx);
+        }
+        if (dy != 0) {
+            object.moveYCheckCollision(dy);
+        }
+        if (pulled) {
+            double pull = gravity.getStrength() * object.getPersonalGravity();
+            if (gravity.getGravityType() == GravityType.VERTICAL) {
+                object.moveYCheckCollision(pull);
+            } else {
+                object.moveXCheckCollision(pull);
+            }
+        }
+    }
+
+    /**
+     * Corrects the object with the state confirmed by the server. The
+     * object is put where the server had it after the given move, and
+     * the later moves are simulated again.
+     *
+     * @param move Number of the last move the server had applied.
+     * @param x X-coordinate of the object on the server.
+     * @param y Y-coordinate of the object on the server.
+     */
+    public void confirm(int move, double x, double y) {
+        if (move < oldestMove - 1 || move >= nextMove) {
+            return;
+        }
+        oldestMove = move + 1;
+
+        object.setX(x);
+        object.setY(y);
+        for (int n = oldestMove ; n < nextMove ; n++) {
+            int i = n % dxs.length;
+            simulate(dxs[i], dys[i]);
+        }
+    }
+
+    /**
+     * @return Number of moves that haven't been confirmed.
+     */
+    public int getPending() { return nextMove - oldestMove; }
+
+    /**
+     * @return The predicted object.
+     */
+    public GameObject getObject() { return object; }
+}
\ No newline at end of file
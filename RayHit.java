@@ -0,0 +1,161 @@
+/**
+ * The result of a raycast: where the ray first hit something and what
+ * it hit, either a GameObject or a solid tile of a TileMap.
+ */
+public class RayHit {
+
+    /**
+     * GameObject that was hit, or null if a tile was hit.
+     */
+    private GameObject object;
+
+    /**
+     * Column of the tile that was hit, or -1 if an object was hit.
+     */
+    private int column = -1;
+
+    /**
+     * Row of the tile that was hit, or -1 if an object was hit.
+     */
+    private int row = -1;
+
+    /**
+     * Distance from the start of the ray to the hit point in pixels.
+     */
+    private double distance;
+
+    /**
+     * X-coordinate of the hit point.
+     */
+    private double x;
+
+    /**
+     * Y-coordinate of the hit point.
+     */
+    private double y;
+
+    /**
+     * Constructs a hit.
+     *
+     * @param object GameObject that was hit.
+     * @param distance Distance from the start of the ray in pixels.
+     * @param x X-coordinate of the hit point.
+     * @param y Y-coordinate of the hit point.
+     */
+    public RayHit(GameObject object, double distance, double x, double y) {
+        this.object = object;
+        this.distance = distance;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Constructs a hit on a tile.
+     *
+     * @param column Column of the tile that was hit.
+     * @param row Row of the tile that was hit.
+     * @param distance Distance from the start of the ray in pixels.
+     * @param x X-coordinate of the hit point.
+     * @param y Y-coordinate of the hit point.
+     */
+    public RayHit(int column, int row, double distance, double x, double y) {
+        this.column = column;
+        this.row = row;
+        this.distance = distance;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Finds where a ray enters a rectangle using the slab method.
+     *
+     * @param x X-coordinate of the start of the ray.
+     * @param y Y-coordinate of the start of the ray.
+     * @param dirX X-component of the unit direction of the ray.
+     * @param dirY Y-component of the unit direction of the ray.
+     * @param minX Left edge of the rectangle.
+     * @param minY Top edge of the rectangle.
+     * @param maxX Right edge of the rectangle.
+     * @param maxY Bottom edge of the rectangle.
+     * @return Distance along the ray to the rectangle, 0 if the ray starts
+     *         inside it, or positive infinity if the ray misses it.
+     */
+    static double enter(double x, double y, double dirX, double dirY,
+                        double minX, double minY, double maxX, double maxY) {
+        double tMin = 0;
+        double tMax = Double.POSITIVE_INFINITY;
+
+        if (dirX == 0) {
+            if (x < minX || x > maxX) {
+                return Double.POSITIVE_INFINITY;
+            }
+        } else {
+            double t1 = (minX - x) / dirX;
+            double t2 = (maxX - x) / dirX;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+
+        if (dirY == 0) {
+            if (y < minY || y > maxY) {
+                return Double.POSITIVE_INFINITY;
+            }
+        } else {
+            double t1 = (minY - y) / dirY;
+            double t2 = (maxY - y) / dirY;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+
+        return tMin <= tMax ? tMin : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param o GameObject.
+     * @param x X-coordinate of the start of the ray.
+     * @param y Y-coordinate of the start of the ray.
+     * @param dirX X-component of the unit direction of the ray.
+     * @param dirY Y-component of the unit direction of the ray.
+     * @return Distance along the ray to the GameObject, or positive
+     *         infinity if the ray misses it.
+     */
+    static double enter(GameObject o, double x, double y, double dirX, double dirY) {
+        return enter(x, y, dirX, dirY, o.getX(), o.getY(),
+                     o.getX() + o.getWidth(), o.getY() + o.getHeight());
+    }
+
+    /**
+     * @return GameObject that was hit, or null if a tile was hit.
+     */
+    public GameObject getObject() { return object; }
+
+    /**
+     * @return Whether a tile was hit instead of a GameObject.
+     */
+    public boolean isTile() { return object == null; }
+
+    /**
+     * @return Column of the tile that was hit, or -1 if an object was hit.
+     */
+    public int getColumn() { return column; }
+
+    /**
+     * @return Row of the tile that was hit, or -1 if an object was hit.
+     */
+    public int getRow() { return row; }
+
+    /**
+     * @return Distance from the start of the ray to the hit point in pixels.
+     */
+    public double getDistance() { return distance; }
+
+    /**
+     * @return X-coordinate of the hit point.
+     */
+    public double getX() { return x; }
+
+    /**
+     * @return Y-coordinate of the hit point.
+     */
+    public double getY() { return y; }
+}
\ No newline at end of file
@@ -0,0 +1,191 @@
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Answers "what does this ray hit?" against the solid tiles of a TileMap
+ * and the GameObjects of a GameCanvas. Tiles are walked cell by cell
+ * along the ray with a DDA, so a ray costs one step per tile it crosses,
+ * and objects are found with a raycast of the spatial index of the canvas
+ * instead of testing every object.
+ *
+ * Many rays, such as the vision cones of AI agents, can be cast at once
+ * with castAll(), which spreads large batches over all cores. Objects
+ * must not be added, removed or moved while a batch is being cast.
+ */
+public class Raycast {
+
+    /**
+     * Smallest batch that castAll() runs in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    /**
+     * Map whose solid tiles block rays, or null.
+     */
+    private TileMap map;
+
+    /**
+     * Canvas whose GameObjects block rays.
+     */
+    private GameCanvas canvas;
+
+    /**
+     * Constructs a raycaster for the map and canvas of a scene.
+     *
+     * @param scene Scene whose TileMap and GameCanvas block rays.
+     */
+    public Raycast(GameScene scene) {
+        this(scene.getTileMap(), scene.getCanvas());
+    }
+
+    /**
+     * Constructs a raycaster.
+     *
+     * @param map Map whose solid tiles block rays, or null.
+     * @param canvas Canvas whose GameObjects block rays.
+     */
+    public Raycast(TileMap map, GameCanvas canvas) {
+        this.map = map;
+        this.canvas = canvas;
+    }
+
+    /**
+     * Casts a ray against both tiles and objects.
+     *
+     * @param x X-coordinate of the start of the ray.
+     * @param y Y-coordinate of the start of the ray.
+     * @param dx X-component of the direction of the ray.
+     * @param dy Y-component of the direction of the ray.
+     * @param maxDistance Length of the ray in pixels.
+     * @param filter Test that an object has to pass to be hit, for
+     *               example to skip the object casting the ray, or null.
+     * @return The closest hit, or null if the ray hits nothing.
+     */
+    public RayHit cast(double x, double y, double dx, double dy,
+                       double maxDistance, Predicate<GameObject> filter) {
+        RayHit tileHit = castTiles(x, y, dx, dy, maxDistance);
+
+        // Objects behind the first solid tile can't be hit.
+        double reach = tileHit != null ? tileHit.getDistance() : maxDistance;
+        RayHit objectHit = canvas.getSpatialIndex().raycast(x, y, dx, dy, reach, filter);
+        return objectHit != null ? objectHit : tileHit;
+    }
+
+    /**
+     * Casts a ray against the solid tiles of the map only. Walks the
+     * tiles the ray crosses one by one with a DDA.
+     *
+     * @param x X-coordinate of the start of the ray.
+     * @param y Y-coordinate of the start of the ray.
+     * @param dx X-component of the direction of the ray.
+     * @param dy Y-component of the direction of the ray.
+     * @param maxDistance Length of the ray in pixels.
+     * @return The first solid tile hit, or null if the ray hits none.
+     */
+    public RayHit castTiles(double x, double y, double dx, double dy, double maxDistance) {
+        double length = Math.hypot(dx, dy);
+        if (map == null || length == 0 || !map.hasSolidTiles()) {
+            return null;
+        }
+        double dirX = dx / length;
+        double dirY = dy / length;
+        double tileWidth = map.getTileWidth();
+        double tileHeight = map.getTileHeight();
+        int width = map.getMapWidth();
+        int height = map.getMapHeight();
+
+        // Rays that start outside the map begin where they enter it.
+        double t = RayHit.enter(x, y, dirX, dirY, 0, 0,
+                                width * tileWidth, height * tileHeight);
+        if (t > maxDistance) {
+            return null;
+        }
+        int column = clamp((int) Math.floor((x + dirX * t) / tileWidth), width);
+        int row = clamp((int) Math.floor((y + dirY * t) / tileHeight), height);
+
+        int stepX = dirX > 0 ? 1 : -1;
+        int stepY = dirY > 0 ? 1 : -1;
+        double deltaX = dirX != 0 ? tileWidth / Math.abs(dirX) : Double.POSITIVE_INFINITY;
+        double deltaY = dirY != 0 ? tileHeight / Math.abs(dirY) : Double.POSITIVE_INFINITY;
+        double nextX = dirX > 0 ? ((column + 1) * tileWidth - x) / dirX
+                     : dirX < 0 ? (column * tileWidth - x) / dirX : Double.POSITIVE_INFINITY;
+        double nextY = dirY > 0 ? ((row + 1) * tileHeight - y) / dirY
+                     : dirY < 0 ? (row * tileHeight - y) / dirY : Double.POSITIVE_INFINITY;
+
+        while (true) {
+            if (map.isSolid(column, row)) {
+                return new RayHit(column, row, t, x + dirX * t, y + dirY * t);
+            }
+
+            if (nextX < nextY) {
+                column += stepX;
+                t = nextX;
+                nextX += deltaX;
+            } else {
+                row += stepY;
+                t = nextY;
+                nextY += deltaY;
+            }
+
+            if (t > maxDistance || column < 0 || row < 0 || column >= width || row >= height) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Checks whether nothing blocks the straight line between two points.
+     *
+     * @param x1 X-coordinate of the first point.
+     * @param y1 Y-coordinate of the first point.
+     * @param x2 X-coordinate of the second point.
+     * @param y2 Y-coordinate of the second point.
+     * @param filter Test that an object has to pass to block the line,
+     *               for example to skip the looker and the target, or null.
+     * @return Whether the second point can be seen from the first.
+     */
+    public boolean hasLineOfSight(double x1, double y1, double x2, double y2,
+                                  Predicate<GameObject> filter) {
+        double distance = Math.hypot(x2 - x1, y2 - y1);
+        return distance == 0 || cast(x1, y1, x2 - x1, y2 - y1, distance, filter) == null;
+    }
+
+    /**
+     * Casts many rays. Large batches are spread over all cores, so the
+     * filter must be safe to call from several threads.
+     *
+     * @param rays The rays as {x, y, dx, dy} for each ray, one after
+     *             another.
+     * @param maxDistance Length of every ray in pixels.
+     * @param filter Test that an object has to pass to be hit, or null.
+     * @return The closest hit of each ray, null for rays that hit nothing.
+     */
+    public RayHit[] castAll(double[] rays, double maxDistance, Predicate<GameObject> filter) {
+        RayHit[] hits = new RayHit[rays.length / 4];
+        IntStream indexes = IntStream.range(0, hits.length);
+        if (hits.length >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> hits[i] = cast(rays[i * 4], rays[i * 4 + 1],
+                                            rays[i * 4 + 2], rays[i * 4 + 3],
+                                            maxDistance, filter));
+        return hits;
+    }
+
+    /**
+     * @return The value limited to between 0 and size - 1.
+     */
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    /**
+     * @return Map whose solid tiles block rays, or null.
+     */
+    public TileMap getMap() { return map; }
+
+    /**
+     * @param map Map whose solid tiles block rays, or null.
+     */
+    public void setMap(TileMap map) { this.map = map; }
+}
\ No newline at end of file
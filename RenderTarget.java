@@ -0,0 +1,97 @@
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * Surface that GameCanvas draws on. FxRenderTarget draws on a JavaFX
+ * Canvas that is shown on the screen, and SoftwareRenderer draws into an
+ * array of pixels, which works without a screen.
+ *
+ * Drawing happens between begin() and end(). begin() clears a rectangle
+ * of the surface and limits drawing to it, and also sets the origin and
+ * scale that drawing coordinates are transformed with.
+ */
+public interface RenderTarget {
+
+    /**
+     * Starts drawing into a rectangle of the surface. The rectangle is
+     * cleared and nothing is drawn outside it until end(). Drawing
+     * coordinates are transformed to surface coordinates as
+     * originX + x * scale and originY + y * scale.
+     *
+     * @param left X-coordinate of the rectangle on the surface.
+     * @param top Y-coordinate of the rectangle on the surface.
+     * @param width Width of the rectangle.
+     * @param height Height of the rectangle.
+     * @param originX Surface x-coordinate of drawing coordinate 0.
+     * @param originY Surface y-coordinate of drawing coordinate 0.
+     * @param scale Surface pixels per drawing coordinate.
+     */
+    void begin(double left, double top, double width, double height,
+               double originX, double originY, double scale);
+
+    /**
+     * Ends drawing into the rectangle given to begin().
+     */
+    void end();
+
+    /**
+     * Draws an image in its natural size.
+     *
+     * @param image The image.
+     * @param x X-coordinate of the image.
+     * @param y Y-coordinate of the image.
+     */
+    default void drawImage(Image image, double x, double y) {
+        drawImage(image, x, y, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Draws an image stretched to the given size.
+     *
+     * @param image The image.
+     * @param x X-coordinate of the image.
+     * @param y Y-coordinate of the image.
+     * @param width Width the image is drawn in.
+     * @param height Height the image is drawn in.
+     */
+    default void drawImage(Image image, double x, double y, double width, double height) {
+        drawImage(image, 0, 0, image.getWidth(), image.getHeight(), x, y, width, height);
+    }
+
+    /**
+     * Draws a part of an image stretched to the given size.
+     *
+     * @param image The image.
+     * @param sx X-coordinate of the part on the image.
+     * @param sy Y-coordinate of the part on the image.
+     * @param sw Width of the part.
+     * @param sh Height of the part.
+     * @param dx X-coordinate the part is drawn in.
+     * @param dy Y-coordinate the part is drawn in.
+     * @param dw Width the part is drawn in.
+     * @param dh Height the part is drawn in.
+     */
+    void drawImage(Image image, double sx, double sy, double sw, double sh,
+                   double dx, double dy, double dw, double dh);
+
+    /**
+     * Fills a rectangle with a color.
+     *
+     * @param color The color.
+     * @param x X-coordinate of the rectangle.
+     * @param y Y-coordinate of the rectangle.
+     * @param width Width of the rectangle.
+     * @param height Height of the rectangle.
+     */
+    void fillRect(Color color, double x, double y, double width, double height);
+
+    /**
+     * @return Width of the surface in pixels.
+     */
+    double getWidth();
+
+    /**
+     * @return Height of the surface in pixels.
+     */
+    double getHeight();
+}
\ No newline at end of file
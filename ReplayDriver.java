@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Replays a recording made by InputRecorder through a GameScene without
+ * drawing anything, as fast as the scene can be updated. Used for
+ * benchmarking a recorded session and for checking that the scene ends
+ * up in the same state as it did when the session was recorded.
+ *
+ * The scene's key handler must be available through getKeyHandler().
+ * The random seed of the recording is applied before the first tick, so
+ * random numbers taken in the constructor of the scene are not covered.
+ */
+public class ReplayDriver {
+
+    /**
+     * Scene that the recording is replayed through.
+     */
+    private GameScene scene;
+
+    /**
+     * The recording.
+     */
+    private InputReplay replay;
+
+    /**
+     * Timings of the phases of every replayed tick.
+     */
+    private FrameStats stats = new FrameStats();
+
+    /**
+     * Number of replayed ticks.
+     */
+    private long ticks = 0;
+
+    /**
+     * Time taken by the whole replay in nanoseconds.
+     */
+    private long elapsedNanos = 0;
+
+    /**
+     * Constructs the driver and reads the recording.
+     *
+     * @param scene Scene that the recording is replayed through.
+     * @param recording File that contains the recording.
+     * @throws IOException If the recording can't be read.
+     */
+    public ReplayDriver(GameScene scene, Path recording) throws IOException {
+        if (scene.getKeyHandler() == null) {
+            throw new IllegalArgumentException("Scene has no key handler to replay input through");
+        }
+        this.scene = scene;
+        replay = new InputReplay(recording);
+    }
+
+    /**
+     * Replays every recorded tick through the scene.
+     *
+     * @return True if the recording ended with a state hash that matches
+     *         the state of the scene after the replay.
+     */
+    public boolean run() {
+        KeyHandler keyHandler = scene.getKeyHandler();
+        scene.setSeed(replay.getSeed());
+        keyHandler.reset();
+        keyHandler.setReplay(replay);
+
+        long start = System.nanoTime();
+        try {
+            while (replay.hasNext()) {
+                scene.step(stats);
+                ticks++;
+            }
+        } finally {
+            keyHandler.setReplay(null);
+        }
+        elapsedNanos = System.nanoTime() - start;
+
+        return matchesRecording();
+    }
+
+    /**
+     * @return True if the recording ended with a state hash that matches
+     *         the current state of the scene.
+     */
+    public boolean matchesRecording() {
+        return replay.hasStateHash() && replay.getStateHash() == scene.getStateHash();
+    }
+
+    /**
+     * @return Timings of the phases of every replayed tick.
+     */
+    public FrameStats getStats() { return stats; }
+
+    /**
+     * @return Number of replayed ticks.
+     */
+    public long getTicks() { return ticks; }
+
+    /**
+     * @return Time taken by the whole replay in nanoseconds.
+     */
+    public long getElapsedNanos() { return elapsedNanos; }
+}
\ No newline at end of file
@@ -0,0 +1,185 @@
+import java.util.Objects;
+
+/**
+ * The replicated state of one GameObject as it was sent to a client in
+ * one packet. Locations and sizes are quantized to an eighth of a pixel,
+ * which is finer than anything drawn but lets them be sent as small
+ * integer differences. Instances are never changed, so an unchanged
+ * object can share the same instance between the states of many packets.
+ */
+class ReplicatedObject {
+
+    /**
+     * Steps per pixel of quantized locations and sizes.
+     */
+    static final int STEPS_PER_PIXEL = 8;
+
+    /**
+     * Bit of the change mask for the x-coordinate.
+     */
+    private static final int CHANGED_X = 1;
+
+    /**
+     * Bit of the change mask for the y-coordinate.
+     */
+    private static final int CHANGED_Y = 2;
+
+    /**
+     * Bit of the change mask for the width.
+     */
+    private static final int CHANGED_WIDTH = 4;
+
+    /**
+     * Bit of the change mask for the height.
+     */
+    private static final int CHANGED_HEIGHT = 8;
+
+    /**
+     * Bit of the change mask for the image.
+     */
+    private static final int CHANGED_IMAGE = 16;
+
+    /**
+     * Network id of the object.
+     */
+    final int id;
+
+    /**
+     * Quantized x-coordinate.
+     */
+    final int x;
+
+    /**
+     * Quantized y-coordinate.
+     */
+    final int y;
+
+    /**
+     * Quantized width.
+     */
+    final int width;
+
+    /**
+     * Quantized height.
+     */
+    final int height;
+
+    /**
+     * AssetCache path of the image, or null.
+     */
+    final String image;
+
+    /**
+     * Constructs the state.
+     *
+     * @param id Network id of the object.
+     * @param x Quantized x-coordinate.
+     * @param y Quantized y-coordinate.
+     * @param width Quantized width.
+     * @param height Quantized height.
+     * @param image AssetCache path of the image, or null.
+     */
+    ReplicatedObject(int id, int x, int y, int width, int height, String image) {
+        this.id = id;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.image = image;
+    }
+
+    /**
+     * @param value Location or size in pixels.
+     * @return The value quantized.
+     */
+    static int quantize(double value) {
+        return (int) Math.round(value * STEPS_PER_PIXEL);
+    }
+
+    /**
+     * @param value Quantized location or size.
+     * @return The value in pixels.
+     */
+    static double dequantize(int value) {
+        return value / (double) STEPS_PER_PIXEL;
+    }
+
+    /**
+     * @param other Another state of the same object.
+     * @return Whether both states would look the same on a client.
+     */
+    boolean sameAs(ReplicatedObject other) {
+        return x == other.x && y == other.y && width == other.width
+            && height == other.height && Objects.equals(image, other.image);
+    }
+
+    /**
+     * Writes the fields that differ from a baseline. Objects without a
+     * baseline are written with every field.
+     *
+     * @param out Writer of the packet.
+     * @param baseline State the client already has, or null.
+     */
+    void write(BitWriter out, ReplicatedObject baseline) {
+        int mask = CHANGED_X | CHANGED_Y | CHANGED_WIDTH | CHANGED_HEIGHT | CHANGED_IMAGE;
+        if (baseline != null) {
+            mask = (x != baseline.x ? CHANGED_X : 0)
+                 | (y != baseline.y ? CHANGED_Y : 0)
+                 | (width != baseline.width ? CHANGED_WIDTH : 0)
+                 | (height != baseline.height ? CHANGED_HEIGHT : 0)
+                 | (!Objects.equals(image, baseline.image) ? CHANGED_IMAGE : 0);
+        }
+
+        out.writeBits(mask, 5);
+        if ((mask & CHANGED_X) != 0) {
+            out.writeSigned((long) x - (baseline == null ? 0 : baseline.x));
+        }
+        if ((mask & CHANGED_Y) != 0) {
+            out.writeSigned((long) y - (baseline == null ? 0 : baseline.y));
+        }
+        if ((mask & CHANGED_WIDTH) != 0) {
+            out.writeSigned((long) width - (baseline == null ? 0 : baseline.width));
+        }
+        if ((mask & CHANGED_HEIGHT) != 0) {
+            out.writeSigned((long) height - (baseline == null ? 0 : baseline.height));
+        }
+        if ((mask & CHANGED_IMAGE) != 0) {
+            out.writeString(image);
+        }
+    }
+
+    /**
+     * Reads the fields written by write().
+     *
+     * @param in Reader of the packet.
+     * @param id Network id of the object.
+     * @param baseline The same baseline the fields were written against,
+     *                 or null.
+     * @return The state of the object.
+     */
+    static ReplicatedObject read(BitReader in, int id, ReplicatedObject baseline) {
+        int mask = (int) in.readBits(5);
+        int x = baseline == null ? 0 : baseline.x;
+        int y = baseline == null ? 0 : baseline.y;
+        int width = baseline == null ? 0 : baseline.width;
+        int height = baseline == null ? 0 : baseline.height;
+        String image = baseline == null ? null : baseline.image;
+
+        if ((mask & CHANGED_X) != 0) {
+            x += (int) in.readSigned();
+        }
+        if ((mask & CHANGED_Y) != 0) {
+            y += (int) in.readSigned();
+        }
+        if ((mask & CHANGED_WIDTH) != 0) {
+            width += (int) in.readSigned();
+        }
+        if ((mask & CHANGED_HEIGHT) != 0) {
+            height += (int) in.readSigned();
+        }
+        if ((mask & CHANGED_IMAGE) != 0) {
+            image = in.readString();
+        }
+        return new ReplicatedObject(id, x, y, width, height, image);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,506 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.*;
+
+/**
+ * Receives the objects replicated by a ReplicationServer and mirrors
+ * them on the canvas of a local scene. The mirrored GameObjects only
+ * show where the objects of the server are; they are ethereal and take
+ * no part in the simulation of the local scene. Objects the local scene
+ * already shows, such as the one a Predictor moves, can be left out with
+ * ignore(); their received positions are still available.
+ *
+ * Until the server has answered, every update sends it a hello instead,
+ * and the token in the challenge the server answers with is sent in every
+ * acknowledgement after that. If no packet arrives for a while, the client
+ * connects again.
+ *
+ * Every update sends the server an acknowledgement of the newest packet
+ * applied so far, together with the area shown by the camera of the
+ * scene, and applies the newest packet that has arrived since. Packets
+ * that arrive late are skipped.
+ *
+ * Received positions are not shown at once. Each mirrored object keeps
+ * the positions it received in an InterpolationBuffer, stamped with the
+ * server time of their packet, and is drawn slightly in the past, between
+ * the two positions around that time, so that late and uneven packets
+ * still give smooth movement. The server time is estimated from the local
+ * time and a smoothed offset between the two clocks, which is updated
+ * from every packet.
+ */
+public class ReplicationClient implements Closeable {
+
+    /**
+     * Size of an acknowledgement in bytes: the token, the acknowledged
+     * sequence and the x, y, width and height of the view.
+     */
+    static final int ACK_BYTES = 8 + 4 + 4 * 4;
+
+    /**
+     * Number of updates without packets after which the client connects
+     * again.
+     */
+    private static final int RECONNECT_UPDATES = 300;
+
+    /**
+     * How much of the difference between a packet and the estimate the
+     * clock offset is moved by.
+     */
+    private static final double CLOCK_SMOOTHING = 0.05;
+
+    /**
+     * Difference between a packet and the estimate in milliseconds past
+     * which the clock offset jumps to the packet, for example after the
+     * server has restarted.
+     */
+    private static final double CLOCK_RESYNC = 1000;
+
+    /**
+     * Number of positions kept per mirrored object.
+     */
+    private static final int BUFFER_CAPACITY = 16;
+
+    /**
+     * The scene the objects are mirrored in.
+     */
+    private GameScene scene;
+
+    /**
+     * The socket, connected to the server.
+     */
+    private DatagramChannel channel;
+
+    /**
+     * Decoded states of the last packets, indexed by sequence % HISTORY,
+     * kept as baselines for the packets that follow.
+     */
+    private List<Map<Integer, ReplicatedObject>> states = new ArrayList<>(
+            Collections.nCopies(ReplicationServer.HISTORY, (Map<Integer, ReplicatedObject>) null));
+
+    /**
+     * Sequences of the states in states.
+     */
+    private int[] stateSequences = new int[ReplicationServer.HISTORY];
+
+    /**
+     * Sequence of the newest packet applied, or 0.
+     */
+    private int applied = 0;
+
+    /**
+     * Token given by the server, or 0 if the client isn't connected.
+     */
+    private long token = 0;
+
+    /**
+     * Number of updates since a packet last arrived.
+     */
+    private int silentUpdates = 0;
+
+    /**
+     * Server time of the last packet decoded, in milliseconds.
+     */
+    private long packetTime;
+
+    /**
+     * Estimated server time minus local time in milliseconds, or NaN
+     * before the first packet.
+     */
+    private double clockOffset = Double.NaN;
+
+    /**
+     * Mirrored objects by network id.
+     */
+    private Map<Integer, GameObject> objects = new HashMap<>();
+
+    /**
+     * States the mirrored objects were last updated from, by network id.
+     */
+    private Map<Integer, ReplicatedObject> shown = new HashMap<>();
+
+    /**
+     * Network ids of the objects that are not mirrored.
+     */
+    private Set<Integer> ignored = new HashSet<>();
+
+    /**
+     * Newest state applied, including the ignored objects.
+     */
+    private Map<Integer, ReplicatedObject> newestState = Collections.emptyMap();
+
+    /**
+     * Received positions of the mirrored objects, by network id.
+     */
+    private Map<Integer, InterpolationBuffer> buffers = new HashMap<>();
+
+    /**
+     * How far in the past the mirrored objects are drawn, in milliseconds.
+     */
+    private long delay = 100;
+
+    /**
+     * Position sampled from a buffer.
+     */
+    private double[] position = new double[2];
+
+    /**
+     * Buffer for received packets.
+     */
+    private ByteBuffer received = ByteBuffer.allocate(ReplicationServer.MAX_PACKET);
+
+    /**
+     * Buffer for acknowledgements.
+     */
+    private ByteBuffer ack = ByteBuffer.allocate(ACK_BYTES);
+
+    /**
+     * Buffer for hellos.
+     */
+    private ByteBuffer hello = ByteBuffer.allocate(ReplicationServer.HANDSHAKE_BYTES);
+
+    /**
+     * Number of bytes received.
+     */
+    private long bytesReceived = 0;
+
+    /**
+     * Opens a socket to a server.
+     *
+     * @param scene The scene the objects are mirrored in.
+     * @param server Address of the server.
+     * @throws IOException If the socket can't be opened.
+     */
+    public ReplicationClient(GameScene scene, SocketAddress server) throws IOException {
+        this.scene = scene;
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(server);
+    }
+
+    /**
+     * Sends an acknowledgement, applies the newest packet that has arrived
+     * and moves the mirrored objects. Call once per frame.
+     *
+     * @throws IOException If the socket fails.
+     */
+    public void update() throws IOException {
+        update(System.nanoTime() / 1000000);
+    }
+
+    /**
+     * Sends an acknowledgement, applies the newest packet that has arrived
+     * and moves the mirrored objects to where they were on the server at
+     * the server time estimated for the given time, minus the delay.
+     *
+     * @param millis Current local time in milliseconds.
+     * @throws IOException If the socket fails.
+     */
+    public void update(long millis) throws IOException {
+        if (token != 0 && ++silentUpdates > RECONNECT_UPDATES) {
+            // The server has dropped the client or gone away.
+            disconnect();
+        }
+
+        if (token == 0) {
+            hello.clear();
+            hello.putInt(ReplicationServer.HANDSHAKE_MAGIC);
+            hello.putLong(0);
+            hello.flip();
+            channel.write(hello);
+        } else {
+            GameCamera camera = scene.getGameCamera();
+            ack.clear();
+            ack.putLong(token);
+            ack.putInt(applied);
+            ack.putFloat((float) camera.getX());
+            ack.putFloat((float) camera.getY());
+            ack.putFloat((float) camera.getViewWidth());
+            ack.putFloat((float) camera.getViewHeight());
+            ack.flip();
+            channel.write(ack);
+        }
+
+        Map<Integer, ReplicatedObject> newest = null;
+        long newestTime = 0;
+        received.clear();
+        while (channel.receive(received) != null) {
+            received.flip();
+            bytesReceived += received.remaining();
+            if (received.remaining() == ReplicationServer.HANDSHAKE_BYTES
+                    && received.getInt(0) == ReplicationServer.HANDSHAKE_MAGIC) {
+                // Challenges that arrive after connecting are answers
+                // to older hellos.
+                if (token == 0) {
+                    token = received.getLong(4);
+                    silentUpdates = 0;
+                }
+            } else if (token != 0) {
+                silentUpdates = 0;
+                Map<Integer, ReplicatedObject> state = decode(received);
+                if (state != null) {
+                    newest = state;
+                    newestTime = packetTime;
+                    synchronize(packetTime, millis);
+                }
+            }
+            received.clear();
+        }
+
+        if (newest != null) {
+            apply(newest, newestTime);
+        }
+        if (!Double.isNaN(clockOffset)) {
+            interpolate(millis + Math.round(clockOffset) - delay);
+        }
+    }
+
+    /**
+     * Moves the estimated offset between the clocks towards the one
+     * measured from a packet. Packets that are delayed give a smaller
+     * offset, so the estimate averages the delays out instead of
+     * following each one.
+     *
+     * @param serverMillis Server time of the packet in milliseconds.
+     * @param millis Local time the packet was received in milliseconds.
+     */
+    private void synchronize(long serverMillis, long millis) {
+        double measured = serverMillis - millis;
+        if (Double.isNaN(clockOffset) || Math.abs(measured - clockOffset) > CLOCK_RESYNC) {
+            clockOffset = measured;
+        } else {
+            clockOffset += (measured - clockOffset) * CLOCK_SMOOTHING;
+        }
+    }
+
+    /**
+     * Forgets the token and the received states, so that the next update
+     * connects again. The server numbers the packets of the new
+     * connection from the start.
+     */
+    private void disconnect() {
+        token = 0;
+        applied = 0;
+        Arrays.fill(stateSequences, 0);
+    }
+
+    /**
+     * Decodes a packet against the baseline the server used for it.
+     *
+     * @param packet The packet.
+     * @return The state of the packet, or null if the packet is older
+     *         than the newest one applied, or its baseline is unknown.
+     */
+    private Map<Integer, ReplicatedObject> decode(ByteBuffer packet) {
+        try {
+            BitReader in = new BitReader(packet);
+            int sequence = (int) in.readBits(32);
+            int baselineSequence = (int) in.readBits(32);
+            long time = in.readUnsigned();
+            if (sequence - applied <= 0) {
+                return null;
+            }
+
+            Map<Integer, ReplicatedObject> baseline = Collections.emptyMap();
+            if (baselineSequence != 0) {
+                int slot = baselineSequence % ReplicationServer.HISTORY;
+                if (stateSequences[slot] != baselineSequence) {
+                    return null;
+                }
+                baseline = states.get(slot);
+            }
+
+            Map<Integer, ReplicatedObject> state = new HashMap<>(baseline);
+            while (in.readBoolean()) {
+                int id = (int) in.readUnsigned();
+                if (in.readBoolean()) {
+                    state.remove(id);
+                } else {
+                    state.put(id, ReplicatedObject.read(in, id, baseline.get(id)));
+                }
+            }
+
+            int slot = sequence % ReplicationServer.HISTORY;
+            states.set(slot, state);
+            stateSequences[slot] = sequence;
+            applied = sequence;
+            packetTime = time;
+            return state;
+        } catch (IllegalStateException e) {
+            // A packet that was cut short is skipped.
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Creates, resizes and removes the mirrored objects to match a state,
+     * and adds their new positions to their buffers.
+     *
+     * @param state The state.
+     * @param millis Server time of the state in milliseconds.
+     */
+    private void apply(Map<Integer, ReplicatedObject> state, long millis) {
+        GameCanvas canvas = scene.getCanvas();
+        newestState = state;
+
+        Iterator<Map.Entry<Integer, GameObject>> it = objects.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, GameObject> e = it.next();
+            if (!state.containsKey(e.getKey())) {
+                canvas.remove(e.getValue());
+                shown.remove(e.getKey());
+                buffers.remove(e.getKey());
+                it.remove();
+            }
+        }
+
+        for (ReplicatedObject now : state.values()) {
+            ReplicatedObject old = shown.get(now.id);
+            if (old == now || ignored.contains(now.id)) {
+                continue;
+            }
+            GameObject o = objects.get(now.id);
+            if (o == null) {
+                o = new GameObject(ReplicatedObject.dequantize(now.x),
+                                   ReplicatedObject.dequantize(now.y),
+                                   ReplicatedObject.dequantize(now.width),
+                                   ReplicatedObject.dequantize(now.height),
+                                   null, scene);
+                o.setPhysicsType(PhysicsType.ETHEREAL);
+                objects.put(now.id, o);
+                buffers.put(now.id, new InterpolationBuffer(BUFFER_CAPACITY));
+                canvas.add(o);
+            } else {
+                o.setWidth(ReplicatedObject.dequantize(now.width));
+                o.setHeight(ReplicatedObject.dequantize(now.height));
+            }
+            if (old == null || !Objects.equals(old.image, now.image)) {
+                o.setImage(now.image == null ? null : AssetCache.getDefault().getImage(now.image));
+            }
+            shown.put(now.id, now);
+        }
+
+        // Every object gets a position for every state, also when it
+        // didn't move, so that interpolation stops where it should.
+        for (ReplicatedObject now : state.values()) {
+            if (ignored.contains(now.id)) {
+                continue;
+            }
+            buffers.get(now.id).add(millis, ReplicatedObject.dequantize(now.x),
+                                    ReplicatedObject.dequantize(now.y));
+        }
+    }
+
+    /**
+     * Moves every mirrored object to its position at the given time.
+     *
+     * @param millis Time in milliseconds.
+     */
+    private void interpolate(long millis) {
+        for (Map.Entry<Integer, GameObject> e : objects.entrySet()) {
+            if (buffers.get(e.getKey()).sample(millis, position)) {
+                GameObject o = e.getValue();
+                if (o.getX() != position[0]) {
+                    o.setX(position[0]);
+                }
+                if (o.getY() != position[1]) {
+                    o.setY(position[1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return How far in the past the mirrored objects are drawn, in
+     *         milliseconds.
+     */
+    public long getDelay() { return delay; }
+
+    /**
+     * @param delay How far in the past the mirrored objects are drawn, in
+     *              milliseconds. About two packet intervals hides most
+     *              late packets.
+     */
+    public void setDelay(long delay) { this.delay = delay; }
+
+    /**
+     * @return Estimated server time minus local time in milliseconds, or
+     *         NaN before the first packet.
+     */
+    public double getClockOffset() { return clockOffset; }
+
+    /**
+     * Stops mirroring an object, for example the one the local player
+     * controls and a Predictor moves, so that it isn't drawn twice. If
+     * the object is already mirrored, it is removed from the canvas.
+     *
+     * @param id Network id of the object.
+     */
+    public void ignore(int id) {
+        ignored.add(id);
+        GameObject o = objects.remove(id);
+        if (o != null) {
+            scene.getCanvas().remove(o);
+        }
+        shown.remove(id);
+        buffers.remove(id);
+    }
+
+    /**
+     * Gets the position of an object in the newest packet applied, also
+     * for ignored objects, for example to confirm the moves of a
+     * Predictor.
+     *
+     * @param id Network id of the object.
+     * @param position Array the x- and y-coordinate are written to.
+     * @return Whether the newest packet contained the object.
+     */
+    public boolean getReceived(int id, double[] position) {
+        ReplicatedObject state = newestState.get(id);
+        if (state == null) {
+            return false;
+        }
+        position[0] = ReplicatedObject.dequantize(state.x);
+        position[1] = ReplicatedObject.dequantize(state.y);
+        return true;
+    }
+
+    /**
+     * @param id Network id of an object.
+     * @return The mirrored object, or null.
+     */
+    public GameObject getObject(int id) { return objects.get(id); }
+
+    /**
+     * @return Number of mirrored objects.
+     */
+    public int getObjectCount() { return objects.size(); }
+
+    /**
+     * @return Sequence of the newest packet applied, or 0.
+     */
+    public int getApplied() { return applied; }
+
+    /**
+     * @return Whether the server has answered the hello of the client.
+     */
+    public boolean isConnected() { return token != 0; }
+
+    /**
+     * @return Number of bytes received.
+     */
+    public long getBytesReceived() { return bytesReceived; }
+
+    /**
+     * Closes the socket.
+     *
+     * @throws IOException If the socket can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
\ No newline at end of file
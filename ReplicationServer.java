@@ -0,0 +1,575 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.security.SecureRandom;
+import java.util.*;
+import javafx.scene.image.Image;
+
+/**
+ * Mirrors the GameObjects of a scene that is run on a server to clients
+ * over UDP. The server sends every client one packet per update. A packet
+ * only contains the objects that differ from the last state the client
+ * has acknowledged, and only the fields of those objects that changed,
+ * as bit-packed differences of quantized values. Lost packets don't need
+ * to be resent, because the next packet is again based on what the client
+ * has acknowledged.
+ *
+ * Each client tells the server the area its camera shows. Only objects
+ * in or near that area are sent, nearest first, and objects that don't
+ * fit in the packet are sent on a later update. Objects that leave the
+ * area are removed from the client.
+ *
+ * Packet layout, in bits:
+ *
+ * header:  sequence (32), baseline sequence (32, 0 if none),
+ *          server time in milliseconds (unsigned)
+ * entries: more (1), id (unsigned), removed (1), fields if not removed
+ * end:     more (1) = 0
+ *
+ * A client connects with a handshake. It sends a hello, and the server
+ * answers with a challenge that holds a random token for the address of
+ * the client. The client becomes connected when an acknowledgement with
+ * that token arrives, and every later acknowledgement must carry it too.
+ * A challenge is no larger than a hello, so the server can't be used to
+ * send more data to a forged address than it was sent, and the server
+ * keeps only a bounded number of unanswered tokens and connected clients.
+ *
+ * The socket is non-blocking, so update() never waits for the network
+ * and can be called once per tick from the game loop or HeadlessRunner.
+ */
+public class ReplicationServer implements Closeable {
+
+    /**
+     * Largest packet sent, in bytes. Small enough not to be fragmented.
+     */
+    static final int MAX_PACKET = 1200;
+
+    /**
+     * Number of sent states remembered per client. A client that hasn't
+     * acknowledged any of them gets a full state.
+     */
+    static final int HISTORY = 64;
+
+    /**
+     * Number of updates after which a silent client is dropped.
+     */
+    private static final int TIMEOUT_UPDATES = 300;
+
+    /**
+     * Number of updates between removals of destroyed objects from the
+     * id table.
+     */
+    private static final int PRUNE_UPDATES = 300;
+
+    /**
+     * Size of a hello and of a challenge in bytes: HANDSHAKE_MAGIC and a
+     * token, which is 0 in a hello.
+     */
+    static final int HANDSHAKE_BYTES = 4 + 8;
+
+    /**
+     * First four bytes of a hello and of a challenge.
+     */
+    static final int HANDSHAKE_MAGIC = 0x424e4331;
+
+    /**
+     * Default largest number of connected clients.
+     */
+    public static final int DEFAULT_MAX_CLIENTS = 64;
+
+    /**
+     * Bits reserved for one object entry, not counting its image path.
+     */
+    private static final int ENTRY_BITS = 1 + 37 + 1 + 5 + 4 * 40 + 6;
+
+    /**
+     * A client the server sends packets to.
+     */
+    private static class Client {
+
+        /**
+         * Address of the client.
+         */
+        private SocketAddress address;
+
+        /**
+         * Token the client has to send in its acknowledgements.
+         */
+        private long token;
+
+        /**
+         * Sequence of the last packet sent to the client.
+         */
+        private int sequence = 0;
+
+        /**
+         * Sequence of the newest packet the client has acknowledged,
+         * or 0.
+         */
+        private int acked = 0;
+
+        /**
+         * Area shown by the camera of the client: x, y, width and height.
+         */
+        private double[] view = new double[4];
+
+        /**
+         * Update on which the client was last heard from.
+         */
+        private long lastHeard;
+
+        /**
+         * States sent in the last packets, indexed by sequence % HISTORY.
+         */
+        private List<Map<Integer, ReplicatedObject>> sent =
+                new ArrayList<>(Collections.nCopies(HISTORY, (Map<Integer, ReplicatedObject>) null));
+
+        /**
+         * Sequences of the states in sent.
+         */
+        private int[] sentSequences = new int[HISTORY];
+    }
+
+    /**
+     * The scene whose objects are replicated.
+     */
+    private GameScene scene;
+
+    /**
+     * The socket.
+     */
+    private DatagramChannel channel;
+
+    /**
+     * Clients by address.
+     */
+    private Map<SocketAddress, Client> clients = new HashMap<>();
+
+    /**
+     * Tokens sent in challenges that haven't been answered yet, by
+     * address, oldest first.
+     */
+    private Map<SocketAddress, Long> challenges;
+
+    /**
+     * Largest number of connected clients.
+     */
+    private int maxClients;
+
+    /**
+     * Source of the tokens.
+     */
+    private SecureRandom random = new SecureRandom();
+
+    /**
+     * Buffer for challenges.
+     */
+    private ByteBuffer challenge = ByteBuffer.allocate(HANDSHAKE_BYTES);
+
+    /**
+     * Network ids of the objects.
+     */
+    private Map<GameObject, Integer> ids = new IdentityHashMap<>();
+
+    /**
+     * Network id given to the next new object.
+     */
+    private int nextId = 1;
+
+    /**
+     * AssetCache paths of the images of the objects.
+     */
+    private Map<Image, String> imagePaths = new IdentityHashMap<>();
+
+    /**
+     * Number of updates.
+     */
+    private long updates = 0;
+
+    /**
+     * Time of the first update in milliseconds, or -1 before it. Packets
+     * carry the time since then.
+     */
+    private long startMillis = -1;
+
+    /**
+     * Time of the current update in milliseconds since the first one.
+     */
+    private long time = 0;
+
+    /**
+     * Pixels around the view of a client in which objects are sent too,
+     * so that objects entering the view are already there.
+     */
+    private double margin = 128;
+
+    /**
+     * Number of bytes sent.
+     */
+    private long bytesSent = 0;
+
+    /**
+     * Buffer for received packets.
+     */
+    private ByteBuffer received = ByteBuffer.allocate(64);
+
+    /**
+     * Writer of the packet being built.
+     */
+    private BitWriter writer = new BitWriter(MAX_PACKET);
+
+    /**
+     * Objects in the view of the client being sent to.
+     */
+    private List<GameObject> interest = new ArrayList<>();
+
+    /**
+     * Network ids of the objects in interest.
+     */
+    private Set<Integer> interestIds = new HashSet<>();
+
+    /**
+     * Opens the socket, accepting up to DEFAULT_MAX_CLIENTS clients.
+     *
+     * @param scene The scene whose objects are replicated.
+     * @param port Port to listen on, or 0 for any free port.
+     * @throws IOException If the socket can't be opened.
+     */
+    public ReplicationServer(GameScene scene, int port) throws IOException {
+        this(scene, port, DEFAULT_MAX_CLIENTS);
+    }
+
+    /**
+     * Opens the socket.
+     *
+     * @param scene The scene whose objects are replicated.
+     * @param port Port to listen on, or 0 for any free port.
+     * @param maxClients Largest number of connected clients.
+     * @throws IOException If the socket can't be opened.
+     */
+    public ReplicationServer(GameScene scene, int port, int maxClients) throws IOException {
+        this.scene = scene;
+        this.maxClients = maxClients;
+        int pending = maxClients * 4;
+        challenges = new LinkedHashMap<SocketAddress, Long>(16, 0.75f, false) {
+            @Override protected boolean removeEldestEntry(Map.Entry<SocketAddress, Long> eldest) {
+                return size() > pending;
+            }
+        };
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(new InetSocketAddress(port));
+    }
+
+    /**
+     * Reads the acknowledgements of the clients and sends every client
+     * the changes since the state it acknowledged. Call once per tick
+     * after stepping the scene.
+     *
+     * @throws IOException If the socket fails.
+     */
+    public void update() throws IOException {
+        update(System.nanoTime() / 1000000);
+    }
+
+    /**
+     * Reads the acknowledgements of the clients and sends every client
+     * the changes since the state it acknowledged, stamped with the given
+     * time. Call once per tick after stepping the scene.
+     *
+     * @param millis Current time in milliseconds.
+     * @throws IOException If the socket fails.
+     */
+    public void update(long millis) throws IOException {
+        if (startMillis < 0) {
+            startMillis = millis;
+        }
+        time = Math.max(0, millis - startMillis);
+        updates++;
+        receive();
+
+        Iterator<Client> it = clients.values().iterator();
+        while (it.hasNext()) {
+            Client client = it.next();
+            if (updates - client.lastHeard > TIMEOUT_UPDATES) {
+                it.remove();
+            } else {
+                send(client);
+            }
+        }
+
+        if (updates % PRUNE_UPDATES == 0) {
+            GameObjectList objects = scene.getCanvas().getObjectList();
+            ids.keySet().removeIf(o -> !objects.contains(o));
+        }
+    }
+
+    /**
+     * Reads every waiting hello and acknowledgement. An acknowledgement
+     * holds the token of the client, the sequence of the newest packet
+     * the client has applied and the area its camera shows.
+     *
+     * @throws IOException If the socket fails.
+     */
+    private void receive() throws IOException {
+        SocketAddress address;
+        received.clear();
+        while ((address = channel.receive(received)) != null) {
+            received.flip();
+            if (received.remaining() == HANDSHAKE_BYTES && received.getInt(0) == HANDSHAKE_MAGIC) {
+                hello(address);
+            } else if (received.remaining() == ReplicationClient.ACK_BYTES) {
+                acknowledge(address);
+            }
+            received.clear();
+        }
+    }
+
+    /**
+     * Answers a hello with a challenge. Hellos are ignored while the
+     * server is full, unless they come from a connected client that is
+     * connecting again.
+     *
+     * @param address Address the hello came from.
+     * @throws IOException If the socket fails.
+     */
+    private void hello(SocketAddress address) throws IOException {
+        if (clients.size() >= maxClients && !clients.containsKey(address)) {
+            return;
+        }
+        Long token = challenges.get(address);
+        if (token == null) {
+            long t;
+            do {
+                t = random.nextLong();
+            } while (t == 0);
+            token = t;
+            challenges.put(address, token);
+        }
+
+        challenge.clear();
+        challenge.putInt(HANDSHAKE_MAGIC);
+        challenge.putLong(token);
+        challenge.flip();
+        channel.send(challenge, address);
+    }
+
+    /**
+     * Reads an acknowledgement. An acknowledgement with the token of an
+     * unanswered challenge connects the client; any other with a token
+     * that doesn't match is ignored.
+     *
+     * @param address Address the acknowledgement came from.
+     */
+    private void acknowledge(SocketAddress address) {
+        long token = received.getLong();
+        Client client = clients.get(address);
+        if (client == null || client.token != token) {
+            Long expected = challenges.get(address);
+            if (expected == null || expected != token
+                    || (client == null && clients.size() >= maxClients)) {
+                return;
+            }
+            challenges.remove(address);
+            client = new Client();
+            client.address = address;
+            client.token = token;
+            clients.put(address, client);
+        }
+        client.lastHeard = updates;
+
+        int acked = received.getInt();
+        if (acked - client.acked > 0 && acked - client.sequence <= 0) {
+            client.acked = acked;
+        }
+        for (int i = 0 ; i < 4 ; i++) {
+            client.view[i] = received.getFloat();
+        }
+    }
+
+    /**
+     * Sends a client the objects in its view that differ from the state
+     * it has acknowledged.
+     *
+     * @param client The client.
+     * @throws IOException If the socket fails.
+     */
+    private void send(Client client) throws IOException {
+        int slot = client.acked % HISTORY;
+        Map<Integer, ReplicatedObject> baseline = Collections.emptyMap();
+        int baselineSequence = 0;
+        if (client.acked != 0 && client.sentSequences[slot] == client.acked) {
+            baseline = client.sent.get(slot);
+            baselineSequence = client.acked;
+        }
+
+        findInterest(client);
+
+        client.sequence++;
+        Map<Integer, ReplicatedObject> state = new HashMap<>();
+        writer.clear();
+        writer.writeBits(client.sequence, 32);
+        writer.writeBits(baselineSequence, 32);
+        writer.writeUnsigned(time);
+
+        // Objects that left the view are removed first, so that the
+        // client never shows objects in the wrong place for long.
+        for (ReplicatedObject old : baseline.values()) {
+            if (interestIds.contains(old.id)) {
+                continue;
+            }
+            if (writer.fits(1 + 37 + 1 + 1)) {
+                writer.writeBoolean(true);
+                writer.writeUnsigned(old.id);
+                writer.writeBoolean(true);
+            } else {
+                state.put(old.id, old);
+            }
+        }
+
+        for (int i = 0 ; i < interest.size() ; i++) {
+            GameObject o = interest.get(i);
+            ReplicatedObject now = replicate(o);
+            ReplicatedObject old = baseline.get(now.id);
+            if (old != null && now.sameAs(old)) {
+                state.put(now.id, old);
+                continue;
+            }
+
+            int bits = ENTRY_BITS + (now.image == null ? 0 : now.image.length() * 24);
+            if (writer.fits(bits + 1)) {
+                writer.writeBoolean(true);
+                writer.writeUnsigned(now.id);
+                writer.writeBoolean(false);
+                now.write(writer, old);
+                state.put(now.id, now);
+            } else if (old != null) {
+                // Sent on a later update instead.
+                state.put(now.id, old);
+            }
+        }
+        writer.writeBoolean(false);
+
+        slot = client.sequence % HISTORY;
+        client.sent.set(slot, state);
+        client.sentSequences[slot] = client.sequence;
+
+        ByteBuffer packet = writer.toBuffer();
+        bytesSent += packet.remaining();
+        channel.send(packet, client.address);
+    }
+
+    /**
+     * Finds the objects in or near the view of a client, nearest to the
+     * center of the view first.
+     *
+     * @param client The client.
+     */
+    private void findInterest(Client client) {
+        double[] view = client.view;
+        scene.getCanvas().getObjectList().query(view[0] - margin, view[1] - margin,
+                view[2] + 2 * margin, view[3] + 2 * margin, interest);
+
+        double centerX = view[0] + view[2] / 2;
+        double centerY = view[1] + view[3] / 2;
+        interest.sort((a, b) -> Double.compare(distance(a, centerX, centerY),
+                                               distance(b, centerX, centerY)));
+
+        interestIds.clear();
+        for (int i = 0 ; i < interest.size() ; i++) {
+            interestIds.add(getId(interest.get(i)));
+        }
+    }
+
+    /**
+     * @return Squared distance from the center of an object to a point.
+     */
+    private static double distance(GameObject o, double x, double y) {
+        double dx = o.getX() + o.getWidth() / 2 - x;
+        double dy = o.getY() + o.getHeight() / 2 - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * @param o An object on the canvas.
+     * @return Network id of the object, given on first use.
+     */
+    private int getId(GameObject o) {
+        Integer id = ids.get(o);
+        if (id == null) {
+            id = nextId++;
+            ids.put(o, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param o An object on the canvas.
+     * @return Current replicated state of the object.
+     */
+    private ReplicatedObject replicate(GameObject o) {
+        String path = null;
+        Image image = o.getImage();
+        if (image != null) {
+            path = imagePaths.get(image);
+            if (path == null && !imagePaths.containsKey(image)) {
+                path = AssetCache.getDefault().getPath(image);
+                imagePaths.put(image, path);
+            }
+        }
+        return new ReplicatedObject(getId(o),
+                                    ReplicatedObject.quantize(o.getX()),
+                                    ReplicatedObject.quantize(o.getY()),
+                                    ReplicatedObject.quantize(o.getWidth()),
+                                    ReplicatedObject.quantize(o.getHeight()),
+                                    path);
+    }
+
+    /**
+     * @return Port the server listens on.
+     * @throws IOException If the socket is closed.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * @return Number of connected clients.
+     */
+    public int getClientCount() { return clients.size(); }
+
+    /**
+     * @return Largest number of connected clients.
+     */
+    public int getMaxClients() { return maxClients; }
+
+    /**
+     * @return Number of bytes sent.
+     */
+    public long getBytesSent() { return bytesSent; }
+
+    /**
+     * @return Pixels around the view of a client in which objects are
+     *         sent too.
+     */
+    public double getMargin() { return margin; }
+
+    /**
+     * @param margin Pixels around the view of a client in which objects
+     *               are sent too.
+     */
+    public void setMargin(double margin) { this.margin = margin; }
+
+    /**
+     * Closes the socket.
+     *
+     * @throws IOException If the socket can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,168 @@
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+import javafx.stage.Stage;
+
+/**
+ * Switches the scene run by a GameLoop without a visible hitch. The next
+ * scene is prepared on a background thread while the current one keeps
+ * running. Once it is ready, GameLoop swaps it in at the start of a frame,
+ * the stage starts showing it and the old scene is unloaded.
+ *
+ * A scene is prepared in two steps given to preload(). The loader runs on
+ * the background thread and does the slow work that doesn't need a
+ * Scene: it creates a GameCanvas, reads the TileMap into it, decodes the
+ * images into the shared AssetCache and creates the GameObjects. JavaFX
+ * requires Scenes to be created on the JavaFX Application Thread, so the
+ * builder then runs there and wraps the prepared content in a GameScene.
+ * The loader must not touch the scene that is running. Images the scenes
+ * share are decoded only once, since both take them from the same
+ * AssetCache.
+ */
+public class SceneManager implements Closeable {
+
+    /**
+     * Stage that shows the current scene.
+     */
+    private Stage stage;
+
+    /**
+     * Game loop that runs the current scene.
+     */
+    private GameLoop loop;
+
+    /**
+     * Thread that builds the preloaded scenes.
+     */
+    private ExecutorService loader;
+
+    /**
+     * Scenes that are being built or are ready, by name.
+     */
+    private Map<String, CompletableFuture<GameScene>> preloaded = new HashMap<>();
+
+    /**
+     * Constructs the manager and starts listening to scene changes of
+     * the game loop.
+     *
+     * @param stage Stage that shows the current scene.
+     * @param loop Game loop that runs the current scene.
+     */
+    public SceneManager(Stage stage, GameLoop loop) {
+        this.stage = stage;
+        this.loop = loop;
+
+        loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread t = new Thread(runnable, "scene-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        loop.setSceneListener(this::sceneChanged);
+    }
+
+    /**
+     * Starts preparing a scene, unless a scene with the same name is
+     * already being prepared or ready. The loader runs on the background
+     * thread and the builder on the JavaFX Application Thread.
+     *
+     * @param <T> Type of the content prepared by the loader.
+     * @param name Name of the scene.
+     * @param load Prepares the content of the scene without creating
+     *             the Scene itself.
+     * @param build Creates the scene from the prepared content.
+     * @return The scene once it has been built.
+     */
+    public synchronized <T> CompletableFuture<GameScene> preload(String name, Supplier<T> load,
+                                                                 Function<T, GameScene> build) {
+        CompletableFuture<GameScene> future = preloaded.get(name);
+        if (future == null) {
+            future = CompletableFuture.supplyAsync(load, loader)
+                                      .thenApplyAsync(build, Platform::runLater);
+            preloaded.put(name, future);
+        }
+        return future;
+    }
+
+    /**
+     * @param name Name of the scene.
+     * @return Whether the scene has been built and can be switched to
+     *         without waiting.
+     */
+    public synchronized boolean isReady(String name) {
+        CompletableFuture<GameScene> future = preloaded.get(name);
+        return future != null && future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    /**
+     * Switches to a scene as soon as it has been built, building it first
+     * if it hasn't been preloaded. The current scene keeps running until
+     * then.
+     *
+     * @param <T> Type of the content prepared by the loader.
+     * @param name Name of the scene.
+     * @param load Prepares the content of the scene if it hasn't been
+     *             preloaded.
+     * @param build Creates the scene from the prepared content.
+     */
+    public <T> void switchTo(String name, Supplier<T> load, Function<T, GameScene> build) {
+        CompletableFuture<GameScene> future = preload(name, load, build);
+        future.whenComplete((scene, error) -> {
+            // Forgotten only once built, so that switching to the same
+            // name again meanwhile waits for this build instead of
+            // starting another.
+            synchronized (this) {
+                preloaded.remove(name, future);
+            }
+            if (error != null) {
+                error.printStackTrace();
+            } else {
+                loop.setScene(scene);
+            }
+        });
+    }
+
+    /**
+     * Forgets a preloaded scene that won't be switched to.
+     *
+     * @param name Name of the scene.
+     */
+    public void discard(String name) {
+        CompletableFuture<GameScene> future;
+        synchronized (this) {
+            future = preloaded.remove(name);
+        }
+        if (future != null) {
+            future.thenAccept(scene -> Platform.runLater(scene::unload));
+        }
+    }
+
+    /**
+     * Shows the new scene and unloads the old one. Called by GameLoop on
+     * the game thread.
+     *
+     * @param old The scene that was replaced.
+     * @param next The new scene.
+     */
+    private void sceneChanged(GameScene old, GameScene next) {
+        stage.setScene(next);
+        if (old != null && old != next) {
+            old.unload();
+        }
+    }
+
+    /**
+     * @return The scene that is run.
+     */
+    public GameScene getCurrent() { return loop.getScene(); }
+
+    /**
+     * Stops the loader thread.
+     */
+    @Override
+    public void close() {
+        loader.shutdownNow();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+import java.util.Random;
+
+/**
+ * Random number generator of a GameScene. Produces the same numbers as
+ * java.util.Random with the same seed, but its state can be read and set,
+ * so that a SceneSnapshot can put the generator back where it was without
+ * replacing the instance that games got from getRandom().
+ */
+public class SceneRandom extends Random {
+
+    /**
+     * Multiplier of the linear congruential generator.
+     */
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+
+    /**
+     * Increment of the linear congruential generator.
+     */
+    private static final long ADDEND = 0xBL;
+
+    /**
+     * Mask of the 48 bits of state.
+     */
+    private static final long MASK = (1L << 48) - 1;
+
+    /**
+     * The 48 bits of state. Not initialized here, because the constructor
+     * of Random sets it through setSeed().
+     */
+    private long state;
+
+    /**
+     * Whether the second of the last pair of gaussians is still unused.
+     */
+    private boolean haveNextGaussian;
+
+    /**
+     * The second of the last pair of gaussians.
+     */
+    private double nextGaussian;
+
+    /**
+     * Constructs the generator.
+     *
+     * @param seed Seed of the generator.
+     */
+    public SceneRandom(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Reseeds the generator the same way as java.util.Random.
+     *
+     * @param seed Seed of the generator.
+     */
+    @Override
+    public synchronized void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+        haveNextGaussian = false;
+    }
+
+    /**
+     * @param bits Number of random bits, at most 32.
+     * @return The next random bits.
+     */
+    @Override
+    protected synchronized int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * @return The next normally distributed number, computed the same
+     *         way as java.util.Random.
+     */
+    @Override
+    public synchronized double nextGaussian() {
+        if (haveNextGaussian) {
+            haveNextGaussian = false;
+            return nextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        haveNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     * @return The 48 bits of state.
+     */
+    public synchronized long getState() { return state; }
+
+    /**
+     * @return Whether a gaussian is left over from the last pair.
+     */
+    public synchronized boolean hasNextGaussian() { return haveNextGaussian; }
+
+    /**
+     * @return The gaussian left over from the last pair.
+     */
+    public synchronized double getNextGaussian() { return nextGaussian; }
+
+    /**
+     * Puts the generator back into a state read with getState(),
+     * hasNextGaussian() and getNextGaussian().
+     *
+     * @param state The 48 bits of state.
+     * @param haveNextGaussian Whether a gaussian is left over.
+     * @param nextGaussian The gaussian left over.
+     */
+    public synchronized void setState(long state, boolean haveNextGaussian, double nextGaussian) {
+        this.state = state & MASK;
+        this.haveNextGaussian = haveNextGaussian;
+        this.nextGaussian = nextGaussian;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,574 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import javafx.scene.image.Image;
+
+/**
+ * A copy of the state of a GameScene that can be restored later or saved
+ * to a file, for example for checkpoints and autosaves. A snapshot holds
+ * the location, size, physics type and gravity settings of every
+ * GameObject on the canvas, the position and zoom of every camera, the
+ * tick and random number generator of the scene and the settings of a
+ * Gravity. Images are stored as their AssetCache paths.
+ *
+ * Restoring a snapshot moves the existing GameObjects back into place
+ * without reading the level again. Objects that were in the snapshot but
+ * no longer exist are created, and objects that didn't exist yet are
+ * removed.
+ *
+ * A snapshot can be written in full or as a delta that only contains the
+ * objects that differ from an earlier baseline snapshot. Deltas are read
+ * back with the same baseline.
+ *
+ * File layout, big-endian:
+ *
+ * header:  magic (int), version (short), delta (byte), id (long),
+ *          baseline id (long, 0 if not a delta)
+ * scene:   tick (long), random state (long), gaussian left (byte),
+ *          next gaussian (double)
+ * paths:   count (int), for each: length (short), UTF-8 bytes
+ * gravity: present (byte), strength (double), type (byte)
+ * cameras: count (int), for each: x, y, zoom (double)
+ * objects: count (int), changed count (int, only in deltas),
+ *          for each: index (int, only in deltas), record
+ * record:  x, y, width, height, personal gravity (double),
+ *          physics type + 1 (byte), gravity on (byte), path index (int)
+ */
+public class SceneSnapshot {
+
+    /**
+     * First four bytes of every snapshot file.
+     */
+    static final int MAGIC = 0x424e5353;
+
+    /**
+     * Version of the file format.
+     */
+    static final short VERSION = 2;
+
+    /**
+     * Number of doubles stored per object.
+     */
+    private static final int VALUES = 5;
+
+    /**
+     * Size of one object record in bytes.
+     */
+    private static final int RECORD_BYTES = VALUES * 8 + 2 + 4;
+
+    /**
+     * Source of snapshot ids.
+     */
+    private static long nextId = System.nanoTime();
+
+    /**
+     * Id of the snapshot, used to match deltas with their baseline.
+     */
+    private long id;
+
+    /**
+     * AssetCache paths of the images of the objects.
+     */
+    private List<String> paths = new ArrayList<>();
+
+    /**
+     * Number of objects.
+     */
+    private int objectCount;
+
+    /**
+     * X, y, width, height and personal gravity of every object.
+     */
+    private double[] values;
+
+    /**
+     * Physics type + 1, or 0 for none, and 1 if gravity is on, else 0,
+     * of every object.
+     */
+    private byte[] flags;
+
+    /**
+     * Index of the image path of every object, or -1 if it has no image.
+     */
+    private int[] images;
+
+    /**
+     * X, y and zoom of every camera.
+     */
+    private double[] cameras = new double[0];
+
+    /**
+     * Number of ticks the scene had been stepped.
+     */
+    private long tick;
+
+    /**
+     * State of the random number generator of the scene.
+     */
+    private long randomState;
+
+    /**
+     * Whether the random number generator had a gaussian left over.
+     */
+    private boolean haveNextGaussian;
+
+    /**
+     * Gaussian left over in the random number generator.
+     */
+    private double nextGaussian;
+
+    /**
+     * Whether the snapshot has gravity settings.
+     */
+    private boolean hasGravity = false;
+
+    /**
+     * Strength of the gravity.
+     */
+    private double gravityStrength;
+
+    /**
+     * Type of the gravity.
+     */
+    private GravityType gravityType = GravityType.VERTICAL;
+
+    /**
+     * Constructs an empty snapshot.
+     *
+     * @param id Id of the snapshot.
+     * @param objectCount Number of objects.
+     */
+    private SceneSnapshot(long id, int objectCount) {
+        this.id = id;
+        this.objectCount = objectCount;
+        values = new double[objectCount * VALUES];
+        flags = new byte[objectCount * 2];
+        images = new int[objectCount];
+    }
+
+    /**
+     * @return A new snapshot id.
+     */
+    private static synchronized long newId() {
+        return ++nextId;
+    }
+
+    /**
+     * Copies the state of a scene as the objects on the canvas are
+     * currently iterated: objects queued for removal are still included
+     * and queued additions are not. The object list is not flushed, so
+     * the scene can be captured from update().
+     *
+     * @param scene The scene.
+     * @param gravity Gravity of the scene, or null.
+     * @return The snapshot.
+     */
+    public static SceneSnapshot capture(GameScene scene, Gravity gravity) {
+        GameObjectList objects = scene.getCanvas().getObjectList();
+
+        SceneSnapshot snapshot = new SceneSnapshot(newId(), objects.size());
+        Map<Image, Integer> pathIndex = new IdentityHashMap<>();
+        AssetCache assets = AssetCache.getDefault();
+
+        for (int i = 0 ; i < snapshot.objectCount ; i++) {
+            GameObject o = objects.get(i);
+            int v = i * VALUES;
+            snapshot.values[v] = o.getX();
+            snapshot.values[v + 1] = o.getY();
+            snapshot.values[v + 2] = o.getWidth();
+            snapshot.values[v + 3] = o.getHeight();
+            snapshot.values[v + 4] = o.getPersonalGravity();
+            snapshot.flags[i * 2] = (byte) (o.getPhysicsType() == null ? 0
+                                            : o.getPhysicsType().ordinal() + 1);
+            snapshot.flags[i * 2 + 1] = (byte) (o.getGravityOn() ? 1 : 0);
+
+            Image image = o.getImage();
+            if (image == null) {
+                snapshot.images[i] = -1;
+                continue;
+            }
+            Integer index = pathIndex.get(image);
+            if (index == null) {
+                String path = assets.getPath(image);
+                index = path == null ? -1 : snapshot.addPath(path);
+                pathIndex.put(image, index);
+            }
+            snapshot.images[i] = index;
+        }
+
+        SceneRandom random = scene.getRandom();
+        snapshot.tick = scene.getTick();
+        snapshot.randomState = random.getState();
+        snapshot.haveNextGaussian = random.hasNextGaussian();
+        snapshot.nextGaussian = random.getNextGaussian();
+
+        List<GameCamera> sceneCameras = scene.getCameras();
+        snapshot.cameras = new double[sceneCameras.size() * 3];
+        for (int i = 0 ; i < sceneCameras.size() ; i++) {
+            GameCamera camera = sceneCameras.get(i);
+            snapshot.cameras[i * 3] = camera.getX();
+            snapshot.cameras[i * 3 + 1] = camera.getY();
+            snapshot.cameras[i * 3 + 2] = camera.getZoom();
+        }
+
+        if (gravity != null) {
+            snapshot.hasGravity = true;
+            snapshot.gravityStrength = gravity.getStrength();
+            snapshot.gravityType = gravity.getGravityType();
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param path AssetCache path of an image.
+     * @return Index of the path in the path table, added if necessary.
+     */
+    private int addPath(String path) {
+        int index = paths.indexOf(path);
+        if (index < 0) {
+            paths.add(path);
+            index = paths.size() - 1;
+        }
+        return index;
+    }
+
+    /**
+     * Restores the state of a scene. The objects on the canvas are matched
+     * with the snapshot by their order. Missing objects are created and
+     * extra objects are removed, after which the changes are applied
+     * immediately.
+     *
+     * Restoring flushes the object list, which would disturb the iteration
+     * of a running step. When called while the scene is stepping, for
+     * example from update(), the restore is queued and applied at the
+     * start of the next step().
+     *
+     * @param scene The scene.
+     * @param gravity Gravity of the scene, or null.
+     */
+    public void restore(GameScene scene, Gravity gravity) {
+        if (scene.isStepping()) {
+            scene.runBeforeStep(() -> apply(scene, gravity));
+        } else {
+            apply(scene, gravity);
+        }
+    }
+
+    /**
+     * Restores the state of a scene immediately.
+     *
+     * @param scene The scene.
+     * @param gravity Gravity of the scene, or null.
+     */
+    private void apply(GameScene scene, Gravity gravity) {
+        GameCanvas canvas = scene.getCanvas();
+        GameObjectList objects = canvas.getObjectList();
+        objects.flush();
+
+        AssetCache assets = AssetCache.getDefault();
+        for (int i = 0 ; i < objectCount ; i++) {
+            int v = i * VALUES;
+            Image image = images[i] < 0 ? null : assets.getImage(paths.get(images[i]));
+
+            GameObject o;
+            if (i < objects.size()) {
+                o = objects.get(i);
+                o.setX(values[v]);
+                o.setY(values[v + 1]);
+                o.setWidth(values[v + 2]);
+                o.setHeight(values[v + 3]);
+                if (images[i] >= 0) {
+                    o.setImage(image);
+                }
+            } else {
+                o = new GameObject(values[v], values[v + 1], values[v + 2],
+                                   values[v + 3], image, scene);
+                canvas.add(o);
+            }
+            o.setPersonalGravity(values[v + 4]);
+            int physics = flags[i * 2];
+            o.setPhysicsType(physics == 0 ? null : PhysicsType.values()[physics - 1]);
+            o.setGravityOn(flags[i * 2 + 1] != 0);
+        }
+        for (int i = objectCount ; i < objects.size() ; i++) {
+            canvas.remove(objects.get(i));
+        }
+        objects.flush();
+
+        scene.setTick(tick);
+        scene.getRandom().setState(randomState, haveNextGaussian, nextGaussian);
+
+        List<GameCamera> sceneCameras = scene.getCameras();
+        for (int i = 0 ; i < sceneCameras.size() && i * 3 < cameras.length ; i++) {
+            GameCamera camera = sceneCameras.get(i);
+            camera.setPosition(cameras[i * 3], cameras[i * 3 + 1]);
+            camera.setZoom(cameras[i * 3 + 2]);
+        }
+
+        if (gravity != null && hasGravity) {
+            gravity.setStrength(gravityStrength);
+            gravity.setGravityType(gravityType);
+        }
+    }
+
+    /**
+     * Writes the whole snapshot to a file.
+     *
+     * @param file The file.
+     * @throws IOException If the file can't be written.
+     */
+    public void write(Path file) throws IOException {
+        write(file, null);
+    }
+
+    /**
+     * Writes the objects that differ from a baseline snapshot to a file.
+     * The delta can only be read back with the same baseline.
+     *
+     * @param file The file.
+     * @param baseline Snapshot the delta is based on.
+     * @throws IOException If the file can't be written.
+     */
+    public void writeDelta(Path file, SceneSnapshot baseline) throws IOException {
+        write(file, baseline);
+    }
+
+    /**
+     * Writes the snapshot to a file, in full or as a delta.
+     *
+     * @param file The file.
+     * @param baseline Snapshot the delta is based on, or null to write
+     *                 the whole snapshot.
+     * @throws IOException If the file can't be written.
+     */
+    private void write(Path file, SceneSnapshot baseline) throws IOException {
+        int changed = 0;
+        boolean[] changes = new boolean[objectCount];
+        for (int i = 0 ; i < objectCount ; i++) {
+            if (baseline == null || !sameObject(i, baseline)) {
+                changes[i] = true;
+                changed++;
+            }
+        }
+
+        List<byte[]> encodedPaths = new ArrayList<>(paths.size());
+        int size = 4 + 2 + 1 + 8 + 8 + 8 + 8 + 1 + 8 + 4 + 1 + 8 + 1 + 4 + cameras.length * 8 + 4;
+        for (String path : paths) {
+            byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+            encodedPaths.add(bytes);
+            size += 2 + bytes.length;
+        }
+        size += baseline == null ? changed * RECORD_BYTES : 4 + changed * (4 + RECORD_BYTES);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.put((byte) (baseline == null ? 0 : 1));
+        buffer.putLong(id);
+        buffer.putLong(baseline == null ? 0 : baseline.id);
+
+        buffer.putLong(tick);
+        buffer.putLong(randomState);
+        buffer.put((byte) (haveNextGaussian ? 1 : 0));
+        buffer.putDouble(nextGaussian);
+
+        buffer.putInt(encodedPaths.size());
+        for (byte[] bytes : encodedPaths) {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+
+        buffer.put((byte) (hasGravity ? 1 : 0));
+        buffer.putDouble(gravityStrength);
+        buffer.put((byte) gravityType.ordinal());
+
+        buffer.putInt(cameras.length / 3);
+        for (double value : cameras) {
+            buffer.putDouble(value);
+        }
+
+        buffer.putInt(objectCount);
+        if (baseline != null) {
+            buffer.putInt(changed);
+        }
+        for (int i = 0 ; i < objectCount ; i++) {
+            if (!changes[i]) {
+                continue;
+            }
+            if (baseline != null) {
+                buffer.putInt(i);
+            }
+            for (int v = i * VALUES ; v < (i + 1) * VALUES ; v++) {
+                buffer.putDouble(values[v]);
+            }
+            buffer.put(flags[i * 2]);
+            buffer.put(flags[i * 2 + 1]);
+            buffer.putInt(images[i]);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * @param i Index of an object.
+     * @param baseline Another snapshot.
+     * @return Whether the object has the same state in both snapshots.
+     */
+    private boolean sameObject(int i, SceneSnapshot baseline) {
+        if (i >= baseline.objectCount) {
+            return false;
+        }
+        for (int v = i * VALUES ; v < (i + 1) * VALUES ; v++) {
+            if (Double.doubleToLongBits(values[v]) != Double.doubleToLongBits(baseline.values[v])) {
+                return false;
+            }
+        }
+        return flags[i * 2] == baseline.flags[i * 2]
+            && flags[i * 2 + 1] == baseline.flags[i * 2 + 1]
+            && Objects.equals(getPath(i), baseline.getPath(i));
+    }
+
+    /**
+     * @param i Index of an object.
+     * @return AssetCache path of the image of the object, or null.
+     */
+    private String getPath(int i) {
+        return images[i] < 0 ? null : paths.get(images[i]);
+    }
+
+    /**
+     * Reads a snapshot that was written in full.
+     *
+     * @param file The file.
+     * @return The snapshot.
+     * @throws IOException If the file can't be read or is a delta.
+     */
+    public static SceneSnapshot read(Path file) throws IOException {
+        return read(file, null);
+    }
+
+    /**
+     * Reads a snapshot that was written in full or as a delta.
+     *
+     * @param file The file.
+     * @param baseline Snapshot the delta is based on, or null if the file
+     *                 was written in full.
+     * @return The snapshot.
+     * @throws IOException If the file can't be read, or if it is a delta
+     *                     that is not based on the given baseline.
+     */
+    public static SceneSnapshot read(Path file, SceneSnapshot baseline) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+        }
+        buffer.flip();
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a scene snapshot: " + file);
+            }
+            if (buffer.getShort() != VERSION) {
+                throw new IOException("Unsupported snapshot version: " + file);
+            }
+            boolean delta = buffer.get() != 0;
+            long id = buffer.getLong();
+            long baselineId = buffer.getLong();
+            if (delta && (baseline == null || baseline.id != baselineId)) {
+                throw new IOException("Delta doesn't match the baseline: " + file);
+            }
+
+            long tick = buffer.getLong();
+            long randomState = buffer.getLong();
+            boolean haveNextGaussian = buffer.get() != 0;
+            double nextGaussian = buffer.getDouble();
+
+            List<String> paths = new ArrayList<>();
+            int pathCount = buffer.getInt();
+            for (int i = 0 ; i < pathCount ; i++) {
+                byte[] bytes = new byte[buffer.getShort() & 0xffff];
+                buffer.get(bytes);
+                paths.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            boolean hasGravity = buffer.get() != 0;
+            double gravityStrength = buffer.getDouble();
+            GravityType gravityType = GravityType.values()[buffer.get()];
+
+            double[] cameras = new double[buffer.getInt() * 3];
+            for (int i = 0 ; i < cameras.length ; i++) {
+                cameras[i] = buffer.getDouble();
+            }
+
+            SceneSnapshot snapshot = new SceneSnapshot(id, buffer.getInt());
+            snapshot.paths = paths;
+            snapshot.tick = tick;
+            snapshot.randomState = randomState;
+            snapshot.haveNextGaussian = haveNextGaussian;
+            snapshot.nextGaussian = nextGaussian;
+            snapshot.hasGravity = hasGravity;
+            snapshot.gravityStrength = gravityStrength;
+            snapshot.gravityType = gravityType;
+            snapshot.cameras = cameras;
+
+            int changed = snapshot.objectCount;
+            if (delta) {
+                snapshot.copyUnchanged(baseline);
+                changed = buffer.getInt();
+            }
+            for (int c = 0 ; c < changed ; c++) {
+                int i = delta ? buffer.getInt() : c;
+                for (int v = i * VALUES ; v < (i + 1) * VALUES ; v++) {
+                    snapshot.values[v] = buffer.getDouble();
+                }
+                snapshot.flags[i * 2] = buffer.get();
+                snapshot.flags[i * 2 + 1] = buffer.get();
+                snapshot.images[i] = buffer.getInt();
+            }
+            return snapshot;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupted scene snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * Copies the objects of a baseline into this snapshot, translating
+     * their image paths to the path table of this snapshot.
+     *
+     * @param baseline Snapshot the delta is based on.
+     */
+    private void copyUnchanged(SceneSnapshot baseline) {
+        int count = Math.min(objectCount, baseline.objectCount);
+        System.arraycopy(baseline.values, 0, values, 0, count * VALUES);
+        System.arraycopy(baseline.flags, 0, flags, 0, count * 2);
+
+        int[] pathMap = new int[baseline.paths.size()];
+        for (int i = 0 ; i < pathMap.length ; i++) {
+            pathMap[i] = addPath(baseline.paths.get(i));
+        }
+        for (int i = 0 ; i < count ; i++) {
+            images[i] = baseline.images[i] < 0 ? -1 : pathMap[baseline.images[i]];
+        }
+    }
+
+    /**
+     * @return Id of the snapshot, used to match deltas with their baseline.
+     */
+    public long getId() { return id; }
+
+    /**
+     * @return Number of objects in the snapshot.
+     */
+    public int getObjectCount() { return objectCount; }
+}
\ No newline at end of file
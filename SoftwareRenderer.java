@@ -0,0 +1,505 @@
+import java.util.*;
+import java.util.stream.IntStream;
+import javafx.scene.image.*;
+import javafx.scene.paint.Color;
+
+/**
+ * RenderTarget that draws into an array of ARGB pixels instead of on the
+ * screen. It needs no JavaFX window, so a GameCanvas using it can render
+ * on a headless machine, for example to make thumbnails and minimaps, to
+ * measure drawing or to compare the output with a known good image pixel
+ * by pixel.
+ *
+ * Drawing calls are recorded and carried out at end(). The surface is
+ * divided into horizontal bands that are drawn in parallel, each band
+ * carrying out every recorded call in order for its own rows only, so
+ * the result is the same as drawing on one thread.
+ *
+ * Images are sampled from their nearest pixel and blended by their alpha.
+ * Opaque images drawn in their natural size at whole pixel coordinates,
+ * such as tiles at zoom 1, are copied row by row. The pixels of an image
+ * are read once and cached, so an image must not be changed after it has
+ * been drawn.
+ */
+public class SoftwareRenderer implements RenderTarget {
+
+    /**
+     * Number of rows in a band.
+     */
+    private static final int BAND_HEIGHT = 32;
+
+    /**
+     * Number of pixels below which recorded calls are drawn on the
+     * calling thread only.
+     */
+    private static final int PARALLEL_PIXELS = 128 * 128;
+
+    /**
+     * Kind of a recorded call that clears a rectangle.
+     */
+    private static final int CLEAR = 0;
+
+    /**
+     * Kind of a recorded call that fills a rectangle.
+     */
+    private static final int FILL = 1;
+
+    /**
+     * Kind of a recorded call that draws an image.
+     */
+    private static final int IMAGE = 2;
+
+    /**
+     * Pixels of an image.
+     */
+    private static class Texture {
+
+        /**
+         * ARGB pixels, row by row.
+         */
+        private int[] argb;
+
+        /**
+         * Width in pixels.
+         */
+        private int width;
+
+        /**
+         * Height in pixels.
+         */
+        private int height;
+
+        /**
+         * Whether every pixel is fully opaque.
+         */
+        private boolean opaque = true;
+    }
+
+    /**
+     * A recorded drawing call, in surface pixels.
+     */
+    private static class Command {
+
+        /**
+         * CLEAR, FILL or IMAGE.
+         */
+        private int kind;
+
+        /**
+         * Image to draw, or null.
+         */
+        private Texture texture;
+
+        /**
+         * ARGB color of a fill.
+         */
+        private int color;
+
+        /**
+         * Part of the image to draw.
+         */
+        private double sx, sy, sw, sh;
+
+        /**
+         * Rectangle the call draws in.
+         */
+        private double dx, dy, dw, dh;
+
+        /**
+         * Rectangle drawing is limited to, with exclusive right and
+         * bottom edges.
+         */
+        private int clipLeft, clipTop, clipRight, clipBottom;
+    }
+
+    /**
+     * Width of the surface in pixels.
+     */
+    private int width;
+
+    /**
+     * Height of the surface in pixels.
+     */
+    private int height;
+
+    /**
+     * ARGB pixels of the surface, row by row.
+     */
+    private int[] pixels;
+
+    /**
+     * Cached pixels of the images that have been drawn.
+     */
+    private Map<Image, Texture> textures = new WeakHashMap<>();
+
+    /**
+     * Recorded calls. Commands past commandCount are kept for reuse.
+     */
+    private List<Command> commands = new ArrayList<>();
+
+    /**
+     * Number of recorded calls.
+     */
+    private int commandCount = 0;
+
+    /**
+     * Number of surface pixels the recorded calls cover, roughly.
+     */
+    private long coverage = 0;
+
+    /**
+     * Surface coordinates of drawing coordinate 0.
+     */
+    private double originX = 0, originY = 0;
+
+    /**
+     * Surface pixels per drawing coordinate.
+     */
+    private double scale = 1;
+
+    /**
+     * Rectangle drawing is limited to, with exclusive right and bottom
+     * edges.
+     */
+    private int clipLeft, clipTop, clipRight, clipBottom;
+
+    /**
+     * Whether the bands are drawn in parallel.
+     */
+    private boolean parallel = true;
+
+    /**
+     * Constructs a transparent surface.
+     *
+     * @param width Width of the surface in pixels.
+     * @param height Height of the surface in pixels.
+     */
+    public SoftwareRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        pixels = new int[width * height];
+        resetClip();
+    }
+
+    /**
+     * Limits drawing to the whole surface.
+     */
+    private void resetClip() {
+        clipLeft = 0;
+        clipTop = 0;
+        clipRight = width;
+        clipBottom = height;
+    }
+
+    @Override
+    public void begin(double left, double top, double width, double height,
+                      double originX, double originY, double scale) {
+        flush();
+        clipLeft = Math.max(0, (int) Math.round(left));
+        clipTop = Math.max(0, (int) Math.round(top));
+        clipRight = Math.min(this.width, (int) Math.round(left + width));
+        clipBottom = Math.min(this.height, (int) Math.round(top + height));
+        this.originX = originX;
+        this.originY = originY;
+        this.scale = scale;
+
+        Command command = record(CLEAR);
+        command.dx = left;
+        command.dy = top;
+        command.dw = width;
+        command.dh = height;
+    }
+
+    @Override
+    public void end() {
+        flush();
+        originX = 0;
+        originY = 0;
+        scale = 1;
+        resetClip();
+    }
+
+    @Override
+    public void drawImage(Image image, double sx, double sy, double sw, double sh,
+                          double dx, double dy, double dw, double dh) {
+        Texture texture = getTexture(image);
+        if (texture == null || sw <= 0 || sh <= 0 || dw <= 0 || dh <= 0) {
+            return;
+        }
+        Command command = record(IMAGE);
+        command.texture = texture;
+        command.sx = sx;
+        command.sy = sy;
+        command.sw = sw;
+        command.sh = sh;
+        transform(command, dx, dy, dw, dh);
+    }
+
+    @Override
+    public void fillRect(Color color, double x, double y, double width, double height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        Command command = record(FILL);
+        command.color = toArgb(color);
+        transform(command, x, y, width, height);
+    }
+
+    /**
+     * Stores the destination rectangle of a call in surface pixels.
+     */
+    private void transform(Command command, double x, double y, double width, double height) {
+        command.dx = originX + x * scale;
+        command.dy = originY + y * scale;
+        command.dw = width * scale;
+        command.dh = height * scale;
+        coverage += (long) Math.min(command.dw, this.width) * (long) Math.min(command.dh, this.height);
+    }
+
+    /**
+     * @param kind Kind of the call.
+     * @return A reused command for the call, with the current clip.
+     */
+    private Command record(int kind) {
+        if (commandCount == commands.size()) {
+            commands.add(new Command());
+        }
+        Command command = commands.get(commandCount++);
+        command.kind = kind;
+        command.texture = null;
+        command.clipLeft = clipLeft;
+        command.clipTop = clipTop;
+        command.clipRight = clipRight;
+        command.clipBottom = clipBottom;
+        return command;
+    }
+
+    /**
+     * @param image An image.
+     * @return Cached pixels of the image, or null if it has no pixels yet.
+     */
+    private Texture getTexture(Image image) {
+        Texture texture = textures.get(image);
+        if (texture == null) {
+            int w = (int) image.getWidth();
+            int h = (int) image.getHeight();
+            PixelReader reader = image.getPixelReader();
+            if (w <= 0 || h <= 0 || reader == null) {
+                return null;
+            }
+            texture = new Texture();
+            texture.width = w;
+            texture.height = h;
+            texture.argb = new int[w * h];
+            reader.getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), texture.argb, 0, w);
+            for (int argb : texture.argb) {
+                if ((argb >>> 24) != 0xff) {
+                    texture.opaque = false;
+                    break;
+                }
+            }
+            textures.put(image, texture);
+        }
+        return texture;
+    }
+
+    /**
+     * @param color A color.
+     * @return The color as ARGB.
+     */
+    private static int toArgb(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24
+             | (int) Math.round(color.getRed() * 255) << 16
+             | (int) Math.round(color.getGreen() * 255) << 8
+             | (int) Math.round(color.getBlue() * 255);
+    }
+
+    /**
+     * Carries out the recorded calls.
+     */
+    public void flush() {
+        if (commandCount == 0) {
+            return;
+        }
+        int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        if (parallel && bands > 1 && coverage >= PARALLEL_PIXELS) {
+            IntStream.range(0, bands).parallel().forEach(band ->
+                    rasterize(band * BAND_HEIGHT, Math.min(height, (band + 1) * BAND_HEIGHT)));
+        } else {
+            rasterize(0, height);
+        }
+        for (int i = 0 ; i < commandCount ; i++) {
+            commands.get(i).texture = null;
+        }
+        commandCount = 0;
+        coverage = 0;
+    }
+
+    /**
+     * Carries out every recorded call for the given rows.
+     *
+     * @param bandTop First row.
+     * @param bandBottom Row after the last one.
+     */
+    private void rasterize(int bandTop, int bandBottom) {
+        for (int i = 0 ; i < commandCount ; i++) {
+            Command c = commands.get(i);
+
+            // A pixel is covered when its center is inside the rectangle.
+            int left = Math.max(c.clipLeft, (int) Math.ceil(c.dx - 0.5));
+            int right = Math.min(c.clipRight, (int) Math.ceil(c.dx + c.dw - 0.5));
+            int top = Math.max(Math.max(c.clipTop, bandTop), (int) Math.ceil(c.dy - 0.5));
+            int bottom = Math.min(Math.min(c.clipBottom, bandBottom),
+                                  (int) Math.ceil(c.dy + c.dh - 0.5));
+            if (right <= left || bottom <= top) {
+                continue;
+            }
+
+            if (c.kind == CLEAR) {
+                for (int y = top ; y < bottom ; y++) {
+                    Arrays.fill(pixels, y * width + left, y * width + right, 0);
+                }
+            } else if (c.kind == FILL) {
+                fill(c.color, left, top, right, bottom);
+            } else {
+                blit(c, left, top, right, bottom);
+            }
+        }
+    }
+
+    /**
+     * Fills a rectangle of pixels with a color.
+     */
+    private void fill(int color, int left, int top, int right, int bottom) {
+        for (int y = top ; y < bottom ; y++) {
+            int row = y * width;
+            if ((color >>> 24) == 0xff) {
+                Arrays.fill(pixels, row + left, row + right, color);
+            } else {
+                for (int x = left ; x < right ; x++) {
+                    pixels[row + x] = blend(color, pixels[row + x]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the image of a call into a rectangle of pixels.
+     */
+    private void blit(Command c, int left, int top, int right, int bottom) {
+        Texture t = c.texture;
+        double scaleX = c.sw / c.dw;
+        double scaleY = c.sh / c.dh;
+        int minX = Math.max(0, (int) Math.floor(c.sx));
+        int minY = Math.max(0, (int) Math.floor(c.sy));
+        int maxX = Math.min(t.width, (int) Math.ceil(c.sx + c.sw)) - 1;
+        int maxY = Math.min(t.height, (int) Math.ceil(c.sy + c.sh)) - 1;
+        if (maxX < minX || maxY < minY) {
+            return;
+        }
+
+        boolean unscaled = c.sw == c.dw && c.sh == c.dh
+            && c.dx == Math.rint(c.dx) && c.dy == Math.rint(c.dy)
+            && c.sx == Math.rint(c.sx) && c.sy == Math.rint(c.sy);
+
+        for (int y = top ; y < bottom ; y++) {
+            int sy = (int) Math.floor(c.sy + (y + 0.5 - c.dy) * scaleY);
+            sy = Math.min(maxY, Math.max(minY, sy));
+            int srcRow = sy * t.width;
+            int row = y * width;
+
+            if (unscaled) {
+                int sx = (int) c.sx + left - (int) c.dx;
+                if (sx >= minX && sx + (right - left) - 1 <= maxX) {
+                    if (t.opaque) {
+                        System.arraycopy(t.argb, srcRow + sx, pixels, row + left, right - left);
+                    } else {
+                        for (int x = left ; x < right ; x++) {
+                            pixels[row + x] = blend(t.argb[srcRow + sx + x - left], pixels[row + x]);
+                        }
+                    }
+                    continue;
+                }
+            }
+
+            for (int x = left ; x < right ; x++) {
+                int sx = (int) Math.floor(c.sx + (x + 0.5 - c.dx) * scaleX);
+                sx = Math.min(maxX, Math.max(minX, sx));
+                int argb = t.argb[srcRow + sx];
+                pixels[row + x] = t.opaque ? argb : blend(argb, pixels[row + x]);
+            }
+        }
+    }
+
+    /**
+     * Blends a color over another with the source-over rule.
+     *
+     * @param src ARGB color drawn on top.
+     * @param dst ARGB color under it.
+     * @return The blended ARGB color.
+     */
+    private static int blend(int src, int dst) {
+        int sa = src >>> 24;
+        if (sa == 0xff) {
+            return src;
+        } else if (sa == 0) {
+            return dst;
+        }
+
+        int da = dst >>> 24;
+        int dw = da * (255 - sa) / 255;
+        int a = sa + dw;
+        int r = (((src >> 16) & 0xff) * sa + ((dst >> 16) & 0xff) * dw) / a;
+        int g = (((src >> 8) & 0xff) * sa + ((dst >> 8) & 0xff) * dw) / a;
+        int b = ((src & 0xff) * sa + (dst & 0xff) * dw) / a;
+        return a << 24 | r << 16 | g << 8 | b;
+    }
+
+    /**
+     * Copies the surface into an image, for example for a thumbnail.
+     *
+     * @return The image.
+     */
+    public WritableImage toImage() {
+        flush();
+        WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(),
+                                         pixels, 0, width);
+        return image;
+    }
+
+    /**
+     * @return ARGB pixels of the surface, row by row, after carrying out
+     *         the recorded calls.
+     */
+    public int[] getPixels() {
+        flush();
+        return pixels;
+    }
+
+    /**
+     * @param x X-coordinate of a pixel.
+     * @param y Y-coordinate of a pixel.
+     * @return ARGB color of the pixel.
+     */
+    public int getArgb(int x, int y) {
+        flush();
+        return pixels[y * width + x];
+    }
+
+    @Override
+    public double getWidth() { return width; }
+
+    @Override
+    public double getHeight() { return height; }
+
+    /**
+     * @return Whether the bands are drawn in parallel.
+     */
+    public boolean isParallel() { return parallel; }
+
+    /**
+     * @param parallel Whether the bands are drawn in parallel.
+     */
+    public void setParallel(boolean parallel) { this.parallel = parallel; }
+}
\ No newline at end of file
@@ -0,0 +1,354 @@
+import java.util.*;
+
+/**
+ * SpatialIndex that divides the game world into square cells of equal
+ * size. Every cell lists the GameObjects that overlap it, so a query only
+ * looks at the cells its rectangle covers. Only cells that contain
+ * something take memory, so the world doesn't need a fixed size.
+ *
+ * Moving an object is cheap while it stays in the same cells, which is
+ * the common case when the cells are larger than the objects. The cells
+ * are kept in an open addressing table keyed by primitive longs, and the
+ * cell range of each object is compared and updated in place, so moving,
+ * inserting and querying don't allocate or box once the table and the
+ * cells have grown to fit.
+ */
+public class SpatialGrid implements SpatialIndex {
+
+    /**
+     * Default width and height of a cell in pixels.
+     */
+    public static final double DEFAULT_CELL_SIZE = 128;
+
+    /**
+     * Objects in one cell of the grid.
+     */
+    private static class Cell {
+
+        /**
+         * The objects. Only the first size slots are in use.
+         */
+        private GameObject[] objects = new GameObject[4];
+
+        /**
+         * Number of objects in the cell.
+         */
+        private int size = 0;
+
+        /**
+         * Next cell in the list of unused cells.
+         */
+        private Cell next;
+
+        /**
+         * Adds an object to the end of the cell.
+         */
+        private void add(GameObject object) {
+            if (size == objects.length) {
+                objects = Arrays.copyOf(objects, size * 2);
+            }
+            objects[size++] = object;
+        }
+
+        /**
+         * Removes an object, moving the last object into its slot.
+         */
+        private void remove(GameObject object) {
+            for (int i = 0 ; i < size ; i++) {
+                if (objects[i] == object) {
+                    objects[i] = objects[--size];
+                    objects[size] = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Width and height of a cell in pixels.
+     */
+    private double cellSize;
+
+    /**
+     * Keys of the cells in the table. Slots whose cell is null are free.
+     */
+    private long[] keys = new long[64];
+
+    /**
+     * Cells of the table, in the slots of their keys.
+     */
+    private Cell[] table = new Cell[64];
+
+    /**
+     * Number of cells in the table.
+     */
+    private int cellCount = 0;
+
+    /**
+     * Cells that became empty, kept for reuse.
+     */
+    private Cell unused;
+
+    /**
+     * Cells each object is in, as {first column, first row, last column,
+     * last row}.
+     */
+    private Map<GameObject, int[]> ranges = new IdentityHashMap<>();
+
+    /**
+     * Constructs a grid with the default cell size.
+     */
+    public SpatialGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructs a grid.
+     *
+     * @param cellSize Width and height of a cell in pixels.
+     */
+    public SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public void insert(GameObject object) {
+        if (ranges.containsKey(object)) {
+            update(object);
+            return;
+        }
+        int[] range = new int[4];
+        setRange(range, object);
+        ranges.put(object, range);
+        addToCells(object, range);
+    }
+
+    @Override
+    public void remove(GameObject object) {
+        int[] range = ranges.remove(object);
+        if (range != null) {
+            removeFromCells(object, range);
+        }
+    }
+
+    @Override
+    public void update(GameObject object) {
+        int[] range = ranges.get(object);
+        if (range == null) {
+            return;
+        }
+        double x = object.getX();
+        double y = object.getY();
+        int firstColumn = cell(x);
+        int firstRow = cell(y);
+        int lastColumn = cell(x + Math.max(0, object.getWidth()));
+        int lastRow = cell(y + Math.max(0, object.getHeight()));
+        if (firstColumn != range[0] || firstRow != range[1]
+                || lastColumn != range[2] || lastRow != range[3]) {
+            removeFromCells(object, range);
+            range[0] = firstColumn;
+            range[1] = firstRow;
+            range[2] = lastColumn;
+            range[3] = lastRow;
+            addToCells(object, range);
+        }
+    }
+
+    @Override
+    public void query(double x, double y, double width, double height, List<GameObject> result) {
+        int firstColumn = cell(x);
+        int firstRow = cell(y);
+        int lastColumn = cell(x + Math.max(0, width));
+        int lastRow = cell(y + Math.max(0, height));
+        for (int row = firstRow ; row <= lastRow ; row++) {
+            for (int column = firstColumn ; column <= lastColumn ; column++) {
+                Cell cell = get(key(column, row));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0 ; i < cell.size ; i++) {
+                    GameObject o = cell.objects[i];
+                    if (o.getX() < x + width && o.getX() + o.getWidth() > x
+                            && o.getY() < y + height && o.getY() + o.getHeight() > y) {
+                        result.add(o);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, null);
+        cellCount = 0;
+        unused = null;
+        ranges.clear();
+    }
+
+    /**
+     * @return Column or row of the cell that contains a coordinate.
+     */
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    /**
+     * Stores the cells covered by an object in a range.
+     */
+    private void setRange(int[] range, GameObject object) {
+        range[0] = cell(object.getX());
+        range[1] = cell(object.getY());
+        range[2] = cell(object.getX() + Math.max(0, object.getWidth()));
+        range[3] = cell(object.getY() + Math.max(0, object.getHeight()));
+    }
+
+    /**
+     * Adds an object to every cell in the range.
+     */
+    private void addToCells(GameObject object, int[] range) {
+        for (int row = range[1] ; row <= range[3] ; row++) {
+            for (int column = range[0] ; column <= range[2] ; column++) {
+                long key = key(column, row);
+                Cell cell = get(key);
+                if (cell == null) {
+                    cell = unused;
+                    if (cell == null) {
+                        cell = new Cell();
+                    } else {
+                        unused = cell.next;
+                        cell.next = null;
+                    }
+                    put(key, cell);
+                }
+                cell.add(object);
+            }
+        }
+    }
+
+    /**
+     * Removes an object from every cell in the range, dropping cells
+     * that become empty.
+     */
+    private void removeFromCells(GameObject object, int[] range) {
+        for (int row = range[1] ; row <= range[3] ; row++) {
+            for (int column = range[0] ; column <= range[2] ; column++) {
+                long key = key(column, row);
+                Cell cell = get(key);
+                if (cell != null) {
+                    cell.remove(object);
+                    if (cell.size == 0) {
+                        removeCell(key);
+                        cell.next = unused;
+                        unused = cell;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Key of the cell in the given column and row.
+     */
+    private static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    /**
+     * @return First slot of the table a key is looked for in.
+     */
+    private int slot(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & (table.length - 1);
+    }
+
+    /**
+     * @return Cell with the given key, or null.
+     */
+    private Cell get(long key) {
+        int mask = table.length - 1;
+        for (int i = slot(key) ; table[i] != null ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return table[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a cell whose key isn't in the table yet.
+     */
+    private void put(long key, Cell cell) {
+        if ((cellCount + 1) * 4 > table.length * 3) {
+            grow();
+        }
+        int mask = table.length - 1;
+        int i = slot(key);
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        table[i] = cell;
+        cellCount++;
+    }
+
+    /**
+     * Removes the cell with the given key. The cells after it are moved
+     * back into the freed slot where needed, so that lookups never stop
+     * at a gap before reaching them.
+     */
+    private void removeCell(long key) {
+        int mask = table.length - 1;
+        int i = slot(key);
+        while (table[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (table[i] == null) {
+            return;
+        }
+
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (table[j] == null) {
+                break;
+            }
+            int home = slot(keys[j]);
+            // The cell in j can move to i if its home slot isn't
+            // cyclically between i and j.
+            boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!between) {
+                keys[i] = keys[j];
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = null;
+        cellCount--;
+    }
+
+    /**
+     * Doubles the size of the table.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        Cell[] oldTable = table;
+        keys = new long[oldKeys.length * 2];
+        table = new Cell[oldTable.length * 2];
+        int mask = table.length - 1;
+        for (int k = 0 ; k < oldTable.length ; k++) {
+            if (oldTable[k] != null) {
+                int i = slot(oldKeys[k]);
+                while (table[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[k];
+                table[i] = oldTable[k];
+            }
+        }
+    }
+
+    /**
+     * @return Width and height of a cell in pixels.
+     */
+    public double getCellSize() { return cellSize; }
+}
\ No newline at end of file
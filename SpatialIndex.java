@@ -0,0 +1,108 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Index that finds the GameObjects in an area of the game world without
+ * going through every object. A GameObjectList keeps its index up to date
+ * as objects are added, removed and moved, and every camera that draws the
+ * list queries the same index for the objects in its view.
+ */
+public interface SpatialIndex {
+
+    /**
+     * Adds a GameObject to the index.
+     *
+     * @param object GameObject to be added.
+     */
+    void insert(GameObject object);
+
+    /**
+     * Removes a GameObject from the index.
+     *
+     * @param object GameObject to be removed.
+     */
+    void remove(GameObject object);
+
+    /**
+     * Updates the index after a GameObject moved or changed its size.
+     *
+     * @param object GameObject that moved.
+     */
+    void update(GameObject object);
+
+    /**
+     * Finds the GameObjects that intersect a rectangle. An object may be
+     * added to the result more than once.
+     *
+     * @param x X-coordinate of the rectangle.
+     * @param y Y-coordinate of the rectangle.
+     * @param width Width of the rectangle.
+     * @param height Height of the rectangle.
+     * @param result List the objects are added to.
+     */
+    void query(double x, double y, double width, double height, List<GameObject> result);
+
+    /**
+     * Finds the GameObjects that contain a point. An object may be added
+     * to the result more than once.
+     *
+     * @param x X-coordinate of the point.
+     * @param y Y-coordinate of the point.
+     * @param result List the objects are added to.
+     */
+    default void queryPoint(double x, double y, List<GameObject> result) {
+        List<GameObject> found = new ArrayList<>();
+        query(x, y, Math.ulp(x), Math.ulp(y), found);
+        for (GameObject o : found) {
+            if (x >= o.getX() && x < o.getX() + o.getWidth()
+                    && y >= o.getY() && y < o.getY() + o.getHeight()) {
+                result.add(o);
+            }
+        }
+    }
+
+    /**
+     * Finds the first GameObject a ray hits. By default the objects in the
+     * bounding box of the ray are tested one by one.
+     *
+     * @param x X-coordinate of the start of the ray.
+     * @param y Y-coordinate of the start of the ray.
+     * @param dx X-component of the direction of the ray.
+     * @param dy Y-component of the direction of the ray.
+     * @param maxDistance Length of the ray in pixels.
+     * @param filter Test that an object has to pass to be hit, or null.
+     * @return The closest hit, or null if the ray hits nothing.
+     */
+    default RayHit raycast(double x, double y, double dx, double dy,
+                           double maxDistance, Predicate<GameObject> filter) {
+        double length = Math.hypot(dx, dy);
+        if (length == 0) {
+            return null;
+        }
+        double dirX = dx / length;
+        double dirY = dy / length;
+        double endX = x + dirX * maxDistance;
+        double endY = y + dirY * maxDistance;
+
+        List<GameObject> found = new ArrayList<>();
+        query(Math.min(x, endX), Math.min(y, endY),
+              Math.abs(endX - x) + Math.ulp(x), Math.abs(endY - y) + Math.ulp(y), found);
+
+        GameObject closest = null;
+        double best = maxDistance;
+        for (GameObject o : found) {
+            double t = RayHit.enter(o, x, y, dirX, dirY);
+            if (t <= best && (filter == null || filter.test(o))) {
+                best = t;
+                closest = o;
+            }
+        }
+        return closest == null ? null
+            : new RayHit(closest, best, x + dirX * best, y + dirY * best);
+    }
+
+    /**
+     * Removes every GameObject from the index.
+     */
+    void clear();
+}
\ No newline at end of file
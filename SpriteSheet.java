@@ -0,0 +1,116 @@
+import javafx.scene.image.Image;
+
+/**
+ * An image that contains the frames of one or more animations laid out in
+ * a grid. The sheet is sliced once into frame regions, and every frame is
+ * drawn straight from the shared image by its region instead of being
+ * copied into an image of its own, so any number of GameObjects can play
+ * animations from the same sheet.
+ */
+public class SpriteSheet {
+
+    /**
+     * The image that contains the frames.
+     */
+    private Image image;
+
+    /**
+     * Width of a frame in pixels.
+     */
+    private int frameWidth;
+
+    /**
+     * Height of a frame in pixels.
+     */
+    private int frameHeight;
+
+    /**
+     * Region of every frame on the image, four values per frame: x, y,
+     * width and height. Frames are numbered row by row.
+     */
+    private double[] regions;
+
+    /**
+     * Constructs a sheet whose frames fill the whole image without gaps.
+     *
+     * @param image The image that contains the frames.
+     * @param frameWidth Width of a frame in pixels.
+     * @param frameHeight Height of a frame in pixels.
+     */
+    public SpriteSheet(Image image, int frameWidth, int frameHeight) {
+        this(image, frameWidth, frameHeight, 0, 0);
+    }
+
+    /**
+     * Constructs a sheet whose frames are separated by spacing and
+     * surrounded by a margin, like the tile sets made with Tiled.
+     *
+     * @param image The image that contains the frames.
+     * @param frameWidth Width of a frame in pixels.
+     * @param frameHeight Height of a frame in pixels.
+     * @param margin Pixels between the edges of the image and the frames.
+     * @param spacing Pixels between two frames.
+     */
+    public SpriteSheet(Image image, int frameWidth, int frameHeight,
+                       int margin, int spacing) {
+        this.image = image;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+
+        int columns = Math.max(0, ((int) image.getWidth() - 2 * margin + spacing)
+                                  / (frameWidth + spacing));
+        int rows = Math.max(0, ((int) image.getHeight() - 2 * margin + spacing)
+                               / (frameHeight + spacing));
+
+        regions = new double[columns * rows * 4];
+        int i = 0;
+        for (int row = 0 ; row < rows ; row++) {
+            for (int column = 0 ; column < columns ; column++) {
+                regions[i++] = margin + column * (frameWidth + spacing);
+                regions[i++] = margin + row * (frameHeight + spacing);
+                regions[i++] = frameWidth;
+                regions[i++] = frameHeight;
+            }
+        }
+    }
+
+    /**
+     * @param frame Number of the frame.
+     * @return X-coordinate of the frame on the image.
+     */
+    public double getFrameX(int frame) { return regions[frame * 4]; }
+
+    /**
+     * @param frame Number of the frame.
+     * @return Y-coordinate of the frame on the image.
+     */
+    public double getFrameY(int frame) { return regions[frame * 4 + 1]; }
+
+    /**
+     * @return Number of frames on the sheet.
+     */
+    public int getFrameCount() { return regions.length / 4; }
+
+    /**
+     * @return Width of a frame in pixels.
+     */
+    public int getFrameWidth() { return frameWidth; }
+
+    /**
+     * @return Height of a frame in pixels.
+     */
+    public int getFrameHeight() { return frameHeight; }
+
+    /**
+     * @return The image that contains the frames.
+     */
+    public Image getImage() { return image; }
+
+    /**
+     * Replaces the image, for example when it has been edited on disk.
+     * The new image should have the same layout as the old one.
+     *
+     * @param image The image that contains the frames.
+     */
+    public void setImage(Image image) { this.image = image; }
+}
\ No newline at end of file
@@ -26,13 +26,15 @@ public class TestScene extends GameScene {
         super(root);
 
         canvas = new GameCanvas(512, 512);
+        canvas.setSpatialIndex(new AabbTree());
         currentCanvas = canvas;
 
         keyHandler = new KeyHandler(this);
         root.getChildren().add(canvas.getCanvas());
 
-        sun = new GameObject(400, 100, 50, 50, new Image("images/sun.png"), this);
-        sun2 = new GameObject(10, 100, new Image("images/sun.png"), this);
+        AssetCache assets = AssetCache.getDefault();
+        sun = new GameObject(400, 100, 50, 50, assets.getImage("images/sun.png"), this);
+        sun2 = new GameObject(10, 100, assets.getImage("images/sun.png"), this);
 
         sun.setPhysicsType(PhysicsType.SOLID);
         sun2.setPhysicsType(PhysicsType.SOLID);
@@ -46,41 +48,43 @@ public class TestScene extends GameScene {
         //canvas.setBackground(new Image("images/newspace.jpg"));
 
         map = new TileMap(this, Paths.get("images/map1.tmx"), 32, 32, 32, 32);
-        map.createTileSet(new Image("images/tileset1.png"), 2, 2);
+        map.createTileSet("images/tileset1.png", 2, 2);
 
         camera = new GameCamera(0, 0, this);
+        camera.follow(sun);
+        camera.setFollowMode(FollowMode.DEAD_ZONE);
         gravity = new Gravity(2, this);
     }
 
     public void update() {
         
-        camera.center(sun);
+        camera.update();
 
         gravity.pull();
 
         keyHandler.updateKeys();
 
-        if(keyHandler.getKeySet().contains(KeyCode.S)) {
+        if(keyHandler.isDown(KeyCode.S)) {
             sun.moveYCheckCollision(5);
         }
 
-        if(keyHandler.getKeySet().contains(KeyCode.D)) {
+        if(keyHandler.isDown(KeyCode.D)) {
             sun.moveXCheckCollision(5);
         }
 
-        if(keyHandler.getKeySet().contains(KeyCode.W)) {
+        if(keyHandler.isDown(KeyCode.W)) {
             sun.moveYCheckCollision(-5);
         }
 
-        if(keyHandler.getKeySet().contains(KeyCode.A)) {
+        if(keyHandler.isDown(KeyCode.A)) {
             sun.moveXCheckCollision(-5);
         }
 
-        if(keyHandler.getKeySet().contains(KeyCode.H)) {
+        if(keyHandler.wasPressed(KeyCode.H)) {
             gravity.setGravityType(GravityType.HORIZONTAL);
         }
 
-        if(keyHandler.getKeySet().contains(KeyCode.V)) {
+        if(keyHandler.wasPressed(KeyCode.V)) {
             gravity.setGravityType(GravityType.VERTICAL);
         }
 
@@ -93,5 +97,7 @@ public class TestScene extends GameScene {
 
     public TileMap getTileMap() { return map; }
 
+    public KeyHandler getKeyHandler() { return keyHandler; }
+
     public void setCanvas(GameCanvas canvas) { currentCanvas = canvas; }
 }
\ No newline at end of file
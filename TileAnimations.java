@@ -0,0 +1,219 @@
+import java.util.*;
+
+/**
+ * The tile animations of a TileMap. Tiled lets a tile in a tile set play
+ * a sequence of other tiles, for example for water or lava. Instead of
+ * animating every cell separately, this class keeps one table that maps
+ * each tile id to the tile id that is currently shown in its place.
+ * update() advances the table from a shared clock once per frame, which
+ * costs one step per animated tile id no matter how many cells use it.
+ *
+ * The map is divided into square chunks of tiles. For every animation the
+ * chunks that contain it are known, so after an update only the chunks
+ * containing tiles whose frame actually changed need to be redrawn.
+ * Tiles placed while the game runs must be reported with place(), which
+ * TileMap.setTile() does, or they stay frozen and aren't redrawn.
+ */
+public class TileAnimations {
+
+    /**
+     * Width and height of a chunk in tiles.
+     */
+    public static final int CHUNK_SIZE = 16;
+
+    /**
+     * A single animated tile id.
+     */
+    private static class Animation {
+
+        /**
+         * The animated tile id.
+         */
+        private int id;
+
+        /**
+         * Tile ids shown by the frames.
+         */
+        private int[] frames;
+
+        /**
+         * Time at which each frame ends, in milliseconds from the start
+         * of the animation.
+         */
+        private int[] frameEnds;
+
+        /**
+         * Chunks that contain this tile id.
+         */
+        private BitSet chunks = new BitSet();
+    }
+
+    /**
+     * All animations of the map.
+     */
+    private List<Animation> animations = new ArrayList<>();
+
+    /**
+     * Tile id currently shown in place of each tile id.
+     */
+    private int[] shown = new int[0];
+
+    /**
+     * Chunks that contain tiles whose frame changed on the last update.
+     */
+    private BitSet dirtyChunks = new BitSet();
+
+    /**
+     * Chunks in which tiles were placed since the last update.
+     */
+    private BitSet placedChunks = new BitSet();
+
+    /**
+     * Number of chunks across the map.
+     */
+    private int chunksAcross = 0;
+
+    /**
+     * Adds an animation.
+     *
+     * @param id The animated tile id.
+     * @param frames Tile ids shown by the frames.
+     * @param durations Duration of each frame in milliseconds.
+     */
+    public void add(int id, int[] frames, int[] durations) {
+        if (frames.length == 0) {
+            return;
+        }
+
+        Animation animation = new Animation();
+        animation.id = id;
+        animation.frames = frames.clone();
+        animation.frameEnds = new int[durations.length];
+        int end = 0;
+        for (int i = 0 ; i < durations.length ; i++) {
+            end += Math.max(1, durations[i]);
+            animation.frameEnds[i] = end;
+        }
+        animations.add(animation);
+
+        if (id >= shown.length) {
+            int oldLength = shown.length;
+            shown = Arrays.copyOf(shown, id + 1);
+            for (int i = oldLength ; i < shown.length ; i++) {
+                shown[i] = i;
+            }
+        }
+        shown[id] = frames[0];
+    }
+
+    /**
+     * Finds the chunks that contain each animated tile id.
+     *
+     * @param layers Tile layers of the map.
+     * @param width Width of the map in tiles.
+     * @param height Height of the map in tiles.
+     */
+    public void locate(List<TileLayer> layers, int width, int height) {
+        chunksAcross = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (animations.isEmpty()) {
+            return;
+        }
+
+        Animation[] byId = new Animation[shown.length];
+        for (Animation animation : animations) {
+            animation.chunks.clear();
+            byId[animation.id] = animation;
+        }
+
+        for (TileLayer layer : layers) {
+            for (int row = 0 ; row < height ; row++) {
+                for (int column = 0 ; column < width ; column++) {
+                    int id = layer.get(column, row);
+                    if (id < byId.length && byId[id] != null) {
+                        byId[id].chunks.set(getChunk(column, row));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports a tile placed in a layer after locate(). If the tile is
+     * animated, its chunk is added to the chunks of the animation. The
+     * chunk is redrawn after the next update either way.
+     *
+     * @param id Id of the placed tile.
+     * @param column Column of the tile.
+     * @param row Row of the tile.
+     */
+    public void place(int id, int column, int row) {
+        int chunk = getChunk(column, row);
+        placedChunks.set(chunk);
+        for (int i = 0 ; i < animations.size() ; i++) {
+            Animation animation = animations.get(i);
+            if (animation.id == id) {
+                animation.chunks.set(chunk);
+            }
+        }
+    }
+
+    /**
+     * Advances every animation to the given time.
+     *
+     * @param millis Time of the shared clock in milliseconds.
+     * @return Whether any tile changed its frame.
+     */
+    public boolean update(long millis) {
+        dirtyChunks.clear();
+        dirtyChunks.or(placedChunks);
+        placedChunks.clear();
+
+        for (Animation animation : animations) {
+            int[] ends = animation.frameEnds;
+            long time = millis % ends[ends.length - 1];
+            int frame = 0;
+            while (time >= ends[frame]) {
+                frame++;
+            }
+
+            if (shown[animation.id] != animation.frames[frame]) {
+                shown[animation.id] = animation.frames[frame];
+                dirtyChunks.or(animation.chunks);
+            }
+        }
+        return !dirtyChunks.isEmpty();
+    }
+
+    /**
+     * @param id Tile id stored in a layer.
+     * @return Tile id that is currently shown in its place.
+     */
+    public int getShown(int id) {
+        return id < shown.length ? shown[id] : id;
+    }
+
+    /**
+     * @param column Column of a tile.
+     * @param row Row of a tile.
+     * @return Index of the chunk that contains the tile.
+     */
+    public int getChunk(int column, int row) {
+        return (row / CHUNK_SIZE) * chunksAcross + column / CHUNK_SIZE;
+    }
+
+    /**
+     * @return Chunks that contain tiles whose frame changed on the last
+     *         update, or that were placed before it. Chunk (cx, cy) has index cy * getChunksAcross() + cx.
+     */
+    public BitSet getDirtyChunks() { return dirtyChunks; }
+
+    /**
+     * @return Number of chunks across the map.
+     */
+    public int getChunksAcross() { return chunksAcross; }
+
+    /**
+     * @return Whether the map has any animated tiles.
+     */
+    public boolean isEmpty() { return animations.isEmpty(); }
+}
\ No newline at end of file
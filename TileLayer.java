@@ -0,0 +1,392 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * A single tile layer of a TileMap. The tiles are stored row by row in one
+ * contiguous block of memory outside the Java heap, so even very large
+ * layers add nothing for the garbage collector to scan. Each tile takes
+ * as many bytes as the largest tile id the layer has to hold needs: one
+ * byte for tile sets of up to 255 tiles, two for up to 65535 tiles and
+ * four beyond that.
+ *
+ * A layer can also be mapped straight from a file that holds its tiles in
+ * the same layout, written earlier with write(). The operating system then
+ * loads only the parts of the layer that are used, and a 16k x 16k layer
+ * opens instantly.
+ *
+ * Tile id 0 means an empty cell, which is not drawn.
+ */
+public class TileLayer {
+
+    /**
+     * Name of the layer in the .tmx file.
+     */
+    private String name;
+
+    /**
+     * Width of the layer in tiles.
+     */
+    private int width;
+
+    /**
+     * Height of the layer in tiles.
+     */
+    private int height;
+
+    /**
+     * Tiles of the layer, row by row, in little-endian byte order.
+     */
+    private ByteBuffer tiles;
+
+    /**
+     * Whether the tiles are mapped from a file. Direct buffers are
+     * MappedByteBuffers too, so the type of tiles doesn't tell.
+     */
+    private boolean mapped = false;
+
+    /**
+     * Number of bytes used to store a single tile: 1, 2 or 4.
+     */
+    private int bytesPerTile;
+
+    /**
+     * Number of cells that are not empty, or -1 if they haven't been
+     * counted yet.
+     */
+    private int filled = 0;
+
+    /**
+     * Whether the layer is drawn.
+     */
+    private boolean visible = true;
+
+    /**
+     * Whether the layer is drawn on top of the GameObjects instead of
+     * under them.
+     */
+    private boolean foreground = false;
+
+    /**
+     * Whether the tiles of the layer block raycasts.
+     */
+    private boolean solid = false;
+
+    /**
+     * Number of times a tile has been changed.
+     */
+    private int modCount = 0;
+
+    /**
+     * Constructs an empty layer.
+     *
+     * @param name Name of the layer.
+     * @param width Width of the layer in tiles.
+     * @param height Height of the layer in tiles.
+     * @param maxId Largest tile id the layer has to hold.
+     * @throws IllegalArgumentException If the layer needs more than 2 GB.
+     */
+    public TileLayer(String name, int width, int height, int maxId) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+
+        bytesPerTile = maxId <= 0xff ? 1 : maxId <= 0xffff ? 2 : 4;
+        tiles = ByteBuffer.allocateDirect(getByteCount(width, height, bytesPerTile))
+                          .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Constructs a layer on existing storage.
+     *
+     * @param name Name of the layer.
+     * @param width Width of the layer in tiles.
+     * @param height Height of the layer in tiles.
+     * @param tiles Tiles of the layer.
+     * @param bytesPerTile Number of bytes used to store a single tile.
+     */
+    private TileLayer(String name, int width, int height, ByteBuffer tiles, int bytesPerTile) {
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.tiles = tiles;
+        this.bytesPerTile = bytesPerTile;
+
+        // Counting the cells would touch every page of a mapped file, so
+        // it is left until isEmpty() needs it.
+        filled = -1;
+    }
+
+    /**
+     * @param width Width of a layer in tiles.
+     * @param height Height of a layer in tiles.
+     * @param bytesPerTile Number of bytes used to store a single tile.
+     * @return Number of bytes needed for the tiles.
+     * @throws IllegalArgumentException If the layer needs more than 2 GB.
+     */
+    private static int getByteCount(int width, int height, int bytesPerTile) {
+        long bytes = (long) width * height * bytesPerTile;
+        if (width < 0 || height < 0 || bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Layer too large: " + width + "x" + height);
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * Maps a layer from a file written with write(). Changes to a writable
+     * layer go straight to the file, unless the layer has to be widened to
+     * hold a larger tile id, after which it is kept in memory.
+     *
+     * @param name Name of the layer.
+     * @param file File that holds the tiles.
+     * @param width Width of the layer in tiles.
+     * @param height Height of the layer in tiles.
+     * @param bytesPerTile Number of bytes used to store a single tile:
+     *                     1, 2 or 4.
+     * @param writable Whether the layer can be changed. Changing a layer
+     *                 that isn't writable throws ReadOnlyBufferException.
+     * @return The layer.
+     * @throws IOException If the file can't be mapped or its size doesn't
+     *                     match the layer.
+     */
+    public static TileLayer map(String name, Path file, int width, int height,
+                                int bytesPerTile, boolean writable) throws IOException {
+        if (bytesPerTile != 1 && bytesPerTile != 2 && bytesPerTile != 4) {
+            throw new IllegalArgumentException("bytesPerTile must be 1, 2 or 4: " + bytesPerTile);
+        }
+        int bytes = getByteCount(width, height, bytesPerTile);
+
+        try (FileChannel channel = writable
+                ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != bytes) {
+                throw new IOException("Expected " + bytes + " bytes but " + file
+                                      + " has " + channel.size());
+            }
+            MappedByteBuffer tiles = channel.map(writable ? FileChannel.MapMode.READ_WRITE
+                                                          : FileChannel.MapMode.READ_ONLY,
+                                                 0, bytes);
+            tiles.order(ByteOrder.LITTLE_ENDIAN);
+            TileLayer layer = new TileLayer(name, width, height, tiles, bytesPerTile);
+            layer.mapped = true;
+            return layer;
+        }
+    }
+
+    /**
+     * Writes the tiles of the layer to a file that map() can read.
+     *
+     * @param file The file.
+     * @throws IOException If the file can't be written.
+     */
+    public void write(Path file) throws IOException {
+        ByteBuffer data = tiles.duplicate();
+        data.clear();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    /**
+     * @param column Column of the tile.
+     * @param row Row of the tile.
+     * @return Id of the tile, or 0 if the cell is empty.
+     * @throws IndexOutOfBoundsException If the tile is outside the layer.
+     */
+    public int get(int column, int row) {
+        checkBounds(column, row);
+        return get(row * width + column);
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException If the tile is outside the layer.
+     */
+    private void checkBounds(int column, int row) {
+        if (column < 0 || row < 0 || column >= width || row >= height) {
+            throw new IndexOutOfBoundsException("Column: " + column + ", Row: " + row
+                                                + ", Size: " + width + "x" + height);
+        }
+    }
+
+    /**
+     * @param i Index of the tile, row by row.
+     * @return Id of the tile, or 0 if the cell is empty.
+     */
+    private int get(int i) {
+        if (bytesPerTile == 1) {
+            return tiles.get(i) & 0xff;
+        } else if (bytesPerTile == 2) {
+            return tiles.getShort(i << 1) & 0xffff;
+        }
+        return tiles.getInt(i << 2);
+    }
+
+    /**
+     * Sets the id of a tile. The storage is widened if the id doesn't
+     * fit in it. Tiles of a map that is being drawn should be placed with
+     * TileMap.setTile(), which also updates the tile animations.
+     *
+     * @param column Column of the tile.
+     * @param row Row of the tile.
+     * @param id Id of the tile, or 0 for an empty cell.
+     * @throws ReadOnlyBufferException If the layer is mapped from a file
+     *                                 without write access.
+     * @throws IndexOutOfBoundsException If the tile is outside the layer.
+     */
+    public void set(int column, int row, int id) {
+        checkBounds(column, row);
+        int i = row * width + column;
+        int old = get(i);
+        if (old == id) {
+            return;
+        }
+        if (tiles.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+
+        if ((bytesPerTile == 1 && id > 0xff) || (bytesPerTile == 2 && id > 0xffff)) {
+            widen(id);
+        }
+
+        if (bytesPerTile == 1) {
+            tiles.put(i, (byte) id);
+        } else if (bytesPerTile == 2) {
+            tiles.putShort(i << 1, (short) id);
+        } else {
+            tiles.putInt(i << 2, id);
+        }
+
+        if (filled >= 0) {
+            if (old == 0) {
+                filled++;
+            } else if (id == 0) {
+                filled--;
+            }
+        }
+        modCount++;
+    }
+
+    /**
+     * Moves the tiles into storage that can hold the given id.
+     *
+     * @param maxId Largest tile id the layer has to hold.
+     */
+    private void widen(int maxId) {
+        TileLayer wider = new TileLayer(name, width, height, maxId);
+        for (int row = 0 ; row < height ; row++) {
+            wider.copyRow(this, row);
+        }
+        tiles = wider.tiles;
+        mapped = false;
+        bytesPerTile = wider.bytesPerTile;
+    }
+
+    /**
+     * @param other Layer of the same size.
+     * @param row Row to compare.
+     * @return Whether the row has the same tiles in both layers.
+     */
+    public boolean rowEquals(TileLayer other, int row) {
+        for (int column = 0 ; column < width ; column++) {
+            if (get(column, row) != other.get(column, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies a row of tiles from another layer of the same size.
+     *
+     * @param other Layer the tiles are copied from.
+     * @param row Row to copy.
+     */
+    public void copyRow(TileLayer other, int row) {
+        for (int column = 0 ; column < width ; column++) {
+            set(column, row, other.get(column, row));
+        }
+    }
+
+    /**
+     * @return Number of times a tile has been changed.
+     */
+    public int getModCount() { return modCount; }
+
+    /**
+     * @return Whether every cell of the layer is empty.
+     */
+    public boolean isEmpty() {
+        if (filled < 0) {
+            filled = 0;
+            for (int i = 0 ; i < width * height ; i++) {
+                if (get(i) != 0) {
+                    filled++;
+                }
+            }
+        }
+        return filled == 0;
+    }
+
+    /**
+     * @return Name of the layer in the .tmx file.
+     */
+    public String getName() { return name; }
+
+    /**
+     * @return Width of the layer in tiles.
+     */
+    public int getWidth() { return width; }
+
+    /**
+     * @return Height of the layer in tiles.
+     */
+    public int getHeight() { return height; }
+
+    /**
+     * @return Number of bytes used to store a single tile.
+     */
+    public int getBytesPerTile() { return bytesPerTile; }
+
+    /**
+     * @return Whether the tiles are mapped from a file.
+     */
+    public boolean isMapped() { return mapped; }
+
+    /**
+     * @return Whether the layer is drawn.
+     */
+    public boolean isVisible() { return visible; }
+
+    /**
+     * @param visible Whether the layer is drawn.
+     */
+    public void setVisible(boolean visible) { this.visible = visible; }
+
+    /**
+     * @return Whether the layer is drawn on top of the GameObjects.
+     */
+    public boolean isForeground() { return foreground; }
+
+    /**
+     * @param foreground Whether the layer is drawn on top of the
+     *                   GameObjects instead of under them.
+     */
+    public void setForeground(boolean foreground) { this.foreground = foreground; }
+
+    /**
+     * @return Whether the tiles of the layer block raycasts.
+     */
+    public boolean isSolid() { return solid; }
+
+    /**
+     * @param solid Whether the tiles of the layer block raycasts.
+     */
+    public void setSolid(boolean solid) { this.solid = solid; }
+}
\ No newline at end of file
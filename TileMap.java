@@ -3,17 +3,22 @@ import javafx.scene.image.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Class for adding a map created by Tiled maps generator. 
  * 
- * It works best with a tiled maps file with a maximum of one tile layer
+ * It works best with a tiled maps file with CSV encoded tile layers
  * and a maximum of one object layer.
  * 
  * It creates a tile set based on a specified image, reads the .tmx file
- * and creates a 2D array of the tile layer for drawing it with the tile set.
- * To avoid errors, the same tile set image should be used in both Tiled
- * and the program code.
+ * and creates a TileLayer of each tile layer for drawing it with the tile
+ * set. To avoid errors, the same tile set image should be used in both
+ * Tiled and the program code. Layers whose name contains "foreground" are
+ * drawn on top of the GameObjects, and layers whose name contains
+ * "collision" are not drawn at all. The tiles of collision layers are
+ * solid for raycasts.
  * 
  * It also creates solid, invisible GameObjects from the object layer 
  * in the .tmx file. The graphics of the invisible objects should be 
@@ -48,10 +53,64 @@ public class TileMap {
     private List<Image> tileSet;
 
     /**
-     * 2-dimensional array representing the map. Each index has a value
+     * The image the current tile set was sliced from by
+     * createTileSet(Image, int, int), or null.
+     */
+    private Image tileSetImage;
+
+    /**
+     * Number of rows of tiles the current tile set was sliced into.
+     */
+    private int tileSetRows;
+
+    /**
+     * Number of columns of tiles the current tile set was sliced into.
+     */
+    private int tileSetColumns;
+
+    /**
+     * Tile layers of the map in drawing order. Each tile has a value
      * depending on the position of the tile's graphics in the tileset image.
      */
-    private int[][] tiles;
+    private List<TileLayer> layers = new ArrayList<>();
+
+    /**
+     * Animated tiles of the map's tile sets.
+     */
+    private TileAnimations animations = new TileAnimations();
+
+    /**
+     * Solid GameObjects created from the object layer of the map.
+     */
+    private List<GameObject> mapObjects = new ArrayList<>();
+
+    /**
+     * Incremented when a tile changes or the map is reloaded.
+     */
+    private int version = 0;
+
+    /**
+     * Total number of tile changes in the layers when the version
+     * was last checked.
+     */
+    private int lastModCount = 0;
+
+    /**
+     * Tiles that can't be walked through, or null if they have to be
+     * worked out again.
+     */
+    private BitSet blockedTiles;
+
+    /**
+     * Version of the map blockedTiles was worked out at.
+     */
+    private int blockedVersion;
+
+    /**
+     * Path of the tile set image given to createTileSet(String, int, int),
+     * or null if the tile set was created from an Image.
+     */
+    private String tileSetPath;
 
     /**
      * Canvas that the map is drawn on.
@@ -81,7 +140,25 @@ public class TileMap {
      */
     public TileMap(GameScene scene, Path source, int mapWidth, int mapHeight,
                     double tileWidth, double tileHeight) {
+        this(scene.getCanvas(), source, mapWidth, mapHeight, tileWidth, tileHeight);
         this.scene = scene;
+    }
+
+    /**
+     * Constructs the map on a canvas that doesn't belong to a scene yet,
+     * for example while SceneManager prepares the next scene in the
+     * background. draw() and drawForeground() without a camera need
+     * the scene, which can be given later with setScene().
+     * 
+     * @param canvas Canvas that the map and its objects belong to.
+     * @param source Path of the Tiled maps file used.
+     * @param mapWidth Width of the map in tiles.
+     * @param mapHeight Height of the map in tiles.
+     * @param tileWidth Width of a single tile in pixels.
+     * @param tileHeight Width of a single tile in pixels.
+     */
+    public TileMap(GameCanvas canvas, Path source, int mapWidth, int mapHeight,
+                    double tileWidth, double tileHeight) {
         this.source = source;
 
         this.mapWidth = mapWidth;
@@ -89,8 +166,7 @@ public class TileMap {
         this.tileWidth = tileWidth;
         this.tileHeight = tileHeight;
 
-        tiles = new int[mapHeight][mapWidth];
-        canvas = scene.getCanvas();
+        this.canvas = canvas;
 
         createTileArray();
         createObjects();
@@ -98,64 +174,189 @@ public class TileMap {
 
     /**
      * Creates a tile set based on a single image with all the tiles.
+     * Calling this again with the same image and layout keeps the
+     * tiles that were already sliced.
      * 
      * @param image The image that is divided into smaller pieces.
      * @param rows Number of rows of tiles on the image.
      * @param columns Number of columns of tiles on the image.
      */
     public void createTileSet(Image image, int rows, int columns) {
-        tileSet = new ArrayList<>();
+        if (tileSet != null && image == tileSetImage
+                && rows == tileSetRows && columns == tileSetColumns) {
+            return;
+        }
 
-        PixelReader reader = image.getPixelReader();
+        tileSet = AssetCache.slice(image, (int) tileWidth, (int) tileHeight,
+                                   rows, columns);
+        tileSetImage = image;
+        tileSetPath = null;
+        tileSetRows = rows;
+        tileSetColumns = columns;
+    }
 
-        for (int i = 0 ; i < columns ; i++) {
-            for (int j = 0 ; j < rows ; j++) {
-                WritableImage newImage = new WritableImage(reader, 
-                        j * (int) tileWidth, i * (int) tileHeight, 
-                        (int) tileWidth, (int) tileHeight);
-                tileSet.add(newImage);
-            }
+    /**
+     * Creates a tile set based on the image in the given path, using the
+     * shared AssetCache. The image is decoded and sliced only once, and
+     * every TileMap that uses the same tile set shares the same tiles.
+     * 
+     * @param path Path of the image that is divided into smaller pieces.
+     * @param rows Number of rows of tiles on the image.
+     * @param columns Number of columns of tiles on the image.
+     */
+    public void createTileSet(String path, int rows, int columns) {
+        tileSet = AssetCache.getDefault().getTileSet(path,
+                (int) tileWidth, (int) tileHeight, rows, columns);
+        tileSetImage = null;
+        tileSetPath = path;
+        tileSetRows = rows;
+        tileSetColumns = columns;
+    }
+
+    /**
+     * Takes the tiles again from the shared AssetCache. Used after the
+     * tile set image has been replaced in the cache. Does nothing if the
+     * tile set was not created from a path.
+     */
+    public void reloadTileSet() {
+        if (tileSetPath != null) {
+            createTileSet(tileSetPath, tileSetRows, tileSetColumns);
+            canvas.invalidate();
         }
     }
 
     /**
-     * Creates a 2-dimensional array representing the tiles on the map.
-     * Each tile has a value which determines what image will be drawn
-     * in its position.
+     * Creates the tile layers of the map. Each tile has a value which
+     * determines what image will be drawn in its position.
      */
     public void createTileArray() {
-        List<String> strings = Arrays.asList("");
-        int startingLine = 0;
-        
-        try {
-            strings = Files.readAllLines(source);
-            
-            // The line before the tile layer description in the .tmx file 
-            // starts with "<data". The index of that line is used as a 
-            // starting point for converting the layer description into 
-            // integers.
-            for (String s : strings) {
-                if (s.contains("<data")) {
-                    startingLine = strings.indexOf(s);
+        List<String> strings = readSource();
+        if (strings == null) {
+            strings = Collections.emptyList();
+        }
+        layers = readLayers(strings);
+        animations = readAnimations(strings);
+        animations.locate(layers, mapWidth, mapHeight);
+    }
+
+    /**
+     * Reads every tile layer of a .tmx file.
+     * 
+     * @param strings Lines of the .tmx file.
+     * @return The tile layers in drawing order.
+     */
+    private List<TileLayer> readLayers(List<String> strings) {
+        List<TileLayer> result = new ArrayList<>();
+        int maxId = readMaxTileId(strings);
+        String name = "";
+
+        for (int line = 0 ; line < strings.size() ; line++) {
+            String s = strings.get(line);
+
+            // Each tile layer starts with a "<layer" line that contains the
+            // name of the layer. The line before the tile layer description
+            // starts with "<data", and the rows start on the line below it.
+            if (s.contains("<layer")) {
+                name = readAttribute(s, "name");
+            }
+
+            if (s.contains("<data")) {
+                TileLayer layer = new TileLayer(name, mapWidth, mapHeight, maxId);
+
+                // Split each row to a String array containing only numbers
+                // in String form, and convert them into tile ids. The
+                // highest bits of a tile id are flip flags, which are
+                // not supported, so they are cleared.
+                for (int i = 0 ; i < mapHeight ; i++) { 
+                    String[] tmp = strings.get(line + 1 + i).split(",");
+
+                    for (int j = 0 ; j < Math.min(tmp.length, mapWidth) ; j++) {
+                        long id = Long.parseLong(tmp[j].trim());
+                        layer.set(j, i, (int) (id & 0x1fffffff));
+                    }
                 }
-            }    
-        } catch (IOException e) {
-            e.printStackTrace();
+
+                String lower = name.toLowerCase();
+                layer.setForeground(lower.contains("foreground"));
+                layer.setVisible(!lower.contains("collision"));
+                layer.setSolid(lower.contains("collision"));
+
+                result.add(layer);
+                line += mapHeight;
+            }
         }
-        
-        // Iterate the rows starting from the line below the starting point,
-        // splitting each row to a String array containing only numbers
-        // in String form.
-        for (int i = 0 ; i < mapHeight ; i++) { 
-            String[] tmp = strings.get(i + startingLine + 1).split(",");
-
-            // Convert the resulting String array into integers and assign
-            // the integers into the 2-dimensional array.
-            for (int j = 0 ; j < tmp.length ; j++) {
-                String s = tmp[j];
-                tiles[i][j] = Integer.parseInt(s);
+        return result;
+    }
+
+    /**
+     * Reads the tile animations of the tile sets embedded in a .tmx file.
+     * Each animated tile is described by a "<tile" line followed by
+     * "<frame" lines with the tile id and duration of every frame.
+     * 
+     * @param strings Lines of the .tmx file.
+     * @return The animations.
+     */
+    private TileAnimations readAnimations(List<String> strings) {
+        TileAnimations result = new TileAnimations();
+        int firstId = 1;
+        int animatedId = -1;
+        List<Integer> frames = new ArrayList<>();
+        List<Integer> durations = new ArrayList<>();
+
+        for (String s : strings) {
+            if (s.contains("<tileset")) {
+                String first = readAttribute(s, "firstgid");
+                firstId = first.isEmpty() ? 1 : Integer.parseInt(first);
+            } else if (s.contains("<tile ")) {
+                animatedId = firstId + Integer.parseInt(readAttribute(s, "id"));
+            } else if (s.contains("<frame")) {
+                frames.add(firstId + Integer.parseInt(readAttribute(s, "tileid")));
+                durations.add(Integer.parseInt(readAttribute(s, "duration")));
+            } else if (s.contains("</animation")) {
+                int[] f = new int[frames.size()];
+                int[] d = new int[durations.size()];
+                for (int i = 0 ; i < f.length ; i++) {
+                    f[i] = frames.get(i);
+                    d[i] = durations.get(i);
+                }
+                result.add(animatedId, f, d);
+                frames.clear();
+                durations.clear();
             }
         }
+        return result;
+    }
+
+    /**
+     * Finds the largest tile id of the tile sets of a .tmx file, so that
+     * the layers can choose their storage without widening it later.
+     * 
+     * @param strings Lines of the .tmx file.
+     * @return Largest tile id, or 0 if the tile sets don't specify it.
+     */
+    private int readMaxTileId(List<String> strings) {
+        int maxId = 0;
+        for (String s : strings) {
+            if (s.contains("<tileset")) {
+                String firstId = readAttribute(s, "firstgid");
+                String count = readAttribute(s, "tilecount");
+                if (!firstId.isEmpty() && !count.isEmpty()) {
+                    maxId = Math.max(maxId, Integer.parseInt(firstId)
+                                            + Integer.parseInt(count) - 1);
+                }
+            }
+        }
+        return maxId;
+    }
+
+    /**
+     * @param line Line of a .tmx file.
+     * @param attribute Name of an attribute.
+     * @return Value of the attribute on the line, or an empty String.
+     */
+    private static String readAttribute(String line, String attribute) {
+        Matcher m = Pattern.compile("\\b" + attribute + "=\"([^\"]*)\"").matcher(line);
+        return m.find() ? m.group(1) : "";
     }
 
     /**
@@ -163,33 +364,46 @@ public class TileMap {
      * object layer. Does nothing if there is no object layer.
      */
     public void createObjects() {
-        List<String> strings = Arrays.asList("");
+        List<String> strings = readSource();
+        if (strings == null) {
+            return;
+        }
+        for (double[] r : readObjects(strings)) {
+            GameObject o = new GameObject(r[0], r[1], r[2], r[3]);
+            mapObjects.add(o);
+            canvas.add(o);
+        }
+    }
+
+    /**
+     * Reads the rectangles of the object layer of a .tmx file.
+     * 
+     * @param strings Lines of the .tmx file.
+     * @return Rectangles as {x, y, width, height} arrays. Empty if there
+     *         is no object layer.
+     */
+    private List<double[]> readObjects(List<String> strings) {
+        List<double[]> rects = new ArrayList<>();
         int startingLine = 0;
         int endingLine = 0;
-        
-        try {
-            strings = Files.readAllLines(source);
-            
-            // The line before the object group description in the .tmx file
-            // starts with "<objectgroup". The index of that line is used as a
-            // starting point for converting the layer description into
-            // Strings, which are later converted into integers.
-            for (String s : strings) {
-                if (s.contains("<objectgroup")) {
-                    startingLine = strings.indexOf(s);
-                }
 
-                // The line after the object group description in the .tmx file
-                // starts with "</objectgroup". The index of that line is used
-                // as an ending point for converting the layer description into
-                // Strings, which are later converted into integers.
-                if (s.contains("</objectgroup")) {
-                    endingLine = strings.indexOf(s);
-                }
-            }    
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        // The line before the object group description in the .tmx file
+        // starts with "<objectgroup". The index of that line is used as a
+        // starting point for converting the layer description into
+        // Strings, which are later converted into integers.
+        for (String s : strings) {
+            if (s.contains("<objectgroup")) {
+                startingLine = strings.indexOf(s);
+            }
+
+            // The line after the object group description in the .tmx file
+            // starts with "</objectgroup". The index of that line is used
+            // as an ending point for converting the layer description into
+            // Strings, which are later converted into integers.
+            if (s.contains("</objectgroup")) {
+                endingLine = strings.indexOf(s);
+            }
+        }    
 
         // Only iterate the array if startingLine or endingLine have been
         // changed, which means the .tmx file contains an object layer.
@@ -234,11 +448,11 @@ public class TileMap {
                         h = Double.parseDouble(s.replaceAll("[^\\d.-]", ""));
                     }
 
-                    // When all four attributes have been specified, create
-                    // a new GameObject with the attributes, and reset the
+                    // When all four attributes have been specified, store
+                    // the rectangle for creating a GameObject, and reset the
                     // attributes to 0.
                     if (x != 0 && y != 0 && w != 0 && h != 0) {
-                        canvas.add(new GameObject(x, y, w, h));
+                        rects.add(new double[] {x, y, w, h});
                         x = 0;
                         y = 0;
                         w = 0;
@@ -247,18 +461,269 @@ public class TileMap {
                 }
             }
         }
+        return rects;
+    }
+
+    /**
+     * @return Lines of the .tmx file, or null if the file can't be read.
+     */
+    private List<String> readSource() {
+        try {
+            return Files.readAllLines(source);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reloads the map from the .tmx file. If the file can't be read, the
+     * map is left as it was.
+     * 
+     * @return Number of tile rows and objects that changed.
+     * @see #reload(List)
+     */
+    public int reload() {
+        List<String> strings = readSource();
+        return strings == null ? 0 : reload(strings);
     }
 
     /**
-     * Draw the TileMap on the canvas using the created tileset.
+     * Updates the map from the given lines of a .tmx file without
+     * rebuilding it. Only the tile rows that changed are swapped in, and
+     * only the objects that were added to or removed from the object layer
+     * are added to or removed from the canvas. Layers mapped from files
+     * with TileLayer.map() are left as they are, as the file holds their
+     * tiles instead of the .tmx file. If the lines can't be
+     * parsed, have no map element or no tile layers, for example while an
+     * editor is still writing the file, the map is left as it was.
+     * 
+     * @param strings Lines of the .tmx file.
+     * @return Number of tile rows and objects that changed.
+     */
+    public int reload(List<String> strings) {
+        List<TileLayer> newLayers;
+        TileAnimations newAnimations;
+        List<double[]> rects;
+        try {
+            if (strings.stream().noneMatch(line -> line.contains("<map"))) {
+                return 0;
+            }
+            newLayers = readLayers(strings);
+            newAnimations = readAnimations(strings);
+            rects = readObjects(strings);
+        } catch (RuntimeException e) {
+            // A file that was cut short fails somewhere in the middle.
+            e.printStackTrace();
+            return 0;
+        }
+        if (newLayers.isEmpty()) {
+            return 0;
+        }
+
+        int changed = 0;
+        if (sameLayers(newLayers)) {
+            for (int l = 0 ; l < layers.size() ; l++) {
+                TileLayer layer = layers.get(l);
+                if (layer.isMapped()) {
+                    continue;
+                }
+                for (int i = 0 ; i < mapHeight ; i++) {
+                    if (!layer.rowEquals(newLayers.get(l), i)) {
+                        layer.copyRow(newLayers.get(l), i);
+                        changed++;
+                    }
+                }
+            }
+        } else {
+            // Layers were added, removed or renamed, so the rows can't
+            // be matched. Replace all of them, except the layers mapped
+            // from files, which stay where they were.
+            List<TileLayer> merged = new ArrayList<>(newLayers);
+            for (int l = 0 ; l < layers.size() ; l++) {
+                TileLayer layer = layers.get(l);
+                if (!layer.isMapped()) {
+                    continue;
+                }
+                int index = -1;
+                for (int n = 0 ; n < merged.size() ; n++) {
+                    if (merged.get(n).getName().equals(layer.getName())) {
+                        index = n;
+                        break;
+                    }
+                }
+                if (index >= 0) {
+                    merged.set(index, layer);
+                } else {
+                    merged.add(Math.min(l, merged.size()), layer);
+                }
+            }
+            for (TileLayer layer : merged) {
+                if (!layer.isMapped()) {
+                    changed += mapHeight;
+                }
+            }
+            layers = merged;
+        }
+        animations = newAnimations;
+        animations.locate(layers, mapWidth, mapHeight);
+
+        // Keep the objects whose rectangle didn't change, so that only
+        // added and removed objects touch the canvas.
+        // Objects with the same rectangle are kept in a queue, so each
+        // matching rectangle keeps one of them.
+        Map<String, Deque<GameObject>> oldObjects = new HashMap<>();
+        for (GameObject o : mapObjects) {
+            oldObjects.computeIfAbsent(rectKey(o.getX(), o.getY(), o.getWidth(), o.getHeight()),
+                                       k -> new ArrayDeque<>()).add(o);
+        }
+
+        List<GameObject> newObjects = new ArrayList<>();
+        for (double[] r : rects) {
+            Deque<GameObject> same = oldObjects.get(rectKey(r[0], r[1], r[2], r[3]));
+            GameObject o = same == null ? null : same.poll();
+            if (o == null) {
+                o = new GameObject(r[0], r[1], r[2], r[3]);
+                canvas.add(o);
+                changed++;
+            }
+            newObjects.add(o);
+        }
+
+        for (Deque<GameObject> same : oldObjects.values()) {
+            for (GameObject o : same) {
+                canvas.remove(o);
+                changed++;
+            }
+        }
+        mapObjects = newObjects;
+
+        if (changed > 0) {
+            version++;
+            canvas.invalidate();
+        }
+        return changed;
+    }
+
+    /**
+     * @param newLayers Layers read from a .tmx file.
+     * @return Whether the layers have the same names in the same order
+     *         as the layers of this map.
+     */
+    private boolean sameLayers(List<TileLayer> newLayers) {
+        if (newLayers.size() != layers.size()) {
+            return false;
+        }
+        for (int l = 0 ; l < layers.size() ; l++) {
+            if (!layers.get(l).getName().equals(newLayers.get(l).getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Key that identifies an object layer rectangle.
+     */
+    private static String rectKey(double x, double y, double w, double h) {
+        return x + "," + y + "," + w + "," + h;
+    }
+
+    /**
+     * Advances the animated tiles to the given time of the shared clock.
+     * Costs one step per animated tile id, not per animated cell.
+     * 
+     * @param millis Time of the shared clock in milliseconds.
+     * @return Whether any tile changed its frame.
+     */
+    public boolean updateAnimations(long millis) {
+        return animations.update(millis);
+    }
+
+    /**
+     * Draw the layers of the TileMap that go under the GameObjects on the
+     * canvas using the created tileset.
      */
     public void draw() {
-        for (int i = 0 ; i < mapHeight ; i++) {
-            for (int j = 0 ; j < mapWidth ; j++) {
-                canvas.draw(scene.getGameCamera(),
-                            tileSet.get(tiles[i][j] - 1),
-                            j * tileWidth,
-                            i * tileHeight);
+        GameCamera camera = scene.getGameCamera();
+        draw(camera, camera.getSnappedX(), camera.getSnappedY(),
+             canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Draw the layers of the TileMap that go under the GameObjects, 
+     * limited to an area of the game world.
+     * 
+     * @param camera Camera that adjusts the drawing location.
+     * @param x X-coordinate of the area in the game world.
+     * @param y Y-coordinate of the area in the game world.
+     * @param width Width of the area.
+     * @param height Height of the area.
+     */
+    public void draw(GameCamera camera, double x, double y, double width, double height) {
+        drawLayers(false, camera, x, y, width, height);
+    }
+
+    /**
+     * Draw the foreground layers of the TileMap, which go on top of the
+     * GameObjects, on the canvas using the created tileset.
+     */
+    public void drawForeground() {
+        GameCamera camera = scene.getGameCamera();
+        drawForeground(camera, camera.getSnappedX(), camera.getSnappedY(),
+                       canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Draw the foreground layers of the TileMap, limited to an area of
+     * the game world.
+     * 
+     * @param camera Camera that adjusts the drawing location.
+     * @param x X-coordinate of the area in the game world.
+     * @param y Y-coordinate of the area in the game world.
+     * @param width Width of the area.
+     * @param height Height of the area.
+     */
+    public void drawForeground(GameCamera camera, double x, double y, double width, double height) {
+        drawLayers(true, camera, x, y, width, height);
+    }
+
+    /**
+     * Draws the visible layers that are either foreground or not. Only
+     * the tiles inside the area are drawn, and empty cells are skipped.
+     * 
+     * @param foreground Whether to draw the foreground layers or the others.
+     * @param camera Camera that adjusts the drawing location.
+     * @param x X-coordinate of the area in the game world.
+     * @param y Y-coordinate of the area in the game world.
+     * @param width Width of the area.
+     * @param height Height of the area.
+     */
+    private void drawLayers(boolean foreground, GameCamera camera,
+                            double x, double y, double width, double height) {
+        int firstColumn = Math.max(0, (int) Math.floor(x / tileWidth));
+        int firstRow = Math.max(0, (int) Math.floor(y / tileHeight));
+        int lastColumn = Math.min(mapWidth - 1,
+                (int) Math.floor((x + width) / tileWidth));
+        int lastRow = Math.min(mapHeight - 1,
+                (int) Math.floor((y + height) / tileHeight));
+
+        for (TileLayer layer : layers) {
+            if (layer.isForeground() != foreground
+                    || !layer.isVisible() || layer.isEmpty()) {
+                continue;
+            }
+
+            for (int i = firstRow ; i <= lastRow ; i++) {
+                for (int j = firstColumn ; j <= lastColumn ; j++) {
+                    int id = layer.get(j, i);
+                    if (id != 0) {
+                        canvas.draw(camera,
+                                    tileSet.get(animations.getShown(id) - 1),
+                                    j * tileWidth,
+                                    i * tileHeight);
+                    }
+                }
             }
         }
     }
@@ -323,15 +788,202 @@ public class TileMap {
      */
     public void setSource(Path source) { this.source = source; }
     
+    /**
+     * @return Path of the tile set image, or null if the tile set
+     *         was created from an Image.
+     */
+    public String getTileSetPath() { return tileSetPath; }
+
+    /**
+     * @return Solid GameObjects created from the object layer of the map.
+     */
+    public List<GameObject> getMapObjects() { return mapObjects; }
+
     /**
      * @return Tileset used to draw the tiles on the canvas.
      */
     public List<Image> getTileSet() { return tileSet; }
 
     /**
-     * @return 2-dimensional array representing the map with each
+     * @return Animated tiles of the map.
+     */
+    public TileAnimations getAnimations() { return animations; }
+
+    /**
+     * @param scene Scene whose camera draw() and drawForeground() use.
+     */
+    public void setScene(GameScene scene) { this.scene = scene; }
+
+    /**
+     * @return Tile layers of the map in drawing order.
+     */
+    public List<TileLayer> getLayers() { return layers; }
+
+    /**
+     * Replaces a tile layer, for example with one mapped from a file with
+     * TileLayer.map(). The new layer keeps the drawing order of the old one
+     * and takes over whether it is visible, foreground and solid.
+     *
+     * @param index Index of the layer in drawing order.
+     * @param layer The new layer, which must be as large as the map.
+     * @throws IllegalArgumentException If the layer has the wrong size.
+     */
+    public void setLayer(int index, TileLayer layer) {
+        if (layer.getWidth() != mapWidth || layer.getHeight() != mapHeight) {
+            throw new IllegalArgumentException("Layer is " + layer.getWidth() + "x"
+                    + layer.getHeight() + " but the map is " + mapWidth + "x" + mapHeight);
+        }
+        TileLayer old = layers.get(index);
+        layer.setVisible(old.isVisible());
+        layer.setForeground(old.isForeground());
+        layer.setSolid(old.isSolid());
+        layers.set(index, layer);
+        animations.locate(layers, mapWidth, mapHeight);
+        version++;
+        canvas.invalidate();
+    }
+
+    /**
+     * Places a tile while the game runs. Unlike TileLayer.set(), the tile
+     * animations learn about the tile, so an animated tile plays, and its
+     * chunk is redrawn on the next frame without invalidating the canvas.
+     *
+     * @param layer Index of the layer in drawing order.
+     * @param column Column of the tile.
+     * @param row Row of the tile.
+     * @param id Id of the tile, or 0 for an empty cell.
+     * @throws IndexOutOfBoundsException If the tile is outside the map.
+     */
+    public void setTile(int layer, int column, int row, int id) {
+        layers.get(layer).set(column, row, id);
+        animations.place(id, column, row);
+    }
+
+    /**
+     * @param column Column of the tile.
+     * @param row Row of the tile.
+     * @return Whether any solid layer has a tile in the cell. Cells
+     *         outside the map are not solid.
+     */
+    public boolean isSolid(int column, int row) {
+        if (column < 0 || row < 0 || column >= mapWidth || row >= mapHeight) {
+            return false;
+        }
+        for (int l = 0 ; l < layers.size() ; l++) {
+            TileLayer layer = layers.get(l);
+            if (layer.isSolid() && layer.get(column, row) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Number that changes every time a tile is changed or the map
+     *         is reloaded. Used to find out when cached paths and other
+     *         data computed from the tiles are out of date.
+     */
+    public int getVersion() {
+        int modCount = 0;
+        for (int l = 0 ; l < layers.size() ; l++) {
+            modCount += layers.get(l).getModCount();
+        }
+        if (modCount != lastModCount) {
+            lastModCount = modCount;
+            version++;
+        }
+        return version;
+    }
+
+    /**
+     * Works out which tiles can't be walked through: solid tiles and
+     * tiles that a GameObject of the object layer covers even partly.
+     * The result is kept until the map changes.
+     * 
+     * @return Tile ids of the blocked tiles, where the tile id is
+     *         row * map width + column. Must not be changed.
+     */
+    public BitSet getBlockedTiles() {
+        int currentVersion = getVersion();
+        if (blockedTiles != null && blockedVersion == currentVersion) {
+            return blockedTiles;
+        }
+
+        BitSet blocked = new BitSet(mapWidth * mapHeight);
+        for (int row = 0 ; row < mapHeight ; row++) {
+            for (int column = 0 ; column < mapWidth ; column++) {
+                if (isSolid(column, row)) {
+                    blocked.set(row * mapWidth + column);
+                }
+            }
+        }
+
+        for (GameObject o : mapObjects) {
+            int firstColumn = Math.max(0, (int) Math.floor(o.getX() / tileWidth));
+            int firstRow = Math.max(0, (int) Math.floor(o.getY() / tileHeight));
+            int lastColumn = Math.min(mapWidth - 1,
+                    (int) Math.ceil((o.getX() + o.getWidth()) / tileWidth) - 1);
+            int lastRow = Math.min(mapHeight - 1,
+                    (int) Math.ceil((o.getY() + o.getHeight()) / tileHeight) - 1);
+            for (int row = firstRow ; row <= lastRow ; row++) {
+                if (lastColumn >= firstColumn) {
+                    blocked.set(row * mapWidth + firstColumn, row * mapWidth + lastColumn + 1);
+                }
+            }
+        }
+
+        blockedTiles = blocked;
+        blockedVersion = currentVersion;
+        return blocked;
+    }
+
+    /**
+     * @return Whether the map has any solid tiles.
+     */
+    public boolean hasSolidTiles() {
+        for (TileLayer layer : layers) {
+            if (layer.isSolid() && !layer.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param name Name of the layer in the .tmx file.
+     * @return The first layer with the given name, or null.
+     */
+    public TileLayer getLayer(String name) {
+        for (TileLayer layer : layers) {
+            if (layer.getName().equals(name)) {
+                return layer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies the first tile layer into a new array on every call, which
+     * takes 4 bytes per tile of heap, so it shouldn't be used on large
+     * maps. Changes to the returned array don't change the map.
+     *
+     * @return 2-dimensional copy of the first tile layer, with each
      *         tile having an integer corresponding to a tile
      *         in the tileset.
+     * @deprecated Read the tiles with getLayers() and TileLayer.get(),
+     *             and change them with setTile(), instead.
      */
-    public int[][] getTiles() { return tiles; }
+    @Deprecated
+    public int[][] getTiles() {
+        int[][] tiles = new int[mapHeight][mapWidth];
+        if (!layers.isEmpty()) {
+            TileLayer layer = layers.get(0);
+            for (int i = 0 ; i < mapHeight ; i++) {
+                for (int j = 0 ; j < mapWidth ; j++) {
+                    tiles[i][j] = layer.get(j, i);
+                }
+            }
+        }
+        return tiles;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+/**
+ * A path found by PathFinder: the tiles to walk through from the start
+ * tile to the goal tile, both included. Paths are shared between
+ * everyone who asked for the same path, so they can't be changed.
+ */
+public class TilePath {
+
+    /**
+     * Columns of the tiles in walking order.
+     */
+    private final int[] columns;
+
+    /**
+     * Rows of the tiles in walking order.
+     */
+    private final int[] rows;
+
+    /**
+     * Width of a tile in pixels.
+     */
+    private final double tileWidth;
+
+    /**
+     * Height of a tile in pixels.
+     */
+    private final double tileHeight;
+
+    /**
+     * Constructs a path.
+     *
+     * @param columns Columns of the tiles in walking order.
+     * @param rows Rows of the tiles in walking order.
+     * @param tileWidth Width of a tile in pixels.
+     * @param tileHeight Height of a tile in pixels.
+     */
+    public TilePath(int[] columns, int[] rows, double tileWidth, double tileHeight) {
+        this.columns = columns.clone();
+        this.rows = rows.clone();
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * @return Number of tiles in the path.
+     */
+    public int length() { return columns.length; }
+
+    /**
+     * @param index Index of a tile in the path.
+     * @return Column of the tile.
+     */
+    public int getColumn(int index) { return columns[index]; }
+
+    /**
+     * @param index Index of a tile in the path.
+     * @return Row of the tile.
+     */
+    public int getRow(int index) { return rows[index]; }
+
+    /**
+     * @param index Index of a tile in the path.
+     * @return X-coordinate of the center of the tile in pixels.
+     */
+    public double getX(int index) { return (columns[index] + 0.5) * tileWidth; }
+
+    /**
+     * @param index Index of a tile in the path.
+     * @return Y-coordinate of the center of the tile in pixels.
+     */
+    public double getY(int index) { return (rows[index] + 0.5) * tileHeight; }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+/**
+ * Component that moves an entity by a number of pixels every tick.
+ */
+public class Velocity {
+
+    /**
+     * Horizontal speed in pixels per tick.
+     */
+    private double dx;
+
+    /**
+     * Vertical speed in pixels per tick.
+     */
+    private double dy;
+
+    /**
+     * Constructs a velocity.
+     *
+     * @param dx Horizontal speed in pixels per tick.
+     * @param dy Vertical speed in pixels per tick.
+     */
+    public Velocity(double dx, double dy) {
+        this.dx = dx;
+        this.dy = dy;
+    }
+
+    /**
+     * @return Horizontal speed in pixels per tick.
+     */
+    public double getDx() { return dx; }
+
+    /**
+     * @param dx Horizontal speed in pixels per tick.
+     */
+    public void setDx(double dx) { this.dx = dx; }
+
+    /**
+     * @return Vertical speed in pixels per tick.
+     */
+    public double getDy() { return dy; }
+
+    /**
+     * @param dy Vertical speed in pixels per tick.
+     */
+    public void setDy(double dy) { this.dy = dy; }
+}
\ No newline at end of file